@@ -0,0 +1,330 @@
+package ch.epfl.dedis.byzcoin;
+
+import ch.epfl.dedis.lib.SkipBlock;
+import ch.epfl.dedis.lib.exception.CothorityCommunicationException;
+import ch.epfl.dedis.lib.network.ServerIdentity;
+import com.google.protobuf.InvalidProtocolBufferException;
+
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * dedis/byzcoin
+ * BlockPublisher.java
+ * Purpose: Publishes the new blocks of a ByzCoin ledger to subscribers that signal how many blocks they can take.
+ * Every subscriber has its own streaming connection and a bounded buffer of the blocks that arrived but haven't
+ * been requested yet. What happens when that buffer is full is given by the {@link OverflowPolicy}.
+ * <p>
+ * The interfaces follow the reactive streams specification, the same as java.util.concurrent.Flow, so that they can
+ * be adapted to any reactive library. The blocks are delivered one at a time, either in the thread of the connection
+ * or in the thread calling {@link BlockSubscription#request(long)}.
+ */
+public class BlockPublisher {
+    /**
+     * What to do with a new block when the buffer of a subscriber is full.
+     */
+    public enum OverflowPolicy {
+        /**
+         * Stops reading from the connection until the subscriber requests more blocks. The conode might close the
+         * connection if the subscriber is too slow.
+         */
+        BLOCK,
+        /**
+         * Drops the oldest block of the buffer to make room for the new one.
+         */
+        DROP_OLDEST,
+        /**
+         * Cancels the subscription and signals an error to the subscriber.
+         */
+        FAIL
+    }
+
+    /**
+     * Receives the blocks of a publisher, the equivalent of Flow.Subscriber.
+     */
+    public interface BlockSubscriber {
+        /**
+         * Called before any other method, no block is sent until it has been requested from the subscription.
+         */
+        void onSubscribe(BlockSubscription subscription);
+
+        void onNext(SkipBlock block);
+
+        /**
+         * Called once if the connection fails or the buffer overflows with {@link OverflowPolicy#FAIL}, after which
+         * no other method is called.
+         */
+        void onError(Throwable throwable);
+
+        /**
+         * Called once if the publisher has no more blocks to send. The streams of ByzCoin have no end, so this is
+         * never called by a {@link BlockPublisher}.
+         */
+        void onComplete();
+    }
+
+    /**
+     * The link between a publisher and one subscriber, the equivalent of Flow.Subscription.
+     */
+    public interface BlockSubscription {
+        /**
+         * Asks for n more blocks.
+         *
+         * @param n the number of blocks, strictly positive
+         */
+        void request(long n);
+
+        /**
+         * Stops the delivery of the blocks and closes the connection.
+         */
+        void cancel();
+
+        /**
+         * @return the number of blocks that arrived but haven't been requested yet.
+         */
+        int getQueueDepth();
+
+        /**
+         * @return how long the oldest block of the buffer has been waiting, zero if the buffer is empty.
+         */
+        Duration getLag();
+
+        /**
+         * @return the number of blocks sent to the subscriber.
+         */
+        long getDelivered();
+
+        /**
+         * @return the number of blocks dropped because the buffer was full.
+         */
+        long getDropped();
+    }
+
+    private final ByzCoinRPC bc;
+    private final int bufferSize;
+    private final OverflowPolicy policy;
+
+    /**
+     * Creates a publisher of the new blocks of a ByzCoin ledger.
+     *
+     * @param bc         the ledger
+     * @param bufferSize how many blocks are kept for every subscriber until it requests them
+     * @param policy     what to do when the buffer of a subscriber is full
+     */
+    public BlockPublisher(ByzCoinRPC bc, int bufferSize, OverflowPolicy policy) {
+        if (bufferSize <= 0) {
+            throw new IllegalArgumentException("the buffer size must be positive");
+        }
+        this.bc = bc;
+        this.bufferSize = bufferSize;
+        this.policy = policy;
+    }
+
+    /**
+     * Connects a new subscriber. If the connection can't be made, the subscriber gets an error.
+     *
+     * @param subscriber the subscriber
+     */
+    public void subscribe(BlockSubscriber subscriber) {
+        try {
+            connect(subscriber);
+        } catch (CothorityCommunicationException e) {
+            subscriber.onError(e);
+        }
+    }
+
+    /**
+     * Same as {@link #subscribe(BlockSubscriber)} but throws if the connection can't be made.
+     */
+    BlockSubscription connect(BlockSubscriber subscriber) throws CothorityCommunicationException {
+        Link link = new Link(subscriber);
+        subscriber.onSubscribe(link);
+        ServerIdentity.StreamingConn conn = bc.streamTransactions(link, Collections.emptySet());
+        link.setConnection(conn);
+        return link;
+    }
+
+    private static class Entry {
+        final SkipBlock block;
+        final long received = System.nanoTime();
+
+        Entry(SkipBlock block) {
+            this.block = block;
+        }
+    }
+
+    /**
+     * The subscription of one subscriber. The blocks are delivered by a single thread at a time: whoever finds
+     * work to do in drain() while no other thread is draining.
+     */
+    private class Link implements BlockSubscription, ServerIdentity.StreamHandler {
+        private final BlockSubscriber subscriber;
+        private final AtomicInteger wip = new AtomicInteger();
+        // guarded by this
+        private final Deque<Entry> queue = new ArrayDeque<>();
+        private ServerIdentity.StreamingConn conn;
+        private long demand;
+        private long delivered;
+        private long dropped;
+        private boolean cancelled;
+        private Throwable error;
+
+        Link(BlockSubscriber subscriber) {
+            this.subscriber = subscriber;
+        }
+
+        synchronized void setConnection(ServerIdentity.StreamingConn conn) {
+            this.conn = conn;
+            if (cancelled) {
+                conn.close();
+            }
+        }
+
+        @Override
+        public void receive(ByteBuffer message) {
+            SkipBlock block;
+            try {
+                block = ByzCoinRPC.parseStreamingResponse(message);
+            } catch (InvalidProtocolBufferException e) {
+                fail(new CothorityCommunicationException(e));
+                return;
+            }
+            synchronized (this) {
+                while (!cancelled && queue.size() >= bufferSize) {
+                    if (policy == OverflowPolicy.DROP_OLDEST) {
+                        queue.poll();
+                        dropped++;
+                    } else if (policy == OverflowPolicy.FAIL) {
+                        terminate(new CothorityCommunicationException("the subscriber is too slow, " + bufferSize +
+                                " blocks are waiting"));
+                    } else {
+                        try {
+                            // Blocks the reader of the connection, drain() wakes it up.
+                            wait();
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                            return;
+                        }
+                    }
+                }
+                if (!cancelled) {
+                    queue.add(new Entry(block));
+                }
+            }
+            // also signals the error of an overflow
+            drain();
+        }
+
+        @Override
+        public void error(String s) {
+            fail(new CothorityCommunicationException(s));
+        }
+
+        @Override
+        public void closed() {
+            fail(new CothorityCommunicationException("the connection has been closed"));
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                fail(new IllegalArgumentException("the number of requested blocks must be positive"));
+                return;
+            }
+            synchronized (this) {
+                demand = demand + n < 0 ? Long.MAX_VALUE : demand + n;
+            }
+            drain();
+        }
+
+        @Override
+        public synchronized void cancel() {
+            cancelled = true;
+            queue.clear();
+            notifyAll();
+            if (conn != null) {
+                conn.close();
+            }
+        }
+
+        @Override
+        public synchronized int getQueueDepth() {
+            return queue.size();
+        }
+
+        @Override
+        public synchronized Duration getLag() {
+            Entry oldest = queue.peek();
+            if (oldest == null) {
+                return Duration.ZERO;
+            }
+            return Duration.ofNanos(System.nanoTime() - oldest.received);
+        }
+
+        @Override
+        public synchronized long getDelivered() {
+            return delivered;
+        }
+
+        @Override
+        public synchronized long getDropped() {
+            return dropped;
+        }
+
+        private void fail(Throwable e) {
+            synchronized (this) {
+                if (cancelled) {
+                    return;
+                }
+                terminate(e);
+            }
+            drain();
+        }
+
+        /**
+         * Cancels the subscription and keeps the error for drain() to signal.
+         */
+        private void terminate(Throwable e) {
+            error = e;
+            cancel();
+        }
+
+        private void drain() {
+            if (wip.getAndIncrement() != 0) {
+                return;
+            }
+            int missed = 1;
+            do {
+                for (;;) {
+                    Entry next;
+                    Throwable err = null;
+                    synchronized (this) {
+                        if (error != null) {
+                            err = error;
+                            // null and still cancelled, so the error is only signalled once
+                            error = null;
+                            next = null;
+                        } else if (cancelled || demand == 0 || queue.isEmpty()) {
+                            break;
+                        } else {
+                            next = queue.poll();
+                            demand--;
+                            delivered++;
+                            notifyAll();
+                        }
+                    }
+                    if (err != null) {
+                        subscriber.onError(err);
+                        break;
+                    }
+                    subscriber.onNext(next.block);
+                }
+                missed = wip.addAndGet(-missed);
+            } while (missed != 0);
+        }
+    }
+}
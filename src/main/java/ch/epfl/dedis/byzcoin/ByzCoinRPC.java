@@ -17,9 +17,10 @@ import ch.epfl.dedis.lib.exception.CothorityNotFoundException;
 import ch.epfl.dedis.lib.network.Roster;
 import ch.epfl.dedis.lib.network.ServerIdentity;
 import ch.epfl.dedis.lib.proto.ByzCoinProto;
-import ch.epfl.dedis.lib.proto.SkipchainProto;
 import ch.epfl.dedis.skipchain.SkipchainRPC;
+import ch.epfl.dedis.status.StatusRPC;
 import com.google.protobuf.ByteString;
+import com.google.protobuf.CodedInputStream;
 import com.google.protobuf.InvalidProtocolBufferException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -27,9 +28,13 @@ import org.slf4j.LoggerFactory;
 import java.nio.ByteBuffer;
 import java.time.Duration;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 import java.util.Objects;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
@@ -52,6 +57,9 @@ public class ByzCoinRPC {
 
     private Subscription subscription;
     public static final int currentVersion = 2;
+    // how many blocks subscribeSkipBlock() reads ahead of the consumer of the stream
+    private static final int STREAM_BUFFER_SIZE = 16;
+    static final String STREAMING_PATH = "ByzCoin/StreamingRequest";
     final String[] darcContractIDs = new String[]{"darc"};
 
     private static final Logger logger = LoggerFactory.getLogger(ByzCoinRPC.class);
@@ -135,20 +143,79 @@ public class ByzCoinRPC {
      * included in the global state. If more than 'wait' blocks are created and the transaction is not
      * included, an exception will be raised.
      *
+     * <p>
+     * The deadline of the request is the timeout of the roster plus 'wait' times the block interval.
+     *
      * @param t    is the client transaction holding one or more instructions to be sent to byzcoin.
      * @param wait indicates the number of blocks to wait for the transaction to be included.
      * @return ClientTransactionID the transaction ID
      * @throws CothorityCommunicationException if the transaction has not been included within 'wait' blocks.
      */
     public ClientTransactionId sendTransactionAndWait(ClientTransaction t, int wait) throws CothorityCommunicationException {
+        return sendTransactionAndWait(t, wait, inclusionTimeout(wait));
+    }
+
+    /**
+     * Sends a transaction to byzcoin and waits for up to 'wait' blocks, but at most for the given timeout.
+     *
+     * @param t       is the client transaction holding one or more instructions to be sent to byzcoin.
+     * @param wait    indicates the number of blocks to wait for the transaction to be included.
+     * @param timeout how long to wait for the reply, or null to wait forever.
+     * @return ClientTransactionID the transaction ID
+     * @throws CothorityCommunicationException if the transaction has not been included within 'wait' blocks, a
+     *                                         CothorityTimeoutException if there was no reply in time.
+     */
+    public ClientTransactionId sendTransactionAndWait(ClientTransaction t, int wait, Duration timeout) throws CothorityCommunicationException {
+        ByteString msg = roster.sendMessage("ByzCoin/AddTxRequest", addTxRequest(t, wait), timeout);
+        return parseAddTxResponse(msg, t);
+    }
+
+    /**
+     * Asynchronous version of {@link #sendTransaction(ClientTransaction)}.
+     *
+     * @param t is the client transaction holding one or more instructions to be sent to byzcoin.
+     * @return the future transaction ID
+     */
+    public CompletableFuture<ClientTransactionId> sendTransactionAsync(ClientTransaction t) {
+        return sendTransactionAndWaitAsync(t, 0);
+    }
+
+    /**
+     * Asynchronous version of {@link #sendTransactionAndWait(ClientTransaction, int)}.
+     *
+     * @param t    is the client transaction holding one or more instructions to be sent to byzcoin.
+     * @param wait indicates the number of blocks to wait for the transaction to be included.
+     * @return the future transaction ID, failed with a CothorityCommunicationException if the transaction has not
+     * been included within 'wait' blocks.
+     */
+    public CompletableFuture<ClientTransactionId> sendTransactionAndWaitAsync(ClientTransaction t, int wait) {
+        return parseAsync(roster.sendMessageAsync("ByzCoin/AddTxRequest", addTxRequest(t, wait), inclusionTimeout(wait)),
+                msg -> parseAddTxResponse(msg, t));
+    }
+
+    /**
+     * @return the time the conode might need to answer a request waiting for 'wait' blocks, or null if the roster
+     * has no timeout.
+     */
+    private Duration inclusionTimeout(int wait) {
+        Duration timeout = roster.getEffectiveTimeout();
+        if (timeout == null) {
+            return null;
+        }
+        return timeout.plus(config.getBlockInterval().multipliedBy(wait));
+    }
+
+    private ByzCoinProto.AddTxRequest addTxRequest(ClientTransaction t, int wait) {
         ByzCoinProto.AddTxRequest.Builder request =
                 ByzCoinProto.AddTxRequest.newBuilder();
         request.setVersion(currentVersion);
         request.setSkipchainid(ByteString.copyFrom(skipchain.getID().getId()));
         request.setTransaction(t.toProto());
         request.setInclusionwait(wait);
+        return request.build();
+    }
 
-        ByteString msg = roster.sendMessage("ByzCoin/AddTxRequest", request.build());
+    private static ClientTransactionId parseAddTxResponse(ByteString msg, ClientTransaction t) throws CothorityCommunicationException {
         try {
             ByzCoinProto.AddTxResponse reply =
                     ByzCoinProto.AddTxResponse.parseFrom(msg);
@@ -206,17 +273,51 @@ public class ByzCoinRPC {
      */
     public Proof getProofFrom(InstanceId id, SkipBlock from)
             throws CothorityCommunicationException, CothorityCryptoException {
+        ByteString msg = roster.sendMessage("ByzCoin/GetProof", getProofRequest(id, from));
+        return parseProof(msg, id, from);
+    }
 
+    /**
+     * Asynchronous version of {@link #getProof(InstanceId)}. The proof is verified in the common fork-join pool
+     * and not in the network thread.
+     *
+     * @param id is the id of the instance to be fetched
+     * @return the future proof, failed with a CothorityCommunicationException if something goes wrong or a
+     * CothorityCryptoException if the verification fails
+     */
+    public CompletableFuture<Proof> getProofAsync(InstanceId id) {
+        return getProofFromAsync(id, genesis.sb);
+    }
+
+    /**
+     * Asynchronous version of {@link #getProofFrom(InstanceId, SkipBlock)}.
+     *
+     * @param id   is the ID of the instance to be fetched
+     * @param from The block the proof should start with
+     * @return the future proof, failed with a CothorityCommunicationException if something goes wrong or a
+     * CothorityCryptoException if the verification fails
+     */
+    public CompletableFuture<Proof> getProofFromAsync(InstanceId id, SkipBlock from) {
+        return parseAsync(roster.sendMessageAsync("ByzCoin/GetProof", getProofRequest(id, from)),
+                msg -> parseProof(msg, id, from));
+    }
+
+    private static ByzCoinProto.GetProof getProofRequest(InstanceId id, SkipBlock from) {
         ByzCoinProto.GetProof.Builder request =
                 ByzCoinProto.GetProof.newBuilder();
         request.setVersion(currentVersion);
         request.setId(from.getId().toProto());
         request.setKey(id.toByteString());
+        return request.build();
+    }
 
-        ByteString msg = roster.sendMessage("ByzCoin/GetProof", request.build());
+    private static Proof parseProof(ByteString msg, InstanceId id, SkipBlock from)
+            throws CothorityCommunicationException, CothorityCryptoException {
         try {
-            ByzCoinProto.GetProofResponse reply =
-                    ByzCoinProto.GetProofResponse.parseFrom(msg);
+            // The proof keeps referencing the reply instead of copying its data out of it.
+            CodedInputStream input = msg.newCodedInput();
+            input.enableAliasing(true);
+            ByzCoinProto.GetProofResponse reply = ByzCoinProto.GetProofResponse.parser().parseFrom(input);
             Proof p = new Proof(reply.getProof(), id);
             p.verify(from);
             logger.info("Successfully received and created proof");
@@ -236,11 +337,29 @@ public class ByzCoinRPC {
      * @throws CothorityCommunicationException if something goes wrong
      */
     public SignerCounters getSignerCounters(List<String> signerIDs) throws CothorityCommunicationException {
+        ByteString msg = roster.sendMessage("ByzCoin/GetSignerCounters", getSignerCountersRequest(signerIDs));
+        return parseSignerCounters(msg);
+    }
+
+    /**
+     * Asynchronous version of {@link #getSignerCounters(List)}.
+     *
+     * @param signerIDs the list of signer IDs
+     * @return the future counters for the given IDs
+     */
+    public CompletableFuture<SignerCounters> getSignerCountersAsync(List<String> signerIDs) {
+        return parseAsync(roster.sendMessageAsync("ByzCoin/GetSignerCounters", getSignerCountersRequest(signerIDs)),
+                ByzCoinRPC::parseSignerCounters);
+    }
+
+    private ByzCoinProto.GetSignerCounters getSignerCountersRequest(List<String> signerIDs) {
         ByzCoinProto.GetSignerCounters.Builder b = ByzCoinProto.GetSignerCounters.newBuilder();
         b.addAllSignerids(signerIDs);
         b.setSkipchainid(skipchain.getID().toProto());
+        return b.build();
+    }
 
-        ByteString msg = roster.sendMessage("ByzCoin/GetSignerCounters", b.build());
+    private static SignerCounters parseSignerCounters(ByteString msg) throws CothorityCommunicationException {
         try {
             ByzCoinProto.GetSignerCountersResponse reply = ByzCoinProto.GetSignerCountersResponse.parseFrom(msg);
             logger.info("successfully parsed signer counters");
@@ -263,21 +382,13 @@ public class ByzCoinRPC {
     }
 
     /**
-     * Verifies if the nodes representing the cothority are alive and reply to a ping.
+     * Verifies if the nodes representing the cothority are alive and reply to a ping. The nodes are asked in
+     * parallel, use {@link StatusRPC#probe(Roster)} to get the details.
      *
      * @return true if all nodes are live, false if one or more are not responding.
      */
     public boolean checkLiveness() {
-        for (ServerIdentity si : roster.getNodes()) {
-            try {
-                logger.info("Checking status of {}", si.getAddress());
-                si.GetStatus();
-            } catch (CothorityCommunicationException e) {
-                logger.warn("Failing node {}: {}", si.getAddress(), e.toString());
-                return false;
-            }
-        }
-        return true;
+        return StatusRPC.probe(roster).isAllAlive();
     }
 
     /**
@@ -394,12 +505,32 @@ public class ByzCoinRPC {
      * @throws CothorityCommunicationException if the state change doesn't exist or something went wrong
      */
     public StateChange getInstanceVersion(InstanceId id, long version) throws CothorityCommunicationException {
+        ByteString msg = roster.sendMessage("ByzCoin/GetInstanceVersion", getInstanceVersionRequest(id, version));
+        return parseInstanceVersion(msg);
+    }
+
+    /**
+     * Asynchronous version of {@link #getInstanceVersion(InstanceId, long)}.
+     *
+     * @param id      the instance ID
+     * @param version the version of the state change
+     * @return the future state change, failed with a CothorityCommunicationException if the state change doesn't
+     * exist or something went wrong
+     */
+    public CompletableFuture<StateChange> getInstanceVersionAsync(InstanceId id, long version) {
+        return parseAsync(roster.sendMessageAsync("ByzCoin/GetInstanceVersion", getInstanceVersionRequest(id, version)),
+                ByzCoinRPC::parseInstanceVersion);
+    }
+
+    private ByzCoinProto.GetInstanceVersion getInstanceVersionRequest(InstanceId id, long version) {
         ByzCoinProto.GetInstanceVersion.Builder request = ByzCoinProto.GetInstanceVersion.newBuilder();
         request.setInstanceid(id.toByteString());
         request.setSkipchainid(genesis.getId().toProto());
         request.setVersion(version);
+        return request.build();
+    }
 
-        ByteString msg = roster.sendMessage("ByzCoin/GetInstanceVersion", request.build());
+    private static StateChange parseInstanceVersion(ByteString msg) throws CothorityCommunicationException {
         try {
             ByzCoinProto.GetInstanceVersionResponse reply = ByzCoinProto.GetInstanceVersionResponse.parseFrom(msg);
 
@@ -535,23 +666,60 @@ public class ByzCoinRPC {
      * thread will hang indefinitely
      * <p>
      * Each subscription request uses its own connection and the stream must be correctly closed to clean
-     * the resources
+     * the resources. The connection is only read when the stream consumes the blocks, so at most
+     * STREAM_BUFFER_SIZE blocks are kept in memory.
      *
      * @throws CothorityCommunicationException if something goes wrong when establishing the connection
      */
     public Stream<SkipBlock> subscribeSkipBlock() throws CothorityCommunicationException {
+        // never holds more blocks than requested
         BlockingQueue<SkipBlock> queue = new LinkedBlockingQueue<>();
-        ServerIdentity.StreamingConn conn = streamTransactions(queue);
+        BlockPublisher.BlockSubscription sub = publishSkipBlocks(STREAM_BUFFER_SIZE, BlockPublisher.OverflowPolicy.BLOCK)
+                .connect(new BlockPublisher.BlockSubscriber() {
+                    @Override
+                    public void onSubscribe(BlockPublisher.BlockSubscription subscription) {
+                        subscription.request(STREAM_BUFFER_SIZE);
+                    }
+
+                    @Override
+                    public void onNext(SkipBlock block) {
+                        queue.add(block);
+                    }
+
+                    @Override
+                    public void onError(Throwable throwable) {
+                        // As a stream doesn't handle errors, they are ignored and written in the logs.
+                        logger.error(throwable.getMessage());
+                    }
+
+                    @Override
+                    public void onComplete() {
+                    }
+                });
 
         Stream<SkipBlock> stream = Stream.generate(() -> {
             try {
-                return queue.take();
+                SkipBlock block = queue.take();
+                sub.request(1);
+                return block;
             } catch (InterruptedException e) {
                 return null;
             }
         });
 
-        return stream.onClose(conn::close).filter(Objects::nonNull); // we don't want any null in the stream
+        return stream.onClose(sub::cancel).filter(Objects::nonNull); // we don't want any null in the stream
+    }
+
+    /**
+     * Creates a publisher of the future SkipBlocks, for consumers that signal how many blocks they can take. Each
+     * subscriber of the publisher uses its own connection.
+     *
+     * @param bufferSize how many blocks are kept for every subscriber until it requests them
+     * @param policy     what to do when the buffer of a subscriber is full
+     * @return the publisher
+     */
+    public BlockPublisher publishSkipBlocks(int bufferSize, BlockPublisher.OverflowPolicy policy) {
+        return new BlockPublisher(this, bufferSize, policy);
     }
 
     /**
@@ -584,7 +752,12 @@ public class ByzCoinRPC {
         ChainConfigData ccd = cci.getChainConfig();
         ccd.setRoster(newRoster);
         cci.evolveConfigAndWait(ccd, admins, adminCtrs, wait);
-        roster = new Roster(newRoster.getNodes());
+        Roster r = new Roster(newRoster.getNodes());
+        r.setNodeSelector(roster.getNodeSelector());
+        r.setRetryBudget(roster.getRetryBudget());
+        r.setTimeout(roster.getTimeout());
+        r.setHedgePolicy(roster.getHedgePolicy());
+        roster = r;
     }
 
     /**
@@ -736,7 +909,9 @@ public class ByzCoinRPC {
         ByteString msg = roster.sendMessage("ByzCoin/GetProof", configBuilder.build());
 
         try {
-            ByzCoinProto.GetProofResponse reply = ByzCoinProto.GetProofResponse.parseFrom(msg);
+            CodedInputStream input = msg.newCodedInput();
+            input.enableAliasing(true);
+            ByzCoinProto.GetProofResponse reply = ByzCoinProto.GetProofResponse.parser().parseFrom(input);
             Proof proof = new Proof(reply.getProof(), key);
             proof.verify(from);
 
@@ -746,6 +921,23 @@ public class ByzCoinRPC {
         }
     }
 
+    /**
+     * Parses a reply in the common fork-join pool, as the futures of the roster complete in the network thread.
+     */
+    private static <T> CompletableFuture<T> parseAsync(CompletableFuture<ByteString> reply, ReplyParser<T> parser) {
+        return reply.thenApplyAsync(msg -> {
+            try {
+                return parser.parse(msg);
+            } catch (CothorityException e) {
+                throw new CompletionException(e);
+            }
+        });
+    }
+
+    private interface ReplyParser<T> {
+        T parse(ByteString msg) throws CothorityException;
+    }
+
     /**
      * Getter for the subscription object.
      *
@@ -763,15 +955,11 @@ public class ByzCoinRPC {
      * @throws CothorityCommunicationException
      */
     ServerIdentity.StreamingConn streamTransactions(Subscription.SkipBlockReceiver receiver) throws CothorityCommunicationException {
-        ByzCoinProto.StreamingRequest.Builder req = ByzCoinProto.StreamingRequest.newBuilder();
-        req.setId(skipchain.getID().toProto());
-
         ServerIdentity.StreamHandler h = new ServerIdentity.StreamHandler() {
             @Override
             public void receive(ByteBuffer message) {
                 try {
-                    SkipchainProto.SkipBlock block = ByzCoinProto.StreamingResponse.parseFrom(message).getBlock();
-                    receiver.receive(new SkipBlock(block));
+                    receiver.receive(parseStreamingResponse(message));
                 } catch (InvalidProtocolBufferException e) {
                     receiver.error(e.getMessage());
                 }
@@ -782,40 +970,31 @@ public class ByzCoinRPC {
                 receiver.error(s);
             }
         };
-        return roster.makeStreamingConn("ByzCoin/StreamingRequest", req.build(), h);
+        return streamTransactions(h, Collections.emptySet());
     }
 
     /**
-     * Helper function to make a connection to the streaming API endpoint and populate a blocking queue with the
-     * new blocks. The queue will be used during a stream generation
-     * <p>
-     * As a stream doesn't handle errors, they are ignored and written in the logs.
+     * Makes a streaming connection to a node that is not in avoid, unless all of them are.
      *
-     * @param queue The blocking queue used by the stream
+     * @param h     the handler of the raw responses, see {@link #parseStreamingResponse(ByteBuffer)}.
+     * @param avoid the nodes to avoid
+     * @return the streaming connection
      * @throws CothorityCommunicationException if something goes wrong when establishing the connection
      */
-    private ServerIdentity.StreamingConn streamTransactions(BlockingQueue<SkipBlock> queue) throws CothorityCommunicationException {
+    ServerIdentity.StreamingConn streamTransactions(ServerIdentity.StreamHandler h, Collection<ServerIdentity> avoid) throws CothorityCommunicationException {
         ByzCoinProto.StreamingRequest.Builder req = ByzCoinProto.StreamingRequest.newBuilder();
         req.setId(skipchain.getID().toProto());
+        return roster.makeStreamingConn(STREAMING_PATH, req.build(), h, avoid);
+    }
 
-        ServerIdentity.StreamHandler h = new ServerIdentity.StreamHandler() {
-            @Override
-            public void receive(ByteBuffer message) {
-                try {
-                    SkipchainProto.SkipBlock block = ByzCoinProto.StreamingResponse.parseFrom(message).getBlock();
-                    queue.add(new SkipBlock(block));
-                } catch (InvalidProtocolBufferException e) {
-                    // ignore invalid block but keep a log of the event
-                    logger.error(e.getMessage());
-                }
-            }
-
-            @Override
-            public void error(String s) {
-                logger.error(s);
-            }
-        };
+    static SkipBlock parseStreamingResponse(ByteBuffer message) throws InvalidProtocolBufferException {
+        return new SkipBlock(ByzCoinProto.StreamingResponse.parseFrom(message).getBlock());
+    }
 
-        return roster.makeStreamingConn("ByzCoin/StreamingRequest", req.build(), h);
+    /**
+     * @return the skipchain service, without the warning of {@link #getSkipchain()}.
+     */
+    SkipchainRPC skipchainRPC() {
+        return skipchain;
     }
 }
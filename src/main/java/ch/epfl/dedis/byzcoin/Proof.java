@@ -2,10 +2,12 @@ package ch.epfl.dedis.byzcoin;
 
 import ch.epfl.dedis.lib.SkipBlock;
 import ch.epfl.dedis.lib.SkipblockId;
+import ch.epfl.dedis.lib.crypto.BlsBatchVerifier;
 import ch.epfl.dedis.lib.crypto.Bn256G2Point;
 import ch.epfl.dedis.lib.crypto.Point;
 import ch.epfl.dedis.lib.darc.DarcId;
 import ch.epfl.dedis.lib.exception.CothorityCryptoException;
+import ch.epfl.dedis.lib.network.Roster;
 import ch.epfl.dedis.lib.network.ServerIdentity;
 import ch.epfl.dedis.lib.proto.ByzCoinProto;
 import ch.epfl.dedis.lib.proto.NetworkProto;
@@ -22,6 +24,7 @@ import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.UUID;
 import java.util.stream.Collectors;
 
 /**
@@ -147,14 +150,20 @@ public class Proof {
 
         SkipblockId sbID = scID;
         List<Point> publics = null;
+        UUID rosterID = null;
+        // the signatures of the links are verified at once after the links have been followed, or one by one if
+        // there are less than BlsBatchVerifier.MIN_BATCH
+        BlsBatchVerifier batch = new BlsBatchVerifier();
 
         for (int i = 0; i < this.links.size(); i++) {
             if (i == 0) {
-                publics = getPoints(this.links.get(i).getNewRoster().getListList());
+                Roster roster = getRoster(this.links.get(i).getNewRoster().getListList());
+                publics = getPoints(roster);
+                rosterID = roster.getID();
                 continue;
             }
             ForwardLink l = new ForwardLink(this.links.get(i));
-            if (!l.verifyWithScheme(publics, latest.getSignatureScheme())) {
+            if (!l.addToBatch(batch, publics, latest.getSignatureScheme(), rosterID)) {
                 throw new CothorityCryptoException("stored skipblock is not properly evolved from genesis block");
             }
             if (!Arrays.equals(l.getFrom().getId(), sbID.getId())) {
@@ -163,7 +172,9 @@ public class Proof {
             sbID = l.getTo();
             try {
                 if (l.getNewRoster() != null) {
-                    publics = getPoints(this.links.get(i).getNewRoster().getListList());
+                    Roster roster = getRoster(this.links.get(i).getNewRoster().getListList());
+                    publics = getPoints(roster);
+                    rosterID = roster.getID();
                 }
             } catch (URISyntaxException e) {
                 throw new CothorityCryptoException(e.getMessage());
@@ -174,6 +185,10 @@ public class Proof {
         if (!Arrays.equals(sbID.getId(), this.latest.getHash())) {
             throw new CothorityCryptoException("last forward link does not point to the latest block");
         }
+
+        if (!batch.verify()) {
+            throw new CothorityCryptoException("stored skipblock is not properly evolved from genesis block");
+        }
     }
 
     /**
@@ -375,7 +390,7 @@ public class Proof {
         }
     }
 
-    private static List<Point> getPoints(List<NetworkProto.ServerIdentity> protos) throws CothorityCryptoException {
+    private static Roster getRoster(List<NetworkProto.ServerIdentity> protos) throws CothorityCryptoException {
         List<ServerIdentity> sids = new ArrayList<>();
         for (NetworkProto.ServerIdentity sid : protos) {
             try {
@@ -384,7 +399,11 @@ public class Proof {
                 throw new CothorityCryptoException(e.getMessage());
             }
         }
-        return sids.stream()
+        return new Roster(sids);
+    }
+
+    private static List<Point> getPoints(Roster roster) {
+        return roster.getNodes().stream()
                 .map(sid -> (Bn256G2Point) sid.getServicePublic("Skipchain"))
                 .collect(Collectors.toList());
     }
@@ -1,11 +1,29 @@
 package ch.epfl.dedis.byzcoin;
 
 import ch.epfl.dedis.lib.SkipBlock;
+import ch.epfl.dedis.lib.SkipblockId;
 import ch.epfl.dedis.lib.exception.CothorityCommunicationException;
+import ch.epfl.dedis.lib.exception.CothorityCryptoException;
+import ch.epfl.dedis.lib.exception.CothorityException;
+import ch.epfl.dedis.lib.metrics.Metrics;
 import ch.epfl.dedis.lib.network.ServerIdentity;
+import ch.epfl.dedis.skipchain.SkipchainRPC;
+import com.google.protobuf.InvalidProtocolBufferException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Subscription class for ByzCoin. A listener can subscribe to different events and then get notified
@@ -15,8 +33,27 @@ import java.util.Set;
  * - The connection is made if at least one receiver subscribes.
  * - The connection stops once the last receiver has been unsubscribed.
  * - The subscribers will only see events (blocks) that arrive after the subscription is made.
+ * - If the connection drops, it is made again with an exponential backoff, preferably to another node. The blocks
+ * that were missed in the meantime are fetched from the skipchain, so the subscribers see every block once and in
+ * order, even if the connection drops before the first block. The subscribers are only informed of an error when
+ * the reconnections are given up.
+ * - The missed blocks are fetched in a background thread; the blocks that arrive meanwhile are delivered after them.
  */
 public class Subscription {
+    private static final Logger logger = LoggerFactory.getLogger(Subscription.class);
+    private static final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "subscription-reconnect");
+        t.setDaemon(true);
+        return t;
+    });
+    // The missed blocks are fetched with blocking requests, which must neither hold the lock of the subscription nor
+    // block the thread reading the stream or the reconnection timer.
+    private static final ExecutorService backfills = Executors.newCachedThreadPool(r -> {
+        Thread t = new Thread(r, "subscription-backfill");
+        t.setDaemon(true);
+        return t;
+    });
+
     /**
      * A SkipBlockReceiver will be informed on any new block arriving.
      */
@@ -28,17 +65,34 @@ public class Subscription {
 
     private ByzCoinRPC bc;
     private AggregateReceiver aggr;
+    private volatile Duration initialBackoff = Duration.ofMillis(100);
+    private volatile Duration maxBackoff = Duration.ofSeconds(10);
+    private volatile int maxReconnects = 10;
+
+    // guarded by this
     private ServerIdentity.StreamingConn conn;
+    private Listener listener;
+    private ScheduledFuture<?> reconnect;
+    private int reconnects;
+    private String lastError;
+    private final Set<ServerIdentity> failedNodes = new HashSet<>();
+    // the last block sent to the receivers, or the head of the chain when the first receiver subscribed
+    private SkipblockId lastSeen;
+    private int lastIndex;
+    // the listener whose missed blocks are being fetched, and the blocks it received meanwhile
+    private Listener backfilling;
+    private final List<SkipBlock> queued = new ArrayList<>();
 
     /**
      * To reduce the number of connections, we create this aggregate receiver that replicates events to all the
      * subscribers.
      */
     class AggregateReceiver implements SkipBlockReceiver {
+        // receivers may unsubscribe while being called
         private Set<SkipBlockReceiver> blockReceivers;
 
         private AggregateReceiver() {
-            blockReceivers = new HashSet<>();
+            blockReceivers = new CopyOnWriteArraySet<>();
         }
 
         @Override
@@ -64,6 +118,34 @@ public class Subscription {
         }
     }
 
+    /**
+     * Handles the messages of one connection. The events of a connection that has been replaced are ignored.
+     */
+    private class Listener implements ServerIdentity.StreamHandler {
+        @Override
+        public void receive(ByteBuffer message) {
+            try {
+                deliver(this, ByzCoinRPC.parseStreamingResponse(message));
+            } catch (InvalidProtocolBufferException e) {
+                fail(this, "invalid block: " + e.getMessage());
+            }
+        }
+
+        @Override
+        public void error(String s) {
+            synchronized (Subscription.this) {
+                if (listener == this) {
+                    lastError = s;
+                }
+            }
+        }
+
+        @Override
+        public void closed() {
+            connectionLost(this);
+        }
+    }
+
     /**
      * Starts a subscription service, but doesn't call the polling yet.
      *
@@ -81,10 +163,23 @@ public class Subscription {
      * @param br the receiver that wants to be informed of new blocks.
      * @throws CothorityCommunicationException is something went wrong
      */
-    public void subscribeSkipBlock(SkipBlockReceiver br) throws CothorityCommunicationException {
+    public synchronized void subscribeSkipBlock(SkipBlockReceiver br) throws CothorityCommunicationException {
         aggr.add(br);
-        if (aggr.size() == 1) {
-            conn = bc.streamTransactions(aggr);
+        if (listener == null && reconnect == null) {
+            // Either the first receiver, or the reconnections have been given up: start from scratch.
+            backfilling = null;
+            queued.clear();
+            reconnects = 0;
+            failedNodes.clear();
+            try {
+                SkipBlock head = chainHead();
+                lastSeen = head.getId();
+                lastIndex = head.getIndex();
+                connect();
+            } catch (CothorityCommunicationException e) {
+                aggr.remove(br);
+                throw e;
+            }
         }
     }
 
@@ -94,21 +189,231 @@ public class Subscription {
      *
      * @param br the receiver to unsubscribe.
      */
-    public void unsubscribeSkipBlock(SkipBlockReceiver br) {
+    public synchronized void unsubscribeSkipBlock(SkipBlockReceiver br) {
         aggr.remove(br);
         if (aggr.size() == 0) {
-            conn.close();
+            listener = null;
+            if (reconnect != null) {
+                reconnect.cancel(false);
+                reconnect = null;
+            }
+            if (conn != null) {
+                conn.close();
+            }
         }
     }
 
     /**
-     * Checks whether the connection is closed.
+     * Checks whether the connection is closed. A subscription waiting to reconnect is not closed.
      * @return true if closed
      */
-    public boolean isClosed() {
+    public synchronized boolean isClosed() {
+        if (reconnect != null) {
+            return false;
+        }
         if (conn == null) {
             return true;
         }
         return conn.isClosed();
     }
+
+    /**
+     * Sets the delay before reconnecting a dropped connection. The delay starts at initial and doubles with every
+     * failed attempt, up to max.
+     *
+     * @param initial the delay of the first attempt
+     * @param max     the longest delay
+     */
+    public void setReconnectBackoff(Duration initial, Duration max) {
+        if (initial.isNegative() || max.compareTo(initial) < 0) {
+            throw new IllegalArgumentException("invalid backoff");
+        }
+        initialBackoff = initial;
+        maxBackoff = max;
+    }
+
+    /**
+     * @param maxReconnects how many times in a row a connection is made again before the receivers are informed of
+     *                      the error, 0 to never reconnect.
+     */
+    public void setMaxReconnects(int maxReconnects) {
+        if (maxReconnects < 0) {
+            throw new IllegalArgumentException("the number of reconnections can't be negative");
+        }
+        this.maxReconnects = maxReconnects;
+    }
+
+    /**
+     * @return the latest block of the skipchain, from which the missed blocks are fetched if the connection drops
+     * before the first block.
+     */
+    private SkipBlock chainHead() throws CothorityCommunicationException {
+        List<SkipBlock> chain;
+        try {
+            chain = bc.skipchainRPC().getUpdateChain();
+        } catch (CothorityCryptoException e) {
+            throw new CothorityCommunicationException("couldn't verify the head of the chain: " + e.getMessage(), e);
+        }
+        if (chain.isEmpty()) {
+            throw new CothorityCommunicationException("the skipchain is empty");
+        }
+        return chain.get(chain.size() - 1);
+    }
+
+    private void connect() throws CothorityCommunicationException {
+        Listener l = new Listener();
+        listener = l;
+        conn = bc.streamTransactions(l, failedNodes);
+    }
+
+    private synchronized void deliver(Listener l, SkipBlock block) {
+        if (listener != l) {
+            return;
+        }
+        if (backfilling == l) {
+            queued.add(block);
+            return;
+        }
+        if (block.getIndex() > lastIndex + 1) {
+            queued.add(block);
+            backfill(l);
+            return;
+        }
+        forward(block);
+    }
+
+    /**
+     * Sends the block to the receivers unless they already got it.
+     */
+    private void forward(SkipBlock block) {
+        if (block.getIndex() <= lastIndex) {
+            return;
+        }
+        lastSeen = block.getId();
+        lastIndex = block.getIndex();
+        reconnects = 0;
+        failedNodes.clear();
+        aggr.receive(block);
+    }
+
+    /**
+     * Starts fetching the blocks following the last one seen, up to the latest block of the skipchain. The blocks
+     * that the listener receives in the meantime are queued.
+     */
+    private void backfill(Listener l) {
+        backfilling = l;
+        SkipblockId from = lastSeen;
+        int fromIndex = lastIndex;
+        backfills.execute(() -> {
+            try {
+                backfilled(l, missedBlocks(from, fromIndex), null);
+            } catch (CothorityException e) {
+                backfilled(l, null, e);
+            }
+        });
+    }
+
+    /**
+     * Sends the missed blocks and then the queued ones to the receivers, unless the listener has been replaced.
+     */
+    private synchronized void backfilled(Listener l, List<SkipBlock> missed, CothorityException error) {
+        if (backfilling != l) {
+            return;
+        }
+        backfilling = null;
+        if (listener != l) {
+            queued.clear();
+            return;
+        }
+        if (error != null) {
+            queued.clear();
+            fail(l, "couldn't get the missed blocks: " + error.getMessage());
+            return;
+        }
+        missed.forEach(this::forward);
+        while (!queued.isEmpty()) {
+            SkipBlock block = queued.get(0);
+            if (block.getIndex() > lastIndex + 1) {
+                // Blocks are still missing, e.g. the skipchain grew while the update chain was fetched.
+                backfill(l);
+                return;
+            }
+            queued.remove(0);
+            forward(block);
+        }
+    }
+
+    /**
+     * Fetches the blocks following the given one, up to the latest block of the skipchain. It makes blocking requests
+     * and is called without holding the lock.
+     */
+    private List<SkipBlock> missedBlocks(SkipblockId from, int fromIndex) throws CothorityException {
+        SkipchainRPC skipchain = bc.skipchainRPC();
+        List<SkipBlock> missed = new ArrayList<>();
+        int index = fromIndex;
+        SkipBlock previous = null;
+        for (SkipBlock sb : skipchain.getUpdateChain(from)) {
+            // The update chain uses the highest links, so the blocks in between are found with the base links.
+            while (previous != null && index + 1 < sb.getIndex()) {
+                if (previous.getForwardLinks().isEmpty()) {
+                    throw new CothorityCommunicationException("missing forward link in block " + previous.getIndex());
+                }
+                previous = skipchain.getSkipblock(previous.getForwardLinks().get(0).getTo());
+                missed.add(previous);
+                index = Math.max(index, previous.getIndex());
+            }
+            missed.add(sb);
+            index = Math.max(index, sb.getIndex());
+            previous = sb;
+        }
+        return missed;
+    }
+
+    /**
+     * Closes the connection of a misbehaving node, which will then be replaced.
+     */
+    private synchronized void fail(Listener l, String error) {
+        if (listener != l) {
+            return;
+        }
+        lastError = error;
+        conn.close();
+    }
+
+    private synchronized void connectionLost(Listener l) {
+        if (listener != l) {
+            return;
+        }
+        listener = null;
+        failedNodes.add(conn.getServerIdentity());
+        if (reconnects >= maxReconnects) {
+            logger.warn("giving up the block stream after {} reconnections: {}", reconnects, lastError);
+            aggr.error(lastError != null ? lastError : "the connection has been closed");
+            return;
+        }
+        long delay = Math.min(maxBackoff.toNanos(), initialBackoff.toNanos() << Math.min(reconnects, 30));
+        reconnects++;
+        logger.info("the block stream to {} has been lost, reconnecting in {} ms", conn.getServerIdentity().getAddress(),
+                TimeUnit.NANOSECONDS.toMillis(delay));
+        reconnect = timer.schedule(this::reconnect, delay, TimeUnit.NANOSECONDS);
+    }
+
+    private synchronized void reconnect() {
+        if (reconnect == null) {
+            return;
+        }
+        reconnect = null;
+        Metrics.get().streamReconnected(ByzCoinRPC.STREAMING_PATH);
+        try {
+            connect();
+        } catch (CothorityCommunicationException e) {
+            // Only an invalid address gets here, which is handled like a connection that is lost at once.
+            lastError = e.getMessage();
+            connectionLost(listener);
+            return;
+        }
+        // The blocks queued by the previous connection are fetched again.
+        queued.clear();
+        backfill(listener);
+    }
 }
@@ -2,8 +2,10 @@ package ch.epfl.dedis.calypso;
 
 import ch.epfl.dedis.byzcoin.InstanceId;
 import ch.epfl.dedis.lib.SkipblockId;
+import ch.epfl.dedis.lib.crypto.Ed25519Point;
 import ch.epfl.dedis.lib.crypto.Point;
 import ch.epfl.dedis.lib.crypto.PointFactory;
+import ch.epfl.dedis.lib.crypto.PreparedEd25519Point;
 import ch.epfl.dedis.lib.exception.CothorityCryptoException;
 import ch.epfl.dedis.lib.proto.Calypso;
 
@@ -24,7 +26,9 @@ public class CreateLTSReply {
     public CreateLTSReply(Calypso.CreateLTSReply reply) {
         this.byzcoinId = new SkipblockId(reply.getInstanceid());
         this.instanceId = new InstanceId(reply.getInstanceid());
-        this.X = PointFactory.getInstance().fromProto(reply.getX());
+        Point X = PointFactory.getInstance().fromProto(reply.getX());
+        // the key is multiplied for every write so its table is kept
+        this.X = X instanceof Ed25519Point ? new PreparedEd25519Point(X) : X;
     }
 
     /**
@@ -125,7 +125,9 @@ public class WriteData {
             C = C.add(Ed25519Point.embed(keyMaterial));
             wr.setC(C.toProto());
 
-            Point gBar = Ed25519Point.embed(lts.getLTSID().getId(), getXof(lts.getLTSID().getId()));
+            // multiplied twice, by r and s
+            Point gBar = new PreparedEd25519Point(
+                    Ed25519Point.embed(lts.getLTSID().getId(), getXof(lts.getLTSID().getId())));
             Point Ubar = gBar.mul(r);
             wr.setUbar(Ubar.toProto());
             Ed25519Pair skp = new Ed25519Pair();
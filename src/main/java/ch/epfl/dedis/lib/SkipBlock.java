@@ -1,5 +1,6 @@
 package ch.epfl.dedis.lib;
 
+import ch.epfl.dedis.lib.crypto.BlsBatchVerifier;
 import ch.epfl.dedis.lib.crypto.Point;
 import ch.epfl.dedis.lib.exception.CothorityCryptoException;
 import ch.epfl.dedis.lib.exception.CothorityException;
@@ -17,6 +18,7 @@ import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.UUID;
 import java.util.stream.Collectors;
 
 /**
@@ -75,8 +77,8 @@ public class SkipBlock {
         getBackLinks().forEach(bl -> digest.update(bl.getId()));
         getVerifiers().forEach(digest::update);
         try {
-            digest.update(skipBlock.getGenesis().toByteArray());
-            digest.update(getData());
+            digest.update(skipBlock.getGenesis().asReadOnlyByteBuffer());
+            digest.update(skipBlock.getData().asReadOnlyByteBuffer());
             if (getRoster() != null) {
                 getRoster().getNodes().forEach(si -> digest.update(si.getPublic().toBytes()));
             }
@@ -177,12 +179,26 @@ public class SkipBlock {
      * @return true if the signature is ok.
      */
     public boolean verifyForwardSignatures() {
-        List<Point> publics;
+        BlsBatchVerifier batch = new BlsBatchVerifier();
+        return addForwardSignatures(batch) && batch.verify();
+    }
+
+    /**
+     * Adds the signatures of the forward-links to a batch so that the
+     * signatures of many blocks are verified at once.
+     *
+     * @param batch the batch of signatures
+     * @return false if a forward-link is already known to be incorrect, true otherwise
+     */
+    public boolean addForwardSignatures(BlsBatchVerifier batch) {
+        Roster roster;
         try {
-            publics = new Roster(this.skipBlock.getRoster()).getServicePublics(SkipchainRPC.SERVICE_NANE);
+            roster = new Roster(this.skipBlock.getRoster());
         } catch (URISyntaxException e) {
             return false;
         }
+        List<Point> publics = roster.getServicePublics(SkipchainRPC.SERVICE_NANE);
+        UUID rosterID = roster.getID();
 
         for (ForwardLink fl : this.getForwardLinks()) {
             if (fl.isEmpty()) {
@@ -190,7 +206,7 @@ public class SkipBlock {
                 // forward-link in place.
                 continue;
             }
-            if (!fl.verifyWithScheme(publics, getSignatureScheme())) {
+            if (!fl.addToBatch(batch, publics, getSignatureScheme(), rosterID)) {
                 return false;
             }
         }
@@ -0,0 +1,90 @@
+package ch.epfl.dedis.lib.crypto;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * The BDN coefficients of a roster only depend on its public keys, so the context keeps the keys already weighted by
+ * their coefficient, (c+1) * P, and the aggregate for a mask is a sum of the enabled ones. The contexts of the rosters
+ * that have been used recently are shared by all the verifications, e.g. of the forward links of a chain.
+ */
+public class BdnContext {
+    // the rosters of a chain rarely change, so only a few of them are needed at the same time
+    private static final int CAPACITY = 16;
+
+    private static final Map<UUID, BdnContext> cache = new LinkedHashMap<UUID, BdnContext>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<UUID, BdnContext> eldest) {
+            return size() > CAPACITY;
+        }
+    };
+
+    private final List<Point> publics;
+    private final List<Point> weighted;
+
+    /**
+     * Computes the coefficients of the public keys and weights the keys with them.
+     *
+     * @param publics The list of public keys
+     */
+    BdnContext(List<Point> publics) {
+        this.publics = new ArrayList<>(publics);
+        this.weighted = new ArrayList<>();
+
+        List<Scalar> coefs = BdnSig.hashPointToR(publics);
+        for (int i = 0; i < coefs.size(); i++) {
+            // R is in the range [1; 2^128] inclusive thus (c+1) * p
+            weighted.add(publics.get(i).mul(coefs.get(i).addOne()));
+        }
+    }
+
+    /**
+     * Returns the context of the roster, from the cache if it has been used recently.
+     *
+     * @param rosterID  The ID of the roster, as given by Roster.getID()
+     * @param publics   The list of public keys of the roster used for the signatures
+     * @return the context
+     */
+    public static BdnContext forRoster(UUID rosterID, List<Point> publics) {
+        synchronized (cache) {
+            BdnContext ctx = cache.get(rosterID);
+            // the keys are compared as well so that a wrong ID can't give the context of another roster
+            if (ctx != null && ctx.publics.equals(publics)) {
+                return ctx;
+            }
+        }
+
+        // computed outside of the lock, at worst two threads do it for the same roster
+        BdnContext ctx = new BdnContext(publics);
+        synchronized (cache) {
+            cache.put(rosterID, ctx);
+        }
+        return ctx;
+    }
+
+    /**
+     * Make the aggregated public key of the keys enabled in the mask.
+     *
+     * @param mask The mask, which must be over the public keys of the context
+     * @return The point representing the aggregation or null if no key is enabled
+     */
+    Point aggregate(Mask mask) {
+        if (mask.getPublics().size() != publics.size()) {
+            throw new IllegalArgumentException("Length of the mask and the public keys of the context does not match");
+        }
+
+        List<Point> enabled = new ArrayList<>();
+        for (int i = 0; i < weighted.size(); i++) {
+            if (mask.indexEnabled(i)) {
+                enabled.add(weighted.get(i));
+            }
+        }
+        if (enabled.isEmpty()) {
+            return null;
+        }
+        return PointFactory.getInstance().sum(enabled);
+    }
+}
@@ -7,6 +7,7 @@ import java.math.BigInteger;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.UUID;
 
 /**
  * Boneh-Drijvers-Neven (BDN) signature scheme is a modified version of the BLS signature
@@ -43,6 +44,21 @@ public class BdnSig {
         return new BlsSig(this.sig).verify(msg, pubkey);
     }
 
+    /**
+     * Same as {@link #verify(byte[], Mask)} but the public keys weighted by their coefficient are kept for the
+     * roster, so that the next verifications only sum the keys enabled in the mask.
+     *
+     * @param msg       Signed message in bytes
+     * @param mask      Mask of the participation of the public keys
+     * @param rosterID  ID of the roster of the public keys, as given by Roster.getID()
+     * @return true if the signature matches, false otherwise
+     */
+    public boolean verify(byte[] msg, Mask mask, UUID rosterID) {
+        Bn256G2Point pubkey = (Bn256G2Point) BdnSig.aggregatePublicKeys(mask, rosterID);
+
+        return new BlsSig(this.sig).verify(msg, pubkey);
+    }
+
     /**
      * Make the aggregated public-key of the mask, that is the aggregation of the
      * public key enabled in the mask.
@@ -54,6 +70,21 @@ public class BdnSig {
         return BdnSig.aggregatePoints(mask, mask.getPublics());
     }
 
+    /**
+     * Make the aggregated public-key of the mask with the weighted keys of the roster that are kept for the next
+     * aggregations.
+     *
+     * @param mask      The mask to use
+     * @param rosterID  ID of the roster of the public keys, as given by Roster.getID(), or null if unknown
+     * @return The point representing the aggregation of the public keys
+     */
+    public static Point aggregatePublicKeys(Mask mask, UUID rosterID) {
+        if (rosterID == null) {
+            return BdnSig.aggregatePublicKeys(mask);
+        }
+        return BdnContext.forRoster(rosterID, mask.getPublics()).aggregate(mask);
+    }
+
     /**
      * Make the aggregate of the given points that are enabled in the mask. Note
      * that it must be in the same order and the length must match.
@@ -70,24 +101,21 @@ public class BdnSig {
 
         List<Scalar> coefs = BdnSig.hashPointToR(pubs);
 
-        Point agg = null;
+        List<Scalar> scalars = new ArrayList<>();
+        List<Point> enabled = new ArrayList<>();
         for (int i = 0; i < coefs.size(); i++) {
-            Scalar c = coefs.get(i);
-            Point p = points.get(i);
-
             if (mask.indexEnabled(i)) {
-                p = p.mul(c);
                 // R is in the range [1; 2^128] inclusive thus (c+1) * p
-                p = p.add(points.get(i));
-                if (agg == null) {
-                    agg = p;
-                } else {
-                    agg = agg.add(p);
-                }
+                scalars.add(coefs.get(i).addOne());
+                enabled.add(points.get(i));
             }
         }
 
-        return agg;
+        if (enabled.isEmpty()) {
+            return null;
+        }
+        // the sum of the products is computed at once which is much faster than multiplying every point
+        return PointFactory.getInstance().multiScalarMul(scalars, enabled);
     }
 
     /**
@@ -0,0 +1,177 @@
+package ch.epfl.dedis.lib.crypto;
+
+import ch.epfl.dedis.lib.crypto.bn256.BN;
+import ch.epfl.dedis.lib.exception.CothorityCryptoException;
+
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Verifies many BLS signatures S_i on messages m_i under the keys X_i at once by checking that
+ * prod(e(r_i * H(m_i), X_i)) * e(-sum(r_i * S_i), B2) == 1 for random weights r_i, so that the whole batch takes a
+ * single final exponentiation and one Miller loop per distinct key. A forged signature passes only if it cancels
+ * with the random weights, which happens with a probability of 2^-128.
+ * <p>
+ * When the batch fails, it is split in halves until the first invalid signature is found. The batches of less than
+ * {@link #MIN_BATCH} signatures are verified one signature at a time.
+ */
+public class BlsBatchVerifier {
+    /**
+     * The smallest number of signatures that are verified together: below it, checking the signatures one by one is
+     * faster than the batch, so {@link #verify()} falls back to single verifications.
+     */
+    public static final int MIN_BATCH = 4;
+    private static final int WEIGHT_BITS = 128;
+
+    private final Random rnd;
+    private final List<Entry> entries = new ArrayList<>();
+
+    /**
+     * Create an empty batch with weights drawn from a SecureRandom.
+     */
+    public BlsBatchVerifier() {
+        this(new SecureRandom());
+    }
+
+    /**
+     * Create an empty batch.
+     *
+     * @param rnd is the source of the weights, it must be cryptographically secure.
+     */
+    BlsBatchVerifier(Random rnd) {
+        this.rnd = rnd;
+    }
+
+    /**
+     * Add a signature to the batch.
+     *
+     * @param msg is the signed message.
+     * @param sig is the BLS signature.
+     * @param key is the public key, e.g. the aggregate of a mask.
+     */
+    public void add(byte[] msg, byte[] sig, Bn256G2Point key) {
+        BigInteger weight;
+        do {
+            weight = new BigInteger(WEIGHT_BITS, rnd);
+        } while (weight.signum() == 0);
+
+        entries.add(new Entry(msg, sig, key, weight));
+    }
+
+    /**
+     * @return the number of signatures in the batch.
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * @return true if all the signatures of the batch are valid.
+     */
+    public boolean verify() {
+        return findInvalid() < 0;
+    }
+
+    /**
+     * Locate an invalid signature by splitting the batch in halves.
+     *
+     * @return the index of the first invalid signature in the order of the additions, or -1 if they are all valid.
+     */
+    public int findInvalid() {
+        if (entries.isEmpty() || check(0, entries.size())) {
+            return -1;
+        }
+        return bisect(0, entries.size());
+    }
+
+    // the range is known to be invalid, and if its first half is valid the second one is invalid as they use the
+    // same weights
+    private int bisect(int from, int to) {
+        if (to - from == 1) {
+            return from;
+        }
+        int mid = (from + to) >>> 1;
+        if (!check(from, mid)) {
+            return bisect(from, mid);
+        }
+        return bisect(mid, to);
+    }
+
+    private boolean check(int from, int to) {
+        List<Entry> batch = entries.subList(from, to);
+        for (Entry e : batch) {
+            if (e.sig == null) {
+                return false;
+            }
+        }
+
+        if (batch.size() < MIN_BATCH) {
+            for (Entry e : batch) {
+                if (!new BlsSig(e.raw).verify(e.msg, e.key)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        // the messages signed with the same key only need one pairing
+        Map<ByteBuffer, List<Entry>> byKey = new LinkedHashMap<>();
+        for (Entry e : batch) {
+            byKey.computeIfAbsent(ByteBuffer.wrap(e.key.toBytes()), k -> new ArrayList<>()).add(e);
+        }
+
+        List<BN.G1> g1s = new ArrayList<>();
+        List<BN.PreparedG2> g2s = new ArrayList<>();
+        for (List<Entry> group : byKey.values()) {
+            g1s.add(weightedSum(group, true));
+            g2s.add(BlsSig.preparedKeys.get(group.get(0).key));
+        }
+        BN.G1 sigs = weightedSum(batch, false);
+        g1s.add(sigs.neg(sigs));
+        g2s.add(BlsSig.preparedBase);
+
+        return BN.preparedPairingCheck(g1s, g2s);
+    }
+
+    // sum of r_i * H(m_i) or of r_i * S_i
+    private static BN.G1 weightedSum(List<Entry> batch, boolean hashes) {
+        List<BigInteger> weights = new ArrayList<>();
+        List<BN.G1> points = new ArrayList<>();
+        for (Entry e : batch) {
+            weights.add(e.weight);
+            points.add(hashes ? e.hash : e.sig);
+        }
+        return BN.G1.multiScalarMul(weights, points);
+    }
+
+    private static class Entry {
+        final byte[] msg;
+        final byte[] raw;
+        final Bn256G2Point key;
+        final BigInteger weight;
+        final BN.G1 hash;
+        final BN.G1 sig;
+
+        Entry(byte[] msg, byte[] raw, Bn256G2Point key, BigInteger weight) {
+            this.msg = msg;
+            this.raw = raw;
+            this.key = key;
+            this.weight = weight;
+            this.hash = BN.G1.hashToPoint(msg);
+
+            BN.G1 s;
+            try {
+                s = new Bn256G1Point(raw).g1;
+            } catch (CothorityCryptoException e) {
+                s = null;
+            }
+            this.sig = s;
+        }
+    }
+}
@@ -4,11 +4,16 @@ import ch.epfl.dedis.lib.crypto.bn256.BN;
 import ch.epfl.dedis.lib.exception.CothorityCryptoException;
 
 import java.math.BigInteger;
+import java.util.Arrays;
 
 /**
  * Class that represents a BLS signature.
  */
 public class BlsSig {
+    // the public keys that have been used recently, e.g. the aggregates of the rosters of a chain
+    static final PreparedG2Cache preparedKeys = new PreparedG2Cache(32);
+    static final BN.PreparedG2 preparedBase = new BN.PreparedG2(new BN.G2().scalarBaseMul(BigInteger.ONE));
+
     private byte[] sig;
 
     /**
@@ -37,22 +42,24 @@ public class BlsSig {
      * Verify checks the given BLS signature S on the message m using the public
      * key X by verifying that the equality e(H(m), X) == e(H(m), x*B2) ==
      * e(x*H(m), B2) == e(S, B2) holds where e is the pairing operation and B2 is
-     * the base point from curve G2.
+     * the base point from curve G2. It is checked as e(H(m), X) * e(-S, B2) == 1
+     * so that both pairings share the final exponentiation. The lines of the Miller
+     * loops of X and B2 are kept for the next verifications.
      *
      * @param msg the signed message .
      * @param X the public key.
      * @return true if the verification is successful.
      */
     public boolean verify(byte[] msg, Bn256G2Point X) {
-        Bn256G1Point HM = new Bn256G1Point(BN.G1.hashToPoint(msg));
-        BN.GT left = HM.pair(X);
+        BN.G1 HM = BN.G1.hashToPoint(msg);
         try {
             Bn256G1Point s = new Bn256G1Point(sig);
             if (s.g1 == null) {
                 return false;
             }
-            BN.GT right = s.pair(new Bn256G2Point(BigInteger.ONE));
-            return left.equals(right);
+            // the point was just decoded so it can be negated in place
+            s.g1.neg(s.g1);
+            return BN.preparedPairingCheck(Arrays.asList(HM, s.g1), Arrays.asList(preparedKeys.get(X), preparedBase));
         } catch (CothorityCryptoException e) {
             return false;
         }
@@ -59,6 +59,11 @@ public class Bn256G1Point implements Point {
         this.g1 = new BN.G1(g1);
     }
 
+    // the results of the operations are computed directly in the point instead of being copied
+    private Bn256G1Point() {
+        this.g1 = new BN.G1();
+    }
+
     /**
      * Returns a hard copy of the point
      *
@@ -96,9 +101,9 @@ public class Bn256G1Point implements Point {
             throw new UnsupportedOperationException();
         }
         BigInteger k = new BigInteger(1, s.getBigEndian());
-        BN.G1 p = new BN.G1();
-        p.scalarMul(this.g1, k);
-        return new Bn256G1Point(p);
+        Bn256G1Point p = new Bn256G1Point();
+        p.g1.scalarMul(this.g1, k);
+        return p;
     }
 
     /**
@@ -112,9 +117,9 @@ public class Bn256G1Point implements Point {
         if (!(other instanceof Bn256G1Point)) {
             throw new UnsupportedOperationException();
         }
-        BN.G1 p = new BN.G1();
-        p.add(this.g1, ((Bn256G1Point) other).g1);
-        return new Bn256G1Point(p);
+        Bn256G1Point p = new Bn256G1Point();
+        p.g1.add(this.g1, ((Bn256G1Point) other).g1);
+        return p;
     }
 
     /**
@@ -156,9 +161,9 @@ public class Bn256G1Point implements Point {
      */
     @Override
     public Point negate() {
-        BN.G1 p = new BN.G1();
-        p.neg(this.g1);
-        return new Bn256G1Point(p);
+        Bn256G1Point p = new Bn256G1Point();
+        p.g1.neg(this.g1);
+        return p;
     }
 
     @Override
@@ -181,9 +186,9 @@ public class Bn256G1Point implements Point {
      */
     @Override
     public Point getZero() {
-        BN.G1 p = new BN.G1();
-        p.setInfinity();
-        return new Bn256G1Point(p);
+        Bn256G1Point p = new Bn256G1Point();
+        p.g1.setInfinity();
+        return p;
     }
 
     /**
@@ -59,6 +59,11 @@ public class Bn256G2Point implements Point {
         this.g2 = new BN.G2(g2);
     }
 
+    // the results of the operations are computed directly in the point instead of being copied
+    private Bn256G2Point() {
+        this.g2 = new BN.G2();
+    }
+
     /**
      * Returns a hard copy of the point
      *
@@ -96,9 +101,9 @@ public class Bn256G2Point implements Point {
             throw new UnsupportedOperationException();
         }
         BigInteger k = new BigInteger(1, s.getBigEndian());
-        BN.G2 p = new BN.G2();
-        p.scalarMul(this.g2, k);
-        return new Bn256G2Point(p);
+        Bn256G2Point p = new Bn256G2Point();
+        p.g2.scalarMul(this.g2, k);
+        return p;
     }
 
     /**
@@ -112,9 +117,9 @@ public class Bn256G2Point implements Point {
         if (!(other instanceof Bn256G2Point)) {
             throw new UnsupportedOperationException();
         }
-        BN.G2 p = new BN.G2();
-        p.add(this.g2, ((Bn256G2Point) other).g2);
-        return new Bn256G2Point(p);
+        Bn256G2Point p = new Bn256G2Point();
+        p.g2.add(this.g2, ((Bn256G2Point) other).g2);
+        return p;
     }
 
     /**
@@ -156,9 +161,9 @@ public class Bn256G2Point implements Point {
      */
     @Override
     public Point negate() {
-        BN.G2 p = new BN.G2();
-        p.neg(this.g2);
-        return new Bn256G2Point(p);
+        Bn256G2Point p = new Bn256G2Point();
+        p.g2.neg(this.g2);
+        return p;
     }
 
     @Override
@@ -181,9 +186,9 @@ public class Bn256G2Point implements Point {
      */
     @Override
     public Point getZero() {
-        BN.G2 p = new BN.G2();
-        p.setInfinity();
-        return new Bn256G2Point(p);
+        Bn256G2Point p = new Bn256G2Point();
+        p.g2.setInfinity();
+        return p;
     }
 
     /**
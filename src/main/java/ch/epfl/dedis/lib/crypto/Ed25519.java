@@ -23,7 +23,7 @@ public class Ed25519 {
     public static final EdDSANamedCurveSpec ed25519 = EdDSANamedCurveTable.getByName("Ed25519");
     public static Curve curve = ed25519.getCurve();
     public static Field field = curve.getField();
-    public static Point base = new Ed25519Point(Ed25519.ed25519.getB());
+    public static Point base = new PreparedEd25519Point(Ed25519.ed25519.getB());
     public static Scalar prime_order = new Ed25519Scalar("EDD3F55C1A631258D69CF7A2DEF9DE1400000000000000000000000000000010", false);
     public static Scalar cofactor = new Ed25519Scalar("0800000000000000000000000000000000000000000000000000000000000000", false);
 
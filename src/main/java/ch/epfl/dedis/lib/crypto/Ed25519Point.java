@@ -20,7 +20,7 @@ public class Ed25519Point implements Point {
 
     private final static Logger logger = LoggerFactory.getLogger(Ed25519Point.class);
 
-    private GroupElement element;
+    private final GroupElement element;
 
     public Ed25519Point(byte[] b) throws CothorityCryptoException {
         if (b.length != 40 && b.length != 32) {
@@ -59,14 +59,25 @@ public class Ed25519Point implements Point {
     }
 
     public Point mul(Scalar s) {
-        element = element.toP3();
-        element.precompute(true);
-        return new Ed25519Point(element.scalarMultiply(s.getLittleEndian()));
+        return new Ed25519Point(precomputed().scalarMultiply(s.getLittleEndian()));
+    }
+
+    /**
+     * Returns the element with the table of its multiples used by the scalar multiplication. Building the table
+     * costs much more than the multiplication itself, so it is only kept by {@link PreparedEd25519Point} and the base
+     * point, and this point is never modified.
+     *
+     * @return a new element with its table
+     */
+    GroupElement precomputed() {
+        GroupElement p = element.toP3();
+        p.precompute(true);
+        return p;
     }
 
     public Point add(Point other) {
         Ed25519Point p = convert(other);
-        return new Ed25519Point(element.toP3().add(p.element.toCached()));
+        return new Ed25519Point(element.toP3().add(p.element.toP3().toCached()));
     }
 
     public ByteString toProto() {
@@ -78,7 +89,8 @@ public class Ed25519Point implements Point {
     }
 
     public boolean isZero() {
-        return this.element.equals(Ed25519.curve.getZero(GroupElement.Representation.P3));
+        // compared on the encodings as the element may not be in the P3 representation, e.g. after an addition
+        return Arrays.equals(toBytes(), Ed25519.curve.getZero(GroupElement.Representation.P3).toByteArray());
     }
 
     public Point getZero() {
@@ -98,6 +110,82 @@ public class Ed25519Point implements Point {
         return new Ed25519Point(element.toP3().negate());
     }
 
+    /**
+     * Computes the sum of scalars[i]*points[i] with the bucket method of Pippenger: for every window of the scalars
+     * the points are first added to the bucket of their digit, and the buckets are then summed with their weights.
+     * The running time depends on the scalars so they must not be secret.
+     *
+     * @param scalars the little-endian scalars
+     * @param points the points, in the same order
+     * @return the sum of the products
+     */
+    static Ed25519Point multiMul(byte[][] scalars, Ed25519Point[] points) {
+        GroupElement[] p3s = new GroupElement[points.length];
+        GroupElement[] cached = new GroupElement[points.length];
+        int bitLength = 0;
+        for (int i = 0; i < points.length; i++) {
+            p3s[i] = points[i].element.toP3();
+            cached[i] = p3s[i].toCached();
+            bitLength = Math.max(bitLength, bitLength(scalars[i]));
+        }
+
+        int c = Math.max(2, 31 - Integer.numberOfLeadingZeros(points.length) - 1);
+        // a null bucket is empty, which saves the additions to the neutral element
+        GroupElement[] buckets = new GroupElement[(1 << c) - 1];
+
+        GroupElement sum = Ed25519.curve.getZero(GroupElement.Representation.P3);
+        for (int w = (bitLength + c - 1) / c - 1; w >= 0; w--) {
+            for (int i = 0; i < c; i++) {
+                sum = sum.dbl().toP3();
+            }
+
+            Arrays.fill(buckets, null);
+            for (int i = 0; i < points.length; i++) {
+                int digit = bits(scalars[i], w * c, c);
+                if (digit != 0) {
+                    GroupElement b = buckets[digit - 1];
+                    buckets[digit - 1] = b == null ? p3s[i] : b.add(cached[i]).toP3();
+                }
+            }
+
+            // running is the sum of the buckets from the top one, so the bucket of digit d is added d times
+            GroupElement running = null;
+            GroupElement window = null;
+            for (int i = buckets.length - 1; i >= 0; i--) {
+                if (buckets[i] != null) {
+                    running = running == null ? buckets[i] : running.add(buckets[i].toCached()).toP3();
+                }
+                if (running != null) {
+                    window = window == null ? running : window.add(running.toCached()).toP3();
+                }
+            }
+            if (window != null) {
+                sum = sum.add(window.toCached()).toP3();
+            }
+        }
+
+        return new Ed25519Point(sum);
+    }
+
+    private static int bitLength(byte[] k) {
+        for (int i = k.length - 1; i >= 0; i--) {
+            if (k[i] != 0) {
+                return 8 * i + 32 - Integer.numberOfLeadingZeros(k[i] & 0xff);
+            }
+        }
+        return 0;
+    }
+
+    // the count bits of a little-endian scalar starting at from
+    private static int bits(byte[] k, int from, int count) {
+        int v = 0;
+        for (int i = count - 1; i >= 0; i--) {
+            int bit = from + i;
+            v = (v << 1) | (bit < 8 * k.length ? (k[bit >> 3] >> (bit & 7)) & 1 : 0);
+        }
+        return v;
+    }
+
     public byte[] data() throws CothorityCryptoException {
         byte[] bytes = toBytes();
         int len = bytes[0];
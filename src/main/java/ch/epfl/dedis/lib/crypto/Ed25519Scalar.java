@@ -4,13 +4,26 @@ import ch.epfl.dedis.lib.Hex;
 import com.google.protobuf.ByteString;
 import net.i2p.crypto.eddsa.EdDSAPrivateKey;
 import net.i2p.crypto.eddsa.math.FieldElement;
-import net.i2p.crypto.eddsa.math.ed25519.Ed25519ScalarOps;
 import net.i2p.crypto.eddsa.spec.EdDSAPrivateKeySpec;
 
+import java.math.BigInteger;
 import java.util.Arrays;
 
+/**
+ * A scalar of the Ed25519 group, i.e. an integer modulo the order l of the base point. The value is stored as four
+ * 64-bit limbs, least significant first, and the operations work on the limbs directly; their results are always
+ * reduced modulo l. A scalar created without reduction, like the order itself, keeps its value until it is used in an
+ * operation. The byte representation is the 32 bytes little-endian of the reduced value.
+ */
 public class Ed25519Scalar implements Scalar {
-    public FieldElement fieldElement;
+    // l = 2^252 + 27742317777372353535851937790883648493
+    private static final long[] L = {0x5812631a5cf5d3edL, 0x14def9dea2f79cd6L, 0L, 0x1000000000000000L};
+    // floor(2^512 / l) for the Barrett reduction
+    private static final long[] MU = {0xed9ce5a30a2c131bL, 0x2106215d086329a7L, 0xffffffffffffffebL,
+            0xffffffffffffffffL, 0xfL};
+    private static final long[] ONE = {1, 0, 0, 0};
+
+    private final long[] limbs;
 
     public Ed25519Scalar(String str) {
         this(str, true);
@@ -24,17 +37,27 @@ public class Ed25519Scalar implements Scalar {
         this(b, true);
     }
 
+    /**
+     * Creates a scalar from its little-endian representation.
+     *
+     * @param b      the bytes, up to 64 when reduced
+     * @param reduce true to reduce the value modulo l, otherwise only the first 32 bytes are read and the value is
+     *               kept modulo 2^255 - 19 as for a field element
+     */
     public Ed25519Scalar(byte[] b, boolean reduce) {
         if (reduce) {
-            byte[] reduced = new Ed25519ScalarOps().reduce(Arrays.copyOfRange(b, 0, 64));
-            fieldElement = Ed25519.field.fromByteArray(reduced);
+            limbs = barrett(fromLittleEndian(Arrays.copyOf(b, 64)));
         } else {
-            fieldElement = Ed25519.field.fromByteArray(b);
+            limbs = fieldValue(fromLittleEndian(Arrays.copyOf(b, 32)));
         }
     }
 
     public Ed25519Scalar(FieldElement f) {
-        fieldElement = f;
+        this(f.toByteArray(), false);
+    }
+
+    private Ed25519Scalar(long[] limbs) {
+        this.limbs = limbs;
     }
 
     public String toString() {
@@ -42,28 +65,27 @@ public class Ed25519Scalar implements Scalar {
     }
 
     public ByteString toProto() {
-        return ByteString.copyFrom(reduce().getLittleEndian());
+        return ByteString.copyFrom(toBytes());
     }
 
     public byte[] toBytes() {
-        return reduce().getLittleEndian();
+        return toLittleEndian(reduced(limbs));
     }
 
     public Scalar reduce() {
-        return new Ed25519Scalar(Ed25519.ed25519.getScalarOps().reduce(getLittleEndianFull()));
+        return new Ed25519Scalar(reduced(limbs));
     }
 
     public Scalar copy() {
-        return new Ed25519Scalar(getLittleEndian());
+        return reduce();
     }
 
     public boolean equals(Scalar other) {
-        Ed25519Scalar s = convert(other);
-        return Arrays.equals(fieldElement.toByteArray(), s.fieldElement.toByteArray());
+        return Arrays.equals(limbs, convert(other).limbs);
     }
 
     public Scalar addOne() {
-        return new Ed25519Scalar(fieldElement.addOne());
+        return add(new Ed25519Scalar(ONE));
     }
 
     public byte[] getBigEndian() {
@@ -71,35 +93,68 @@ public class Ed25519Scalar implements Scalar {
     }
 
     public byte[] getLittleEndian() {
-        return fieldElement.toByteArray();
+        return toLittleEndian(limbs);
     }
 
     public Scalar add(Scalar b) {
-        Ed25519Scalar other = convert(b);
-        return new Ed25519Scalar(fieldElement.add(other.fieldElement));
+        long[] x = reduced(limbs);
+        long[] y = reduced(convert(b).limbs);
+
+        // x + y < 2l < 2^254 so the sum fits and one subtraction reduces it
+        long[] r = new long[4];
+        long c = 0;
+        for (int i = 0; i < 4; i++) {
+            long s = x[i] + y[i];
+            long t = s + c;
+            c = addCarry(x[i], y[i], s) + addCarry(s, c, t);
+            r[i] = t;
+        }
+        if (compare(r, L) >= 0) {
+            subtract(r, L);
+        }
+        return new Ed25519Scalar(r);
     }
 
     public Scalar sub(Scalar b) {
-        Ed25519Scalar other = convert(b);
-        return new Ed25519Scalar(fieldElement.subtract(other.fieldElement));
+        long[] r = reduced(limbs).clone();
+        if (subtract(r, reduced(convert(b).limbs)) != 0) {
+            // x - y + 2^256 + l = x - y + l mod 2^256
+            long c = 0;
+            for (int i = 0; i < 4; i++) {
+                long s = r[i] + L[i];
+                long t = s + c;
+                c = addCarry(r[i], L[i], s) + addCarry(s, c, t);
+                r[i] = t;
+            }
+        }
+        return new Ed25519Scalar(r);
     }
 
+    /**
+     * Computes the inverse modulo l.
+     *
+     * @throws ArithmeticException if the scalar is zero
+     */
     public Scalar invert() {
-        return new Ed25519Scalar(fieldElement.invert());
+        // only used for a few one-off computations so BigInteger is fast enough
+        BigInteger order = new BigInteger(1, Ed25519.reverse(toLittleEndian(L)));
+        BigInteger x = new BigInteger(1, Ed25519.reverse(toBytes()));
+        return new Ed25519Scalar(Ed25519.reverse(bigIntegerToBytes(x.modInverse(order))), false);
     }
 
     public Scalar negate() {
-        return convert(Ed25519.prime_order).sub(this.reduce()).reduce();
+        return new Ed25519Scalar(new long[4]).sub(this);
     }
 
     public boolean isZero() {
-        return !convert(reduce()).fieldElement.isNonZero();
+        long[] r = reduced(limbs);
+        return (r[0] | r[1] | r[2] | r[3]) == 0;
     }
 
     public Scalar mul(Scalar s) {
-        Ed25519Scalar other = convert(s);
-        return new Ed25519Scalar(Ed25519.ed25519.getScalarOps().multiplyAndAdd(fieldElement.toByteArray(), other.fieldElement.toByteArray(),
-                Ed25519.field.ZERO.toByteArray()));
+        long[] product = new long[8];
+        mul(limbs, 0, 4, convert(s).limbs, product);
+        return new Ed25519Scalar(barrett(product));
     }
 
     public EdDSAPrivateKey getPrivate() {
@@ -115,11 +170,140 @@ public class Ed25519Scalar implements Scalar {
     }
 
     /**
-     * Sometimes the scalar is small and getLittleEndian returns fewer than 32 bytes. Which may be a problem for some
-     * methods in this file. This method always fills the little-endian representation to its maximum length with zeros.
+     * The private key takes 64 bytes, this method fills the little-endian representation to its maximum length
+     * with zeros.
      */
     private byte[] getLittleEndianFull() {
         return Arrays.copyOfRange(getLittleEndian(), 0, 64);
     }
 
+    // the value of the limbs reduced modulo l, which is most of the time the value itself
+    private static long[] reduced(long[] n) {
+        if (Long.compareUnsigned(n[3], L[3]) < 0) {
+            // below 2^252 < l
+            return n;
+        }
+        return barrett(Arrays.copyOf(n, 8));
+    }
+
+    /**
+     * Reduces a value of 8 limbs modulo l with the Barrett reduction (Handbook of Applied Cryptography, 14.42):
+     * q = floor(floor(x / b^3) * mu / b^5) is at most 2 below floor(x / l) so that x - q*l is reduced with at most
+     * two subtractions.
+     */
+    private static long[] barrett(long[] x) {
+        long[] q = new long[10];
+        mul(x, 3, 5, MU, q);
+        // only the low limbs of q*l are needed, the higher ones are cancelled by x
+        long[] ql = new long[5];
+        mul(q, 5, 5, L, ql);
+
+        // x - q*l < 3l, so it is computed modulo b^5
+        long[] r = Arrays.copyOf(x, 5);
+        subtract(r, ql);
+        while (compare(r, L) >= 0) {
+            subtract(r, L);
+        }
+        return Arrays.copyOf(r, 4);
+    }
+
+    // the value of a field element as decoded by the eddsa library: the top bit is ignored and it is taken modulo
+    // p = 2^255 - 19
+    private static long[] fieldValue(long[] n) {
+        n[3] &= Long.MAX_VALUE;
+        if (n[3] == Long.MAX_VALUE && n[2] == -1 && n[1] == -1 && Long.compareUnsigned(n[0], -19) >= 0) {
+            // n - p = n + 19 - 2^255 and n + 19 only carries into the top bit
+            n[0] += 19;
+            n[1] = 0;
+            n[2] = 0;
+            n[3] = 0;
+        }
+        return n;
+    }
+
+    // r = a[off..off+len] * b modulo 2^(64*r.length), where r is zero
+    private static void mul(long[] a, int off, int len, long[] b, long[] r) {
+        for (int i = 0; i < len && i < r.length; i++) {
+            long ai = a[off + i];
+            long c = 0;
+            for (int j = 0; j < b.length && i + j < r.length; j++) {
+                long lo = ai * b[j];
+                long hi = mulHi(ai, b[j]);
+                long s = r[i + j] + lo;
+                hi += addCarry(r[i + j], lo, s);
+                long t = s + c;
+                hi += addCarry(s, c, t);
+                r[i + j] = t;
+                c = hi;
+            }
+            if (i + b.length < r.length) {
+                r[i + b.length] = c;
+            }
+        }
+    }
+
+    // a -= b modulo 2^(64*a.length) where b has at most as many limbs as a, returns the borrow
+    private static long subtract(long[] a, long[] b) {
+        long borrow = 0;
+        for (int i = 0; i < a.length; i++) {
+            long bi = i < b.length ? b[i] : 0;
+            long d = a[i] - bi;
+            long e = d - borrow;
+            borrow = subBorrow(a[i], bi, d) | subBorrow(d, borrow, e);
+            a[i] = e;
+        }
+        return borrow;
+    }
+
+    // compares a with b that has at most as many limbs
+    private static int compare(long[] a, long[] b) {
+        for (int i = a.length - 1; i >= 0; i--) {
+            long bi = i < b.length ? b[i] : 0;
+            if (a[i] != bi) {
+                return Long.compareUnsigned(a[i], bi);
+            }
+        }
+        return 0;
+    }
+
+    private static long addCarry(long a, long b, long s) {
+        return ((a & b) | ((a | b) & ~s)) >>> 63;
+    }
+
+    private static long subBorrow(long a, long b, long d) {
+        return ((~a & b) | (~(a ^ b) & d)) >>> 63;
+    }
+
+    // the high 64 bits of the unsigned product, Math.multiplyHigh is not available in Java 8
+    private static long mulHi(long a, long b) {
+        long a0 = a & 0xffffffffL, a1 = a >>> 32;
+        long b0 = b & 0xffffffffL, b1 = b >>> 32;
+        long p00 = a0 * b0, p01 = a0 * b1, p10 = a1 * b0, p11 = a1 * b1;
+        long mid = (p00 >>> 32) + (p01 & 0xffffffffL) + (p10 & 0xffffffffL);
+        return p11 + (p01 >>> 32) + (p10 >>> 32) + (mid >>> 32);
+    }
+
+    private static long[] fromLittleEndian(byte[] b) {
+        long[] n = new long[b.length / 8];
+        for (int i = 0; i < b.length; i++) {
+            n[i / 8] |= (b[i] & 0xffL) << (8 * (i % 8));
+        }
+        return n;
+    }
+
+    private static byte[] toLittleEndian(long[] n) {
+        byte[] b = new byte[32];
+        for (int i = 0; i < 32; i++) {
+            b[i] = (byte) (n[i / 8] >>> (8 * (i % 8)));
+        }
+        return b;
+    }
+
+    private static byte[] bigIntegerToBytes(BigInteger a) {
+        byte[] bytes = a.toByteArray();
+        byte[] r = new byte[32];
+        int len = Math.min(bytes.length, 32);
+        System.arraycopy(bytes, bytes.length - len, r, 32 - len, len);
+        return r;
+    }
 }
@@ -27,17 +27,11 @@ public class Mask {
         }
         this.publics = publics;
         this.mask = new byte[(this.publics.size() + 7) >> 3];
-        this.aggregate = publics.get(0).getZero();
         for (int i = 0; i < publics.size(); i++) {
             byte byt = (byte)(i >> 3);
             byte msk = (byte)(1 << (i&7));
-            if (((this.mask[byt] & msk) == 0) && ((mask[byt] & msk) != 0)) {
+            if ((mask[byt] & msk) != 0) {
                 this.mask[byt] ^= msk; // flip bit in mask from 0 to 1
-                this.aggregate = this.aggregate.add(this.publics.get(i));
-            }
-            if (((this.mask[byt] & msk) != 0) && ((mask[byt] & msk) == 0)) {
-                this.mask[byt] ^= msk; // flip bit in mask from 1 to 0
-                this.aggregate = this.aggregate.add(this.publics.get(i).negate());
             }
         }
     }
@@ -50,9 +44,23 @@ public class Mask {
     }
 
     /**
-     * Gets the aggregate public key according to the mask.
+     * Gets the aggregate public key according to the mask. It is only computed the first time as the BDN
+     * signatures don't use it.
      */
-    public Point getAggregate() {
+    public synchronized Point getAggregate() {
+        if (this.aggregate == null) {
+            List<Point> enabled = new ArrayList<>();
+            for (int i = 0; i < this.publics.size(); i++) {
+                if (this.indexEnabled(i)) {
+                    enabled.add(this.publics.get(i));
+                }
+            }
+            if (enabled.isEmpty()) {
+                this.aggregate = this.publics.get(0).getZero();
+            } else {
+                this.aggregate = PointFactory.getInstance().sum(enabled);
+            }
+        }
         return this.aggregate;
     }
 
@@ -126,12 +134,7 @@ public class Mask {
         for (Point p : this.publics) {
             out += "\n" + p.toString();
         }
-        out += "\naggregate: ";
-        if (this.aggregate == null) {
-            out += "null";
-        } else {
-            out += this.aggregate.toString();
-        }
+        out += "\naggregate: " + this.getAggregate().toString();
         return out;
     }
 }
@@ -1,13 +1,17 @@
 package ch.epfl.dedis.lib.crypto;
 
+import ch.epfl.dedis.lib.crypto.bn256.BN;
 import ch.epfl.dedis.lib.exception.CothorityCryptoException;
 import com.google.protobuf.ByteString;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.math.BigInteger;
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -85,6 +89,101 @@ public class PointFactory {
         return null;
     }
 
+    /**
+     * Compute the sum of scalars[i]*points[i]. The bn256 and Ed25519 points are computed with a multi-scalar
+     * multiplication that is much faster than multiplying every point, and the mixed lists fall back to the
+     * multiplications. The multi-scalar multiplications are not constant time so the scalars must not be secret.
+     *
+     * @param scalars the list of scalars
+     * @param points the list of points, in the same order
+     * @return the sum of the products
+     * @throws IllegalArgumentException if the lists are empty or don't have the same size
+     */
+    public Point multiScalarMul(List<Scalar> scalars, List<Point> points) {
+        if (scalars.size() != points.size()) {
+            throw new IllegalArgumentException("Length of the list of scalars and the list of points does not match");
+        }
+        if (points.isEmpty()) {
+            throw new IllegalArgumentException("Cannot compute the multi-scalar multiplication of empty lists");
+        }
+
+        if (scalars.stream().allMatch(s -> s instanceof Bn256Scalar)) {
+            List<BigInteger> ks = new ArrayList<>();
+            for (Scalar s : scalars) {
+                ks.add(new BigInteger(1, s.getBigEndian()));
+            }
+
+            if (points.stream().allMatch(p -> p instanceof Bn256G2Point)) {
+                List<BN.G2> g2s = new ArrayList<>();
+                for (Point p : points) {
+                    g2s.add(((Bn256G2Point) p).g2);
+                }
+                return new Bn256G2Point(BN.G2.multiScalarMul(ks, g2s));
+            }
+
+            if (points.stream().allMatch(p -> p instanceof Bn256G1Point)) {
+                List<BN.G1> g1s = new ArrayList<>();
+                for (Point p : points) {
+                    g1s.add(((Bn256G1Point) p).g1);
+                }
+                return new Bn256G1Point(BN.G1.multiScalarMul(ks, g1s));
+            }
+        }
+
+        if (scalars.stream().allMatch(s -> s instanceof Ed25519Scalar)
+                && points.stream().allMatch(p -> p instanceof Ed25519Point)) {
+            byte[][] ks = new byte[scalars.size()][];
+            Ed25519Point[] ps = new Ed25519Point[points.size()];
+            for (int i = 0; i < ks.length; i++) {
+                ks[i] = scalars.get(i).getLittleEndian();
+                ps[i] = (Ed25519Point) points.get(i);
+            }
+            return Ed25519Point.multiMul(ks, ps);
+        }
+
+        Point sum = points.get(0).mul(scalars.get(0));
+        for (int i = 1; i < points.size(); i++) {
+            sum = sum.add(points.get(i).mul(scalars.get(i)));
+        }
+        return sum;
+    }
+
+    /**
+     * Compute the sum of the points. The bn256 points are added in place into a single point instead of allocating
+     * a new point for every addition.
+     *
+     * @param points the list of points
+     * @return the sum
+     * @throws IllegalArgumentException if the list is empty
+     */
+    public Point sum(List<Point> points) {
+        if (points.isEmpty()) {
+            throw new IllegalArgumentException("Cannot compute the sum of an empty list");
+        }
+
+        if (points.stream().allMatch(p -> p instanceof Bn256G2Point)) {
+            BN.G2 sum = new BN.G2(((Bn256G2Point) points.get(0)).g2);
+            for (int i = 1; i < points.size(); i++) {
+                sum.add(sum, ((Bn256G2Point) points.get(i)).g2);
+            }
+            return new Bn256G2Point(sum);
+        }
+
+        if (points.stream().allMatch(p -> p instanceof Bn256G1Point)) {
+            BN.G1 sum = new BN.G1(((Bn256G1Point) points.get(0)).g1);
+            for (int i = 1; i < points.size(); i++) {
+                sum.add(sum, ((Bn256G1Point) points.get(i)).g1);
+            }
+            return new Bn256G1Point(sum);
+        }
+
+        Point sum = points.get(0);
+        for (int i = 1; i < points.size(); i++) {
+            sum = sum.add(points.get(i));
+        }
+        return sum;
+    }
+
     /**
      * Generator used to create point of the right suite for given tags
      */
@@ -0,0 +1,41 @@
+package ch.epfl.dedis.lib.crypto;
+
+import net.i2p.crypto.eddsa.math.GroupElement;
+
+/**
+ * An Ed25519 point that keeps the table of its multiples after the first multiplication, so that the next ones only
+ * cost the multiplication itself. It is meant for the points that are multiplied many times, like the base point or
+ * the public key of a long term secret. The results of the operations are plain points.
+ */
+public class PreparedEd25519Point extends Ed25519Point {
+    private volatile GroupElement table;
+
+    /**
+     * Creates the prepared version of the point, the table is built by the first multiplication.
+     *
+     * @param p the point, it must be an Ed25519 point
+     */
+    public PreparedEd25519Point(Point p) {
+        super(p);
+    }
+
+    /**
+     * Creates the prepared version of the element, the table is built by the first multiplication.
+     *
+     * @param e the element
+     */
+    public PreparedEd25519Point(GroupElement e) {
+        super(e);
+    }
+
+    @Override
+    GroupElement precomputed() {
+        GroupElement t = table;
+        if (t == null) {
+            // the table is never modified once built, at worst two threads build it
+            t = super.precomputed();
+            table = t;
+        }
+        return t;
+    }
+}
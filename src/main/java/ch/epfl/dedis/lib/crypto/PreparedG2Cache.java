@@ -0,0 +1,62 @@
+package ch.epfl.dedis.lib.crypto;
+
+import ch.epfl.dedis.lib.crypto.bn256.BN;
+
+import java.nio.ByteBuffer;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A bounded cache of the prepared G2 points, keyed by their marshalling and evicting the least recently used one, so
+ * that the signatures of the same public key, e.g. the aggregate of a roster for consecutive blocks, are verified
+ * without computing the lines of its Miller loop again.
+ */
+class PreparedG2Cache {
+    private final int capacity;
+    private final Map<ByteBuffer, BN.PreparedG2> cache;
+
+    /**
+     * @param capacity is the maximum number of points to keep.
+     */
+    PreparedG2Cache(int capacity) {
+        this.capacity = capacity;
+        this.cache = new LinkedHashMap<ByteBuffer, BN.PreparedG2>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<ByteBuffer, BN.PreparedG2> eldest) {
+                return size() > PreparedG2Cache.this.capacity;
+            }
+        };
+    }
+
+    /**
+     * Returns the prepared point, from the cache if it has been seen recently.
+     *
+     * @param p is the point.
+     * @return the prepared point.
+     */
+    BN.PreparedG2 get(Bn256G2Point p) {
+        ByteBuffer key = ByteBuffer.wrap(p.toBytes());
+        synchronized (cache) {
+            BN.PreparedG2 prepared = cache.get(key);
+            if (prepared != null) {
+                return prepared;
+            }
+        }
+
+        // prepared outside of the lock, at worst two threads do it for the same point
+        BN.PreparedG2 prepared = new BN.PreparedG2(p.g2);
+        synchronized (cache) {
+            cache.put(key, prepared);
+        }
+        return prepared;
+    }
+
+    /**
+     * @return the number of points in the cache.
+     */
+    int size() {
+        synchronized (cache) {
+            return cache.size();
+        }
+    }
+}
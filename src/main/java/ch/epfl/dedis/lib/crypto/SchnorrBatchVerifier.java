@@ -0,0 +1,220 @@
+package ch.epfl.dedis.lib.crypto;
+
+import ch.epfl.dedis.lib.exception.CothorityCryptoException;
+
+import java.nio.ByteBuffer;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+/**
+ * Verifies many Schnorr signatures (R_i, s_i) on messages m_i under the keys X_i at once by checking that
+ * 8 * (sum(z_i * s_i) * B - sum(z_i * R_i) - sum(z_i * H(R_i, X_i, m_i) * X_i)) == 0 for random weights z_i, which
+ * takes one multi-scalar multiplication instead of two scalar multiplications per signature. A forged signature passes
+ * only if it cancels with the random weights, which happens with a probability of 2^-128.
+ * <p>
+ * The multiplication by the cofactor ignores the components of small order of R_i and X_i, which an honest signer
+ * never produces. The batches too small to be worth a multi-scalar multiplication are verified one signature at a time
+ * with the same cofactored equation 8 * (s_i * B - R_i - H(R_i, X_i, m_i) * X_i) == 0, so that the verdict doesn't
+ * depend on the size of the batch. This is more lenient than {@link SchnorrSig#verify}, which rejects such a
+ * signature. The signatures are checked in chunks spread over the cores, and when a chunk fails it is split in halves
+ * to find the invalid signatures.
+ */
+public class SchnorrBatchVerifier {
+    // below this size the signatures are verified one by one
+    static final int MIN_BATCH = 4;
+    // the batch is only split over the cores in chunks of at least this size
+    static final int MIN_CHUNK = 64;
+    private static final int WEIGHT_BYTES = 16;
+
+    private final Random rnd;
+    private final List<Entry> entries = new ArrayList<>();
+
+    /**
+     * Create an empty batch with weights drawn from a SecureRandom.
+     */
+    public SchnorrBatchVerifier() {
+        this(new SecureRandom());
+    }
+
+    /**
+     * Create an empty batch.
+     *
+     * @param rnd is the source of the weights, it must be cryptographically secure.
+     */
+    SchnorrBatchVerifier(Random rnd) {
+        this.rnd = rnd;
+    }
+
+    /**
+     * Add a signature to the batch.
+     *
+     * @param msg is the signed message.
+     * @param sig is the Schnorr signature, as accepted by {@link SchnorrSig#SchnorrSig(byte[])}.
+     * @param pub is the Ed25519 public key.
+     * @throws IllegalArgumentException if the key is not an Ed25519 point.
+     */
+    public void add(byte[] msg, byte[] sig, Point pub) {
+        if (!(pub instanceof Ed25519Point)) {
+            throw new IllegalArgumentException("Schnorr signatures are only verified with Ed25519 keys");
+        }
+
+        Scalar weight;
+        do {
+            byte[] buf = new byte[WEIGHT_BYTES];
+            rnd.nextBytes(buf);
+            weight = new Ed25519Scalar(buf);
+        } while (weight.isZero());
+
+        entries.add(new Entry(msg, sig, pub, weight));
+    }
+
+    /**
+     * @return the number of signatures in the batch.
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * @return true if all the signatures of the batch are valid.
+     */
+    public boolean verifyAll() {
+        return chunks().allMatch(r -> check(r[0], r[1]));
+    }
+
+    /**
+     * Locate the invalid signatures by splitting the failing parts of the batch in halves.
+     *
+     * @return the indexes of the invalid signatures in the order of the additions, empty if they are all valid.
+     */
+    public List<Integer> findInvalid() {
+        return chunks()
+                .flatMap(r -> {
+                    List<Integer> invalid = new ArrayList<>();
+                    if (!check(r[0], r[1])) {
+                        bisect(r[0], r[1], invalid);
+                    }
+                    return invalid.stream();
+                })
+                .sorted()
+                .collect(Collectors.toList());
+    }
+
+    // the ranges of the chunks verified in parallel
+    private Stream<int[]> chunks() {
+        int n = entries.size();
+        int count = Math.max(1, Math.min(Runtime.getRuntime().availableProcessors(), n / MIN_CHUNK));
+        return IntStream.range(0, count)
+                .parallel()
+                .mapToObj(i -> new int[]{(int) ((long) n * i / count), (int) ((long) n * (i + 1) / count)});
+    }
+
+    // the range is known to be invalid, and if its first half is valid the second one is invalid as they use the
+    // same weights
+    private void bisect(int from, int to, List<Integer> invalid) {
+        if (to - from == 1) {
+            invalid.add(from);
+            return;
+        }
+        int mid = (from + to) >>> 1;
+        if (check(from, mid)) {
+            bisect(mid, to, invalid);
+            return;
+        }
+        bisect(from, mid, invalid);
+        if (!check(mid, to)) {
+            bisect(mid, to, invalid);
+        }
+    }
+
+    private boolean check(int from, int to) {
+        List<Entry> batch = entries.subList(from, to);
+        for (Entry e : batch) {
+            if (!e.decode()) {
+                return false;
+            }
+        }
+
+        if (batch.size() < MIN_BATCH) {
+            for (Entry e : batch) {
+                Point diff = Ed25519Point.base().mul(e.sig.response)
+                        .add(e.sig.challenge.negate())
+                        .add(e.pub.mul(e.hash).negate());
+                if (!hasSmallOrder(diff)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        // the signatures of the same key only need one multiplication by the key
+        Map<ByteBuffer, Scalar> keyWeights = new LinkedHashMap<>();
+        Map<ByteBuffer, Point> keys = new LinkedHashMap<>();
+        List<Scalar> scalars = new ArrayList<>();
+        List<Point> points = new ArrayList<>();
+        Scalar response = new Ed25519Scalar(new byte[32]);
+        for (Entry e : batch) {
+            keyWeights.merge(e.key, e.weight.mul(e.hash), Scalar::add);
+            keys.putIfAbsent(e.key, e.pub);
+            response = response.add(e.weight.mul(e.sig.response));
+            scalars.add(e.weight);
+            points.add(e.sig.challenge);
+        }
+        for (Map.Entry<ByteBuffer, Scalar> kw : keyWeights.entrySet()) {
+            scalars.add(kw.getValue());
+            points.add(keys.get(kw.getKey()));
+        }
+
+        Point sum = PointFactory.getInstance().multiScalarMul(scalars, points);
+        return hasSmallOrder(Ed25519Point.base().mul(response).add(sum.negate()));
+    }
+
+    // true if the multiplication by the cofactor 8 gives the neutral element
+    private static boolean hasSmallOrder(Point p) {
+        for (int i = 0; i < 3; i++) {
+            p = p.add(p);
+        }
+        return p.isZero();
+    }
+
+    private static class Entry {
+        final byte[] msg;
+        final byte[] raw;
+        final Point pub;
+        final Scalar weight;
+        // decoded by the chunk that checks the entry
+        private boolean decoded;
+        SchnorrSig sig;
+        Scalar hash;
+        ByteBuffer key;
+
+        Entry(byte[] msg, byte[] raw, Point pub, Scalar weight) {
+            this.msg = msg;
+            this.raw = raw;
+            this.pub = pub;
+            this.weight = weight;
+        }
+
+        // returns false if the signature cannot be decoded
+        boolean decode() {
+            if (!decoded) {
+                decoded = true;
+                try {
+                    sig = new SchnorrSig(raw);
+                    hash = sig.toHash(sig.challenge, pub, msg);
+                    key = ByteBuffer.wrap(pub.toBytes());
+                } catch (CothorityCryptoException | IllegalArgumentException e) {
+                    sig = null;
+                }
+            }
+            return sig != null;
+        }
+    }
+}
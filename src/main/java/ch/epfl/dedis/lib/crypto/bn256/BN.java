@@ -1,9 +1,20 @@
 package ch.epfl.dedis.lib.crypto.bn256;
 
 import java.math.BigInteger;
+import java.nio.ByteBuffer;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Random;
 
+/**
+ * The groups of the BN256 pairing. The operations of G1, G2 and GT write their result into the object they are
+ * called on, e.g. sum.add(sum, p), and the arguments may be that object, so that a loop can reuse the same objects
+ * instead of allocating a point per operation. The temporary field elements come from a per-thread pool.
+ */
 public class BN {
 
     /**
@@ -61,6 +72,16 @@ public class BN {
         public static final int ELEM_SIZE = 256/8;
         public static final int MARSHAL_SIZE = ELEM_SIZE * 2;
 
+        // the default number of messages whose point is kept by hashToPoint
+        public static final int HASH_CACHE_SIZE = 64;
+        private static volatile int hashCacheSize = HASH_CACHE_SIZE;
+        private static final Map<ByteBuffer, CurvePoint> hashes = new LinkedHashMap<ByteBuffer, CurvePoint>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<ByteBuffer, CurvePoint> eldest) {
+                return size() > hashCacheSize;
+            }
+        };
+
         /**
          * Construct a G1 point. There is no guarantee on its value, please set it later.
          */
@@ -92,7 +113,7 @@ public class BN {
          * @param k is the scalar that is multiplied to the generator point to create the object.
          */
         public G1(BigInteger k) {
-            this.p = new CurvePoint().mul(CurvePoint.curveGen, k);
+            this.p = new CurvePoint().baseMul(k);
         }
 
         /**
@@ -112,6 +133,17 @@ public class BN {
             return "bn256.G1" + this.p.toString();
         }
 
+        /**
+         * Copy a point into this object, so that a result can be kept without allocating a new point.
+         *
+         * @param a is the point to copy.
+         * @return this object.
+         */
+        public G1 set(G1 a) {
+            this.p.set(a.p);
+            return this;
+        }
+
         /**
          * Perform a scalar multiplication with the generator point.
          *
@@ -119,7 +151,7 @@ public class BN {
          * @return the result which is also this object.
          */
         public G1 scalarBaseMul(BigInteger k) {
-            this.p.mul(CurvePoint.curveGen, k);
+            this.p.baseMul(k);
             return this;
         }
 
@@ -190,12 +222,9 @@ public class BN {
 
             c.p.makeAffine();
 
-            byte[] xBytes = bigIntegerToBytes(c.p.x.mod(Constants.p));
-            byte[] yBytes = bigIntegerToBytes(c.p.y.mod(Constants.p));
-
             byte[] ret = new byte[MARSHAL_SIZE];
-            System.arraycopy(xBytes, 0, ret, 1 * ELEM_SIZE - xBytes.length, xBytes.length);
-            System.arraycopy(yBytes, 0, ret, 2 * ELEM_SIZE - yBytes.length, yBytes.length);
+            c.p.x.marshal(ret, 0 * ELEM_SIZE);
+            c.p.y.marshal(ret, 1 * ELEM_SIZE);
 
             return ret;
         }
@@ -211,16 +240,16 @@ public class BN {
                 return null;
             }
 
-            this.p.x = new BigInteger(1, Arrays.copyOfRange(m, 0 * ELEM_SIZE, 1 * ELEM_SIZE));
-            this.p.y = new BigInteger(1, Arrays.copyOfRange(m, 1 * ELEM_SIZE, 2 * ELEM_SIZE));
+            this.p.x.unmarshal(m, 0 * ELEM_SIZE);
+            this.p.y.unmarshal(m, 1 * ELEM_SIZE);
 
-            if (this.p.x.signum() == 0 && this.p.y.signum() == 0) {
-                this.p.y = BigInteger.ONE;
-                this.p.z = BigInteger.ZERO;
-                this.p.t = BigInteger.ZERO;
+            if (this.p.x.isZero() && this.p.y.isZero()) {
+                this.p.y.setOne();
+                this.p.z.setZero();
+                this.p.t.setZero();
             } else {
-                this.p.z = BigInteger.ONE;
-                this.p.t = BigInteger.ONE;
+                this.p.z.setOne();
+                this.p.t.setOne();
                 if (!this.p.isOnCurve()) {
                     return null;
                 }
@@ -230,10 +259,75 @@ public class BN {
         }
 
         /**
-         * Map a byte array to a point.
+         * Set how many points are kept by {@link #hashToPoint(byte[])}, {@link #HASH_CACHE_SIZE} by default. The
+         * points of the least recently used messages are dropped if the cache shrinks.
+         *
+         * @param size is the number of messages, 0 disables the cache.
+         * @throws IllegalArgumentException if the size is negative.
+         */
+        public static void setHashCacheSize(int size) {
+            if (size < 0) {
+                throw new IllegalArgumentException("the size of the cache can't be negative");
+            }
+            synchronized (hashes) {
+                hashCacheSize = size;
+                Iterator<ByteBuffer> it = hashes.keySet().iterator();
+                while (hashes.size() > size) {
+                    it.next();
+                    it.remove();
+                }
+            }
+        }
+
+        /**
+         * @return the number of messages whose point is kept by {@link #hashToPoint(byte[])}.
+         */
+        public static int getHashCacheSize() {
+            return hashCacheSize;
+        }
+
+        /**
+         * Map a byte array to a point. The points of the last messages are kept, e.g. for the hashes of the forward
+         * links that are verified again with every proof, unless the cache is disabled with
+         * {@link #setHashCacheSize(int)}.
          */
         public static G1 hashToPoint(byte[] msg) {
-            return new G1(CurvePoint.hashToPoint(msg));
+            if (hashCacheSize == 0) {
+                return new G1(CurvePoint.hashToPoint(msg));
+            }
+            ByteBuffer key = ByteBuffer.wrap(msg.clone());
+            CurvePoint p;
+            synchronized (hashes) {
+                p = hashes.get(key);
+            }
+            if (p == null) {
+                p = CurvePoint.hashToPoint(msg);
+                synchronized (hashes) {
+                    hashes.put(key, p);
+                }
+            }
+            // the points are mutable so the cache keeps its own copy
+            return new G1(new CurvePoint(p));
+        }
+
+        /**
+         * Compute the sum of scalars[i]*points[i] at once, which is much faster than multiplying every point.
+         *
+         * @param scalars are the scalars.
+         * @param points are the G1 points, in the same order.
+         * @return the sum, which is the point at infinity for empty lists.
+         * @throws IllegalArgumentException if the lists don't have the same size.
+         */
+        public static G1 multiScalarMul(List<BigInteger> scalars, List<G1> points) {
+            if (scalars.size() != points.size()) {
+                throw new IllegalArgumentException("the lists of scalars and points must have the same size");
+            }
+
+            CurvePoint[] ps = new CurvePoint[points.size()];
+            for (int i = 0; i < ps.length; i++) {
+                ps[i] = points.get(i).p;
+            }
+            return new G1(CurvePoint.multiMul(ps, scalars.toArray(new BigInteger[0])));
         }
     }
 
@@ -277,7 +371,7 @@ public class BN {
          * @param k is the scalar that is multiplied to the generator point to create the object.
          */
         public G2(BigInteger k) {
-            this.p = new TwistPoint().mul(TwistPoint.twistGen, k);
+            this.p = new TwistPoint().baseMul(k);
         }
 
         /**
@@ -297,6 +391,17 @@ public class BN {
             return "bn256.G2" + this.p.toString();
         }
 
+        /**
+         * Copy a point into this object, so that a result can be kept without allocating a new point.
+         *
+         * @param a is the point to copy.
+         * @return this object.
+         */
+        public G2 set(G2 a) {
+            this.p.set(a.p);
+            return this;
+        }
+
         /**
          * Perform a scalar multiplication with the generator point.
          *
@@ -304,7 +409,7 @@ public class BN {
          * @return the result which is also this object.
          */
         public G2 scalarBaseMul(BigInteger k) {
-            this.p.mul(TwistPoint.twistGen, k);
+            this.p.baseMul(k);
             return this;
         }
 
@@ -375,16 +480,11 @@ public class BN {
 
             c.p.makeAffine();
 
-            byte[] xxBytes = bigIntegerToBytes(c.p.x.x.mod(Constants.p));
-            byte[] xyBytes = bigIntegerToBytes(c.p.x.y.mod(Constants.p));
-            byte[] yxBytes = bigIntegerToBytes(c.p.y.x.mod(Constants.p));
-            byte[] yyBytes = bigIntegerToBytes(c.p.y.y.mod(Constants.p));
-
             byte[] ret = new byte[MARSHAL_SIZE];
-            System.arraycopy(xxBytes, 0, ret, 1 * ELEM_SIZE - xxBytes.length, xxBytes.length);
-            System.arraycopy(xyBytes, 0, ret, 2 * ELEM_SIZE - xyBytes.length, xyBytes.length);
-            System.arraycopy(yxBytes, 0, ret, 3 * ELEM_SIZE - yxBytes.length, yxBytes.length);
-            System.arraycopy(yyBytes, 0, ret, 4 * ELEM_SIZE - yyBytes.length, yyBytes.length);
+            c.p.x.x.marshal(ret, 0 * ELEM_SIZE);
+            c.p.x.y.marshal(ret, 1 * ELEM_SIZE);
+            c.p.y.x.marshal(ret, 2 * ELEM_SIZE);
+            c.p.y.y.marshal(ret, 3 * ELEM_SIZE);
 
             return ret;
         }
@@ -404,12 +504,12 @@ public class BN {
                 this.p = new TwistPoint();
             }
 
-            this.p.x.x = new BigInteger(1, Arrays.copyOfRange(m, 0 * ELEM_SIZE, 1 * ELEM_SIZE));
-            this.p.x.y = new BigInteger(1, Arrays.copyOfRange(m, 1 * ELEM_SIZE, 2 * ELEM_SIZE));
-            this.p.y.x = new BigInteger(1, Arrays.copyOfRange(m, 2 * ELEM_SIZE, 3 * ELEM_SIZE));
-            this.p.y.y = new BigInteger(1, Arrays.copyOfRange(m, 3 * ELEM_SIZE, 4 * ELEM_SIZE));
+            this.p.x.x.unmarshal(m, 0 * ELEM_SIZE);
+            this.p.x.y.unmarshal(m, 1 * ELEM_SIZE);
+            this.p.y.x.unmarshal(m, 2 * ELEM_SIZE);
+            this.p.y.y.unmarshal(m, 3 * ELEM_SIZE);
 
-            if (this.p.x.x.signum() == 0 && this.p.x.y.signum() == 0 && this.p.y.x.signum() == 0 && this.p.y.y.signum() == 0) {
+            if (this.p.x.isZero() && this.p.y.isZero()) {
                 this.p.y.setOne();
                 this.p.z.setZero();
                 this.p.t.setZero();
@@ -424,6 +524,45 @@ public class BN {
 
             return this;
         }
+
+        /**
+         * Compute the sum of scalars[i]*points[i] at once, which is much faster than multiplying every point.
+         *
+         * @param scalars are the scalars.
+         * @param points are the G2 points, in the same order.
+         * @return the sum, which is the point at infinity for empty lists.
+         * @throws IllegalArgumentException if the lists don't have the same size.
+         */
+        public static G2 multiScalarMul(List<BigInteger> scalars, List<G2> points) {
+            if (scalars.size() != points.size()) {
+                throw new IllegalArgumentException("the lists of scalars and points must have the same size");
+            }
+
+            TwistPoint[] ps = new TwistPoint[points.size()];
+            for (int i = 0; i < ps.length; i++) {
+                ps[i] = points.get(i).p;
+            }
+            return new G2(TwistPoint.multiMul(ps, scalars.toArray(new BigInteger[0])));
+        }
+    }
+
+    /**
+     * A G2 point with the coefficients of its Miller loop computed in advance, so that the pairings with a G2 point
+     * that is used many times, e.g. a public key, only do the part that depends on the G1 point. This object is
+     * immutable and thread-safe.
+     */
+    public static class PreparedG2 {
+        // null for the point at infinity
+        final OptAte.Lines lines;
+
+        /**
+         * Prepare a G2 point. The point can be modified afterwards without changing this object.
+         *
+         * @param p is the G2 point.
+         */
+        public PreparedG2(G2 p) {
+            this.lines = p.isInfinity() ? null : OptAte.prepare(p.p);
+        }
     }
 
     /**
@@ -467,6 +606,39 @@ public class BN {
             return other.p.equals(this.p);
         }
 
+        @Override
+        public int hashCode() {
+            return this.p.y.z.y.hashCode();
+        }
+
+        /**
+         * @return true if this is the neutral element, e.g. for the result of a pairing check.
+         */
+        public boolean isOne() {
+            return this.p.isOne();
+        }
+
+        /**
+         * Copy an element into this object, so that a result can be kept without allocating a new element.
+         *
+         * @param a is the element to copy.
+         * @return this object.
+         */
+        public GT set(GT a) {
+            this.p.set(a.p);
+            return this;
+        }
+
+        /**
+         * Set the element to the neutral element, e.g. to start a product of pairings with {@link #add(GT, GT)}.
+         *
+         * @return this object.
+         */
+        public GT setOne() {
+            this.p.setOne();
+            return this;
+        }
+
         /**
          * Perform a scalar multiplication.
          *
@@ -508,34 +680,19 @@ public class BN {
          * @return the marshalled bytes.
          */
         public byte[] marshal() {
-            this.p.minimal();
-
-            byte[] xxxBytes = bigIntegerToBytes(this.p.x.x.x);
-            byte[] xxyBytes = bigIntegerToBytes(this.p.x.x.y);
-            byte[] xyxBytes = bigIntegerToBytes(this.p.x.y.x);
-            byte[] xyyBytes = bigIntegerToBytes(this.p.x.y.y);
-            byte[] xzxBytes = bigIntegerToBytes(this.p.x.z.x);
-            byte[] xzyBytes = bigIntegerToBytes(this.p.x.z.y);
-            byte[] yxxBytes = bigIntegerToBytes(this.p.y.x.x);
-            byte[] yxyBytes = bigIntegerToBytes(this.p.y.x.y);
-            byte[] yyxBytes = bigIntegerToBytes(this.p.y.y.x);
-            byte[] yyyBytes = bigIntegerToBytes(this.p.y.y.y);
-            byte[] yzxBytes = bigIntegerToBytes(this.p.y.z.x);
-            byte[] yzyBytes = bigIntegerToBytes(this.p.y.z.y);
-
             byte[] ret = new byte[MARSHAL_SIZE];
-            System.arraycopy(xxxBytes, 0, ret, 1 * ELEM_SIZE - xxxBytes.length, xxxBytes.length);
-            System.arraycopy(xxyBytes, 0, ret, 2 * ELEM_SIZE - xxyBytes.length, xxyBytes.length);
-            System.arraycopy(xyxBytes, 0, ret, 3 * ELEM_SIZE - xyxBytes.length, xyxBytes.length);
-            System.arraycopy(xyyBytes, 0, ret, 4 * ELEM_SIZE - xyyBytes.length, xyyBytes.length);
-            System.arraycopy(xzxBytes, 0, ret, 5 * ELEM_SIZE - xzxBytes.length, xzxBytes.length);
-            System.arraycopy(xzyBytes, 0, ret, 6 * ELEM_SIZE - xzyBytes.length, xzyBytes.length);
-            System.arraycopy(yxxBytes, 0, ret, 7 * ELEM_SIZE - yxxBytes.length, yxxBytes.length);
-            System.arraycopy(yxyBytes, 0, ret, 8 * ELEM_SIZE - yxyBytes.length, yxyBytes.length);
-            System.arraycopy(yyxBytes, 0, ret, 9 * ELEM_SIZE - yyxBytes.length, yyxBytes.length);
-            System.arraycopy(yyyBytes, 0, ret, 10 * ELEM_SIZE - yyyBytes.length, yyyBytes.length);
-            System.arraycopy(yzxBytes, 0, ret, 11 * ELEM_SIZE - yzxBytes.length, yzxBytes.length);
-            System.arraycopy(yzyBytes, 0, ret, 12 * ELEM_SIZE - yzyBytes.length, yzyBytes.length);
+            this.p.x.x.x.marshal(ret, 0 * ELEM_SIZE);
+            this.p.x.x.y.marshal(ret, 1 * ELEM_SIZE);
+            this.p.x.y.x.marshal(ret, 2 * ELEM_SIZE);
+            this.p.x.y.y.marshal(ret, 3 * ELEM_SIZE);
+            this.p.x.z.x.marshal(ret, 4 * ELEM_SIZE);
+            this.p.x.z.y.marshal(ret, 5 * ELEM_SIZE);
+            this.p.y.x.x.marshal(ret, 6 * ELEM_SIZE);
+            this.p.y.x.y.marshal(ret, 7 * ELEM_SIZE);
+            this.p.y.y.x.marshal(ret, 8 * ELEM_SIZE);
+            this.p.y.y.y.marshal(ret, 9 * ELEM_SIZE);
+            this.p.y.z.x.marshal(ret, 10 * ELEM_SIZE);
+            this.p.y.z.y.marshal(ret, 11 * ELEM_SIZE);
 
             return ret;
         }
@@ -555,25 +712,26 @@ public class BN {
                 this.p = new GFp12();
             }
 
-            this.p.x.x.x = new BigInteger(1, Arrays.copyOfRange(m, 0 * ELEM_SIZE, 1 * ELEM_SIZE));
-            this.p.x.x.y = new BigInteger(1, Arrays.copyOfRange(m, 1 * ELEM_SIZE, 2 * ELEM_SIZE));
-            this.p.x.y.x = new BigInteger(1, Arrays.copyOfRange(m, 2 * ELEM_SIZE, 3 * ELEM_SIZE));
-            this.p.x.y.y = new BigInteger(1, Arrays.copyOfRange(m, 3 * ELEM_SIZE, 4 * ELEM_SIZE));
-            this.p.x.z.x = new BigInteger(1, Arrays.copyOfRange(m, 4 * ELEM_SIZE, 5 * ELEM_SIZE));
-            this.p.x.z.y = new BigInteger(1, Arrays.copyOfRange(m, 5 * ELEM_SIZE, 6 * ELEM_SIZE));
-            this.p.y.x.x = new BigInteger(1, Arrays.copyOfRange(m, 6 * ELEM_SIZE, 7 * ELEM_SIZE));
-            this.p.y.x.y = new BigInteger(1, Arrays.copyOfRange(m, 7 * ELEM_SIZE, 8 * ELEM_SIZE));
-            this.p.y.y.x = new BigInteger(1, Arrays.copyOfRange(m, 8 * ELEM_SIZE, 9 * ELEM_SIZE));
-            this.p.y.y.y = new BigInteger(1, Arrays.copyOfRange(m, 9 * ELEM_SIZE, 10 * ELEM_SIZE));
-            this.p.y.z.x = new BigInteger(1, Arrays.copyOfRange(m, 10 * ELEM_SIZE, 11 * ELEM_SIZE));
-            this.p.y.z.y = new BigInteger(1, Arrays.copyOfRange(m, 11 * ELEM_SIZE, 12 * ELEM_SIZE));
+            this.p.x.x.x.unmarshal(m, 0 * ELEM_SIZE);
+            this.p.x.x.y.unmarshal(m, 1 * ELEM_SIZE);
+            this.p.x.y.x.unmarshal(m, 2 * ELEM_SIZE);
+            this.p.x.y.y.unmarshal(m, 3 * ELEM_SIZE);
+            this.p.x.z.x.unmarshal(m, 4 * ELEM_SIZE);
+            this.p.x.z.y.unmarshal(m, 5 * ELEM_SIZE);
+            this.p.y.x.x.unmarshal(m, 6 * ELEM_SIZE);
+            this.p.y.x.y.unmarshal(m, 7 * ELEM_SIZE);
+            this.p.y.y.x.unmarshal(m, 8 * ELEM_SIZE);
+            this.p.y.y.y.unmarshal(m, 9 * ELEM_SIZE);
+            this.p.y.z.x.unmarshal(m, 10 * ELEM_SIZE);
+            this.p.y.z.y.unmarshal(m, 11 * ELEM_SIZE);
 
             return this;
         }
     }
 
     /**
-     * Perform the pairing operation.
+     * Perform the pairing operation. Pairings can be computed concurrently from several threads as long as they don't
+     * share the point objects.
      *
      * @param g1 is the G1 point.
      * @param g2 is the G2 point.
@@ -583,6 +741,101 @@ public class BN {
         return new GT(OptAte.optimalAte(g2.p, g1.p));
     }
 
+    /**
+     * Compute the product of the pairings of g1s[i] and g2s[i]. The Miller loops are interleaved and share a single
+     * final exponentiation, which makes it much faster than multiplying the results of {@link #pair(G1, G2)}.
+     *
+     * @param g1s are the G1 points.
+     * @param g2s are the G2 points, in the same order.
+     * @return the GT element.
+     * @throws IllegalArgumentException if the lists don't have the same size.
+     */
+    public static GT pairingProduct(List<G1> g1s, List<G2> g2s) {
+        if (g1s.size() != g2s.size()) {
+            throw new IllegalArgumentException("the lists of G1 and G2 points must have the same size");
+        }
+
+        CurvePoint[] ps = new CurvePoint[g1s.size()];
+        TwistPoint[] qs = new TwistPoint[g2s.size()];
+        for (int i = 0; i < ps.length; i++) {
+            ps[i] = g1s.get(i).p;
+            qs[i] = g2s.get(i).p;
+        }
+        return new GT(OptAte.optimalAteProduct(qs, ps));
+    }
+
+    /**
+     * Check that the product of the pairings of g1s[i] and g2s[i] is one, e.g. e(H(m), X) * e(-S, g2) for a BLS
+     * signature S.
+     *
+     * @param g1s are the G1 points.
+     * @param g2s are the G2 points, in the same order.
+     * @return true if the product is one.
+     * @throws IllegalArgumentException if the lists don't have the same size.
+     */
+    public static boolean pairingCheck(List<G1> g1s, List<G2> g2s) {
+        return pairingProduct(g1s, g2s).isOne();
+    }
+
+    /**
+     * Perform the pairing operation with a prepared G2 point.
+     *
+     * @param g1 is the G1 point.
+     * @param g2 is the prepared G2 point.
+     * @return the GT point.
+     */
+    public static GT pair(G1 g1, PreparedG2 g2) {
+        return preparedPairingProduct(Collections.singletonList(g1), Collections.singletonList(g2));
+    }
+
+    /**
+     * Same as {@link #pairingProduct(List, List)} with prepared G2 points.
+     *
+     * @param g1s are the G1 points.
+     * @param g2s are the prepared G2 points, in the same order.
+     * @return the GT element.
+     * @throws IllegalArgumentException if the lists don't have the same size.
+     */
+    public static GT preparedPairingProduct(List<G1> g1s, List<PreparedG2> g2s) {
+        if (g1s.size() != g2s.size()) {
+            throw new IllegalArgumentException("the lists of G1 and G2 points must have the same size");
+        }
+
+        CurvePoint[] ps = new CurvePoint[g1s.size()];
+        OptAte.Lines[] qs = new OptAte.Lines[g2s.size()];
+        for (int i = 0; i < ps.length; i++) {
+            ps[i] = g1s.get(i).p;
+            qs[i] = g2s.get(i).lines;
+        }
+        return new GT(OptAte.optimalAteProduct(qs, ps));
+    }
+
+    /**
+     * Same as {@link #pairingCheck(List, List)} with prepared G2 points.
+     *
+     * @param g1s are the G1 points.
+     * @param g2s are the prepared G2 points, in the same order.
+     * @return true if the product is one.
+     * @throws IllegalArgumentException if the lists don't have the same size.
+     */
+    public static boolean preparedPairingCheck(List<G1> g1s, List<PreparedG2> g2s) {
+        return preparedPairingProduct(g1s, g2s).isOne();
+    }
+
+    /**
+     * Set how the products of pairings are computed in parallel. The pairs are split in one chunk per thread whose
+     * Miller loops are computed concurrently, and the partial products share the final exponentiation. By default,
+     * all the available processors are used for the products of at least 4 pairings.
+     *
+     * @param parallelism is the number of threads including the calling one, 1 to compute everything on the calling
+     *                    thread.
+     * @param minPairs is the minimal number of pairings of a product computed in parallel, at least 2.
+     * @throws IllegalArgumentException if a parameter is out of range.
+     */
+    public static void setPairingParallelism(int parallelism, int minPairs) {
+        OptAte.setParallelism(parallelism, minPairs);
+    }
+
     static BigInteger randPosBigInt(Random rnd, BigInteger n) {
         BigInteger r;
         do {
@@ -1,37 +1,46 @@
 package ch.epfl.dedis.lib.crypto.bn256;
 
-import ch.epfl.dedis.lib.crypto.TonelliShanks;
-
 import java.math.BigInteger;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 
 class CurvePoint {
-    BigInteger x, y, z, t;
+    GFp x, y, z, t;
 
-    static BigInteger curveB = new BigInteger("3");
+    static GFp curveB = new GFp(3);
     static CurvePoint curveGen = new CurvePoint(
-            BigInteger.ONE,
-            new BigInteger("-2"),
-            BigInteger.ONE,
-            BigInteger.ONE);
-    private static BigInteger p = Constants.p;
+            new GFp(1),
+            new GFp(-2),
+            new GFp(1),
+            new GFp(1));
+
+    // The GLV endomorphism multiplies the x coordinate by beta, a cube root of unity mod p, which is the same as
+    // multiplying the point by lambda = 36u^3+18u^2+6u+1. The lattice basis is (2u+1, -6u^2-2u), (6u^2+4u+1, 2u+1)
+    // and glvG1, glvG2 are b2/n and -b1/n with GLV_SHIFT bits of precision.
+    private static final GFp glvBeta = Constants.xiTo2PSquaredMinus2Over3;
+    private static final int GLV_SHIFT = 384;
+    private static final BigInteger glvA1 = Constants.u.shiftLeft(1).add(BigInteger.ONE);
+    private static final BigInteger glvB1 = Constants.u.pow(2).multiply(BigInteger.valueOf(6)).add(Constants.u.shiftLeft(1)).negate();
+    private static final BigInteger glvA2 = glvB1.negate().add(Constants.u.shiftLeft(1)).add(BigInteger.ONE);
+    private static final BigInteger glvB2 = glvA1;
+    private static final BigInteger glvG1 = divRound(glvB2.shiftLeft(GLV_SHIFT), Constants.order);
+    private static final BigInteger glvG2 = divRound(glvB1.negate().shiftLeft(GLV_SHIFT), Constants.order);
 
     CurvePoint() {
-        this.x = BigInteger.ZERO;
-        this.y = BigInteger.ZERO;
-        this.z = BigInteger.ZERO;
-        this.t = BigInteger.ZERO;
+        this.x = new GFp();
+        this.y = new GFp();
+        this.z = new GFp();
+        this.t = new GFp();
     }
 
     CurvePoint(CurvePoint p) {
-        this.x = p.x;
-        this.y = p.y;
-        this.z = p.z;
-        this.t = p.t;
+        this.x = new GFp(p.x);
+        this.y = new GFp(p.y);
+        this.z = new GFp(p.z);
+        this.t = new GFp(p.t);
     }
 
-    private CurvePoint(BigInteger x, BigInteger y, BigInteger z, BigInteger t) {
+    private CurvePoint(GFp x, GFp y, GFp z, GFp t) {
         this.x = x;
         this.y = y;
         this.z = z;
@@ -46,29 +55,27 @@ class CurvePoint {
     }
 
     void set(CurvePoint a) {
-        this.x = a.x;
-        this.y = a.y;
-        this.z = a.z;
-        this.t = a.t;
+        this.x.set(a.x);
+        this.y.set(a.y);
+        this.z.set(a.z);
+        this.t.set(a.t);
     }
 
     boolean isOnCurve() {
-        BigInteger yy = this.y.multiply(this.y);
-        BigInteger xxx = this.x.multiply(this.x).multiply(this.x);
-        yy = yy.subtract(xxx);
-        yy = yy.subtract(curveB);
-        if (yy.signum() < 0 || yy.compareTo(p) >= 0) {
-            yy = yy.mod(p);
-        }
-        return yy.signum() == 0;
+        GFp yy = new GFp().square(this.y);
+        GFp xxx = new GFp().square(this.x);
+        xxx.mul(xxx, this.x);
+        yy.sub(yy, xxx);
+        yy.sub(yy, curveB);
+        return yy.isZero();
     }
 
     void setInfinity() {
-        this.z = BigInteger.ZERO;
+        this.z.setZero();
     }
 
     boolean isInfinity() {
-        return this.z.signum() == 0;
+        return this.z.isZero();
     }
 
     void add(CurvePoint a, CurvePoint b) {
@@ -82,91 +89,151 @@ class CurvePoint {
             return;
         }
 
-        BigInteger z1z1 = a.z.multiply(a.z).mod(p);
-        BigInteger z2z2 = b.z.multiply(b.z).mod(p);
-        BigInteger u1 = a.x.multiply(z2z2).mod(p);
-        BigInteger u2 = b.x.multiply(z1z1).mod(p);
+        GFpPool pool = GFpPool.getInstance();
+        GFp z1z1 = pool.get1().square(a.z);
+        GFp z2z2 = pool.get1().square(b.z);
+        GFp u1 = pool.get1().mul(a.x, z2z2);
+        GFp u2 = pool.get1().mul(b.x, z1z1);
 
-        BigInteger t = b.z.multiply(z2z2).mod(p);
-        BigInteger s1 = a.y.multiply(t).mod(p);
+        GFp t = pool.get1().mul(b.z, z2z2);
+        GFp s1 = pool.get1().mul(a.y, t);
 
-        t = a.z.multiply(z1z1).mod(p);
-        BigInteger s2 = b.y.multiply(t).mod(p);
+        t.mul(a.z, z1z1);
+        GFp s2 = pool.get1().mul(b.y, t);
 
-        BigInteger h = u2.subtract(u1);
-        boolean xEqual = h.signum() == 0;
+        GFp h = pool.get1().sub(u2, u1);
+        boolean xEqual = h.isZero();
 
-        t = h.add(h);
-        BigInteger i = t.multiply(t).mod(p);
-        BigInteger j = h.multiply(i).mod(p);
+        t.add(h, h);
+        GFp i = pool.get1().square(t);
+        GFp j = pool.get1().mul(h, i);
 
-        t = s2.subtract(s1);
-        boolean yEqual = t.signum() == 0;
+        t.sub(s2, s1);
+        boolean yEqual = t.isZero();
         if (xEqual && yEqual) {
+            pool.put1(z1z1, z2z2, u1, u2, t, s1, s2, h, i, j);
             this.dbl(a);
             return;
         }
 
-        BigInteger r = t.add(t);
-        BigInteger v = u1.multiply(i).mod(p);
+        GFp r = pool.get1().add(t, t);
+        GFp v = pool.get1().mul(u1, i);
+
+        GFp t4 = pool.get1().square(r);
+        t.add(v, v);
+        GFp t6 = pool.get1().sub(t4, j);
+        // a and b are not read after this point, so this may be one of them
+        GFp zSum = pool.get1().add(a.z, b.z);
+        this.x.sub(t6, t);
 
-        BigInteger t4 = r.multiply(r).mod(p);
-        t = v.add(v);
-        BigInteger t6 = t4.subtract(j);
-        this.x = t6.subtract(t);
+        t.sub(v, this.x);
+        t4.mul(s1, j);
+        t6.add(t4, t4);
+        t4.mul(r, t);
+        this.y.sub(t4, t6);
 
-        t = v.subtract(this.x);
-        t4 = s1.multiply(j).mod(p);
-        t6 = t4.add(t4);
-        t4 = r.multiply(t).mod(p);
-        this.y = t4.subtract(t6);
+        t4.square(zSum);
+        t.sub(t4, z1z1);
+        t4.sub(t, z2z2);
+        this.z.mul(t4, h);
 
-        t = a.z.add(b.z);
-        t4 = t.multiply(t).mod(p);
-        t = t4.subtract(z1z1);
-        t4 = t.subtract(z2z2);
-        this.z = t4.multiply(h).mod(p);
+        pool.put1(z1z1, z2z2, u1, u2, t, s1, s2, h, i, j, r, v, t4, t6, zSum);
     }
 
     void dbl(CurvePoint a) {
-        BigInteger A = a.x.multiply(a.x).mod(p);
-        BigInteger B = a.y.multiply(a.y).mod(p);
-        BigInteger C = B.multiply(B).mod(p);
+        GFpPool pool = GFpPool.getInstance();
+        GFp A = pool.get1().square(a.x);
+        GFp B = pool.get1().square(a.y);
+        GFp C = pool.get1().square(B);
+
+        GFp t = pool.get1().add(a.x, B);
+        GFp t2 = pool.get1().square(t);
+        t.sub(t2, A);
+        t2.sub(t, C);
+        GFp d = pool.get1().add(t2, t2);
+        t.add(A, A);
+        GFp e = pool.get1().add(t, A);
+        GFp f = pool.get1().square(e);
+        GFp yz = pool.get1().mul(a.y, a.z);
+
+        t.add(d, d);
+        this.x.sub(f, t);
+
+        t.add(C, C);
+        t2.add(t, t);
+        t.add(t2, t2);
+        this.y.sub(d, this.x);
+        t2.mul(e, this.y);
+        this.y.sub(t2, t);
+
+        this.z.add(yz, yz);
+
+        pool.put1(A, B, C, t, t2, d, e, f, yz);
+    }
 
-        BigInteger t = a.x.add(B);
-        BigInteger t2 = t.multiply(t).mod(p);
-        t = t2.subtract(A);
-        t2 = t.subtract(C);
-        BigInteger d = t2.add(t2);
-        t = A.add(A);
-        BigInteger e = t.add(A);
-        BigInteger f = e.multiply(e).mod(p);
+    /**
+     * Computes scalar*a. The scalar is split with the GLV endomorphism (x, y) -> (beta*x, y), which is the
+     * multiplication by lambda, into two halves of about 128 bits that are multiplied at the same time in wNAF form.
+     */
+    CurvePoint mul(CurvePoint a, BigInteger scalar) {
+        // G1 has a prime order so the scalar can be reduced
+        BigInteger k = scalar.mod(Constants.order);
+
+        // k = k1 + k2*lambda with the short basis (a1, b1), (a2, b2) of the lattice of the pairs with k1 + k2*lambda = 0
+        BigInteger c1 = roundShift(k.multiply(glvG1));
+        BigInteger c2 = roundShift(k.multiply(glvG2));
+        BigInteger k1 = k.subtract(c1.multiply(glvA1)).subtract(c2.multiply(glvA2));
+        BigInteger k2 = c1.multiply(glvB1).add(c2.multiply(glvB2)).negate();
+
+        CurvePoint[] table = oddMultiples(a);
+        CurvePoint[] table1 = new CurvePoint[table.length];
+        CurvePoint[] table2 = new CurvePoint[table.length];
+        for (int i = 0; i < table.length; i++) {
+            table1[i] = new CurvePoint(table[i]);
+            if (k1.signum() < 0) {
+                table1[i].negative(table1[i]);
+            }
+            table2[i] = new CurvePoint(table[i]);
+            table2[i].x.mul(table2[i].x, glvBeta);
+            if (k2.signum() < 0) {
+                table2[i].negative(table2[i]);
+            }
+        }
 
-        t = d.add(d);
-        this.x = f.subtract(t);
+        int[] naf1 = ScalarRecoding.wnaf(k1.abs(), ScalarRecoding.WNAF_WIDTH);
+        int[] naf2 = ScalarRecoding.wnaf(k2.abs(), ScalarRecoding.WNAF_WIDTH);
 
-        t = C.add(C);
-        t2 = t.add(t);
-        t = t2.add(t2);
-        this.y = d.subtract(this.x);
-        t2 = e.multiply(this.y).mod(p);
-        this.y = t2.subtract(t);
+        CurvePoint sum = new CurvePoint();
+        sum.setInfinity();
+        CurvePoint neg = new CurvePoint();
+        for (int i = Math.max(naf1.length, naf2.length) - 1; i >= 0; i--) {
+            sum.dbl(sum);
+            if (i < naf1.length) {
+                sum.addDigit(naf1[i], table1, neg);
+            }
+            if (i < naf2.length) {
+                sum.addDigit(naf2[i], table2, neg);
+            }
+        }
 
-        t = a.y.multiply(a.z).mod(p);
-        this.z = t.add(t);
+        this.set(sum);
+        return this;
     }
 
-    CurvePoint mul(CurvePoint a, BigInteger scalar) {
+    /**
+     * Computes scalar*curveGen with a table of the multiples of the generator for every window of the scalar, so
+     * that it takes one addition per window and no doubling.
+     */
+    CurvePoint baseMul(BigInteger scalar) {
+        BigInteger k = scalar.mod(Constants.order);
+        CurvePoint[][] table = BaseTable.table;
+
         CurvePoint sum = new CurvePoint();
         sum.setInfinity();
-        CurvePoint t = new CurvePoint();
-
-        for (int i = scalar.bitLength(); i >= 0; i--) {
-            t.dbl(sum);
-            if (scalar.testBit(i)) {
-                sum.add(t, a);
-            } else {
-                sum.set(t);
+        for (int i = 0; i < table.length; i++) {
+            int w = ScalarRecoding.window(k, i);
+            if (w != 0) {
+                sum.add(sum, table[i][w - 1]);
             }
         }
 
@@ -174,37 +241,142 @@ class CurvePoint {
         return this;
     }
 
+    /**
+     * Computes the sum of scalars[i]*points[i] with the bucket method of Pippenger: for every window of the scalars
+     * the points are first added to the bucket of their digit, and the buckets are then summed with their weights.
+     */
+    static CurvePoint multiMul(CurvePoint[] points, BigInteger[] scalars) {
+        BigInteger[] ks = new BigInteger[scalars.length];
+        int bitLength = 0;
+        for (int i = 0; i < ks.length; i++) {
+            ks[i] = scalars[i].mod(Constants.order);
+            bitLength = Math.max(bitLength, ks[i].bitLength());
+        }
+
+        int c = ScalarRecoding.bucketWidth(points.length);
+        CurvePoint[] buckets = new CurvePoint[(1 << c) - 1];
+        for (int i = 0; i < buckets.length; i++) {
+            buckets[i] = new CurvePoint();
+        }
+
+        CurvePoint sum = new CurvePoint();
+        sum.setInfinity();
+        CurvePoint running = new CurvePoint();
+        CurvePoint window = new CurvePoint();
+        for (int w = (bitLength + c - 1) / c - 1; w >= 0; w--) {
+            for (int i = 0; i < c; i++) {
+                sum.dbl(sum);
+            }
+
+            for (CurvePoint bucket : buckets) {
+                bucket.setInfinity();
+            }
+            for (int i = 0; i < points.length; i++) {
+                int digit = ScalarRecoding.bits(ks[i], w * c, c);
+                if (digit != 0) {
+                    buckets[digit - 1].add(buckets[digit - 1], points[i]);
+                }
+            }
+
+            // running is the sum of the buckets from the top one, so the bucket of digit d is added d times
+            running.setInfinity();
+            window.setInfinity();
+            for (int i = buckets.length - 1; i >= 0; i--) {
+                running.add(running, buckets[i]);
+                window.add(window, running);
+            }
+            sum.add(sum, window);
+        }
+
+        return sum;
+    }
+
+    // adds digit*P where the table holds P, 3P, 5P, ...
+    private void addDigit(int digit, CurvePoint[] table, CurvePoint neg) {
+        if (digit > 0) {
+            this.add(this, table[digit >> 1]);
+        } else if (digit < 0) {
+            neg.negative(table[-digit >> 1]);
+            this.add(this, neg);
+        }
+    }
+
+    // P, 3P, 5P, ... up to the largest digit of the wNAF
+    private static CurvePoint[] oddMultiples(CurvePoint a) {
+        CurvePoint[] table = new CurvePoint[1 << (ScalarRecoding.WNAF_WIDTH - 2)];
+        CurvePoint twice = new CurvePoint();
+        twice.dbl(a);
+        table[0] = new CurvePoint(a);
+        for (int i = 1; i < table.length; i++) {
+            table[i] = new CurvePoint();
+            table[i].add(table[i - 1], twice);
+        }
+        return table;
+    }
+
+    // round(x / 2^GLV_SHIFT)
+    private static BigInteger roundShift(BigInteger x) {
+        return x.add(BigInteger.ONE.shiftLeft(GLV_SHIFT - 1)).shiftRight(GLV_SHIFT);
+    }
+
+    // The table of the generator is only built when it is needed for the first time.
+    private static class BaseTable {
+        static final CurvePoint[][] table = build();
+
+        private static CurvePoint[][] build() {
+            int size = (1 << ScalarRecoding.FIXED_WIDTH) - 1;
+            CurvePoint[][] table = new CurvePoint[ScalarRecoding.FIXED_WINDOWS][size];
+            CurvePoint base = new CurvePoint(curveGen);
+            for (int i = 0; i < table.length; i++) {
+                table[i][0] = new CurvePoint(base);
+                for (int j = 1; j < size; j++) {
+                    table[i][j] = new CurvePoint();
+                    table[i][j].add(table[i][j - 1], base);
+                }
+                for (int j = 0; j < ScalarRecoding.FIXED_WIDTH; j++) {
+                    base.dbl(base);
+                }
+            }
+            return table;
+        }
+    }
 
     CurvePoint makeAffine() {
-        byte[] words = BN.bigIntegerToBytes(this.z);
-        if (words.length == 1 && words[0] == 1) {
+        if (this.z.isOne()) {
             return this;
         }
         if (this.isInfinity()) {
-            this.x = BigInteger.ZERO;
-            this.y = BigInteger.ONE;
-            this.z = BigInteger.ZERO;
-            this.t = BigInteger.ZERO;
+            this.x.setZero();
+            this.y.setOne();
+            this.z.setZero();
+            this.t.setZero();
             return this;
         }
 
-        BigInteger zInv = this.z.modInverse(p);
-        BigInteger t = this.y.multiply(zInv).mod(p);
-        BigInteger zInv2 = zInv.multiply(zInv).mod(p);
-        this.y = t.multiply(zInv2).mod(p);
-        t = this.x.multiply(zInv2).mod(p);
-        this.x = t;
-        this.z = BigInteger.ONE;
-        this.t = BigInteger.ONE;
+        GFpPool pool = GFpPool.getInstance();
+        GFp zInv = pool.get1().invert(this.z);
+        GFp t = pool.get1().mul(this.y, zInv);
+        GFp zInv2 = pool.get1().square(zInv);
+        this.y.mul(t, zInv2);
+        t.mul(this.x, zInv2);
+        this.x.set(t);
+        this.z.setOne();
+        this.t.setOne();
+
+        pool.put1(zInv, t, zInv2);
 
         return this;
     }
 
     void negative(CurvePoint a) {
-        this.x = a.x;
-        this.y = a.y.negate();
-        this.z = a.z;
-        this.t = BigInteger.ZERO;
+        this.x.set(a.x);
+        this.y.negative(a.y);
+        this.z.set(a.z);
+        this.t.setZero();
+    }
+
+    private static BigInteger divRound(BigInteger a, BigInteger b) {
+        return a.add(b.shiftRight(1)).divide(b);
     }
 
     static CurvePoint hashToPoint(byte[] m) {
@@ -216,19 +388,19 @@ class CurvePoint {
         }
 
         h.update(m);
-        BigInteger x = new BigInteger(1, h.digest());
-        x = x.mod(p);
+        GFp x = new GFp(new BigInteger(1, h.digest()));
+        GFp one = new GFp().setOne();
+        GFp t = new GFp();
+        GFp y = new GFp();
 
         for (;;) {
-            BigInteger xxx = x.multiply(x).multiply(x).mod(p);
-            BigInteger t = xxx.add(CurvePoint.curveB);
+            t.square(x).mul(t, x).add(t, curveB);
 
-            BigInteger y = TonelliShanks.modSqrt(t, p);
-            if (y != null) {
-                return new CurvePoint(x, y, BigInteger.ONE, BigInteger.ONE);
+            if (y.sqrt(t)) {
+                return new CurvePoint(x, y, new GFp().setOne(), new GFp().setOne());
             }
 
-            x = x.add(BigInteger.ONE);
+            x.add(x, one);
         }
     }
 }
@@ -0,0 +1,378 @@
+package ch.epfl.dedis.lib.crypto.bn256;
+
+import java.math.BigInteger;
+
+/**
+ * An element of GF(p) stored as four 64-bit limbs, least significant first, in the Montgomery domain (a*R mod p with
+ * R = 2^256). The value is always fully reduced so that two equal elements have the same limbs. Like the other field
+ * types, the operations write their result into this object and return it; the arguments may alias this object.
+ */
+class GFp {
+    long n0, n1, n2, n3;
+
+    // p, little-endian
+    private static final long P0 = 0x185cac6c5e089667L;
+    private static final long P1 = 0xee5b88d120b5b59eL;
+    private static final long P2 = 0xaa6fecb86184dc21L;
+    private static final long P3 = 0x8fb501e34aa387f9L;
+    // -p^-1 mod 2^64
+    private static final long NP0 = 0x2387f9007f17daa9L;
+    // R mod p, which is 1 in the Montgomery domain
+    private static final long R0 = 0xe7a35393a1f76999L;
+    private static final long R1 = 0x11a4772edf4a4a61L;
+    private static final long R2 = 0x559013479e7b23deL;
+    private static final long R3 = 0x704afe1cb55c7806L;
+    // R^2 mod p, to enter the Montgomery domain
+    private static final long RR0 = 0x9c21c3ff7e444f56L;
+    private static final long RR1 = 0x409ed151b2efb0c2L;
+    private static final long RR2 = 0x0c6dc37b80fb1651L;
+    private static final long RR3 = 0x7c36e0e62c2380b7L;
+
+    private static final BigInteger pMinus2 = Constants.p.subtract(BigInteger.valueOf(2));
+    private static final BigInteger pPlus1Over4 = Constants.p.add(BigInteger.ONE).shiftRight(2);
+
+    GFp() {
+    }
+
+    GFp(GFp a) {
+        this.set(a);
+    }
+
+    GFp(long a) {
+        this(BigInteger.valueOf(a));
+    }
+
+    GFp(BigInteger a) {
+        this.set(a);
+    }
+
+    @Override
+    public String toString() {
+        return this.toBigInteger().toString();
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (!(obj instanceof GFp)) {
+            return false;
+        }
+        GFp other = (GFp) obj;
+        return ((n0 ^ other.n0) | (n1 ^ other.n1) | (n2 ^ other.n2) | (n3 ^ other.n3)) == 0;
+    }
+
+    @Override
+    public int hashCode() {
+        return Long.hashCode(n0 ^ n1 ^ n2 ^ n3);
+    }
+
+    GFp set(GFp a) {
+        this.n0 = a.n0;
+        this.n1 = a.n1;
+        this.n2 = a.n2;
+        this.n3 = a.n3;
+        return this;
+    }
+
+    /**
+     * Sets the element to a mod p, a can be negative or larger than p.
+     */
+    GFp set(BigInteger a) {
+        byte[] buf = new byte[32];
+        byte[] bytes = BN.bigIntegerToBytes(a.mod(Constants.p));
+        System.arraycopy(bytes, 0, buf, buf.length - bytes.length, bytes.length);
+        return this.unmarshal(buf, 0);
+    }
+
+    GFp setZero() {
+        this.n0 = 0;
+        this.n1 = 0;
+        this.n2 = 0;
+        this.n3 = 0;
+        return this;
+    }
+
+    GFp setOne() {
+        this.n0 = R0;
+        this.n1 = R1;
+        this.n2 = R2;
+        this.n3 = R3;
+        return this;
+    }
+
+    boolean isZero() {
+        return (n0 | n1 | n2 | n3) == 0;
+    }
+
+    boolean isOne() {
+        return ((n0 ^ R0) | (n1 ^ R1) | (n2 ^ R2) | (n3 ^ R3)) == 0;
+    }
+
+    BigInteger toBigInteger() {
+        byte[] buf = new byte[32];
+        this.marshal(buf, 0);
+        return new BigInteger(1, buf);
+    }
+
+    /**
+     * Writes the 32 big-endian bytes of the value at the offset.
+     */
+    void marshal(byte[] out, int offset) {
+        GFp a = new GFp().fromMontgomery(this);
+        putLong(out, offset, a.n3);
+        putLong(out, offset + 8, a.n2);
+        putLong(out, offset + 16, a.n1);
+        putLong(out, offset + 24, a.n0);
+    }
+
+    /**
+     * Reads the 32 big-endian bytes at the offset. A value larger than p is reduced.
+     */
+    GFp unmarshal(byte[] in, int offset) {
+        this.n3 = getLong(in, offset);
+        this.n2 = getLong(in, offset + 8);
+        this.n1 = getLong(in, offset + 16);
+        this.n0 = getLong(in, offset + 24);
+        return this.montgomeryMul(this, RR0, RR1, RR2, RR3);
+    }
+
+    GFp negative(GFp a) {
+        return this.sub(new GFp(), a);
+    }
+
+    GFp add(GFp a, GFp b) {
+        long t0 = a.n0 + b.n0;
+        long c = addCarry(a.n0, b.n0, t0);
+        long t1 = a.n1 + b.n1 + c;
+        c = addCarry(a.n1, b.n1, t1);
+        long t2 = a.n2 + b.n2 + c;
+        c = addCarry(a.n2, b.n2, t2);
+        long t3 = a.n3 + b.n3 + c;
+        c = addCarry(a.n3, b.n3, t3);
+        return this.reduce(t0, t1, t2, t3, c);
+    }
+
+    GFp sub(GFp a, GFp b) {
+        long t0 = a.n0 - b.n0;
+        long br = subBorrow(a.n0, b.n0, t0);
+        long t1 = a.n1 - b.n1 - br;
+        br = subBorrow(a.n1, b.n1, t1);
+        long t2 = a.n2 - b.n2 - br;
+        br = subBorrow(a.n2, b.n2, t2);
+        long t3 = a.n3 - b.n3 - br;
+        br = subBorrow(a.n3, b.n3, t3);
+
+        // add p back if it went below zero
+        long mask = -br;
+        long q0 = P0 & mask, q1 = P1 & mask, q2 = P2 & mask, q3 = P3 & mask;
+        this.n0 = t0 + q0;
+        long c = addCarry(t0, q0, this.n0);
+        this.n1 = t1 + q1 + c;
+        c = addCarry(t1, q1, this.n1);
+        this.n2 = t2 + q2 + c;
+        c = addCarry(t2, q2, this.n2);
+        this.n3 = t3 + q3 + c;
+        return this;
+    }
+
+    GFp dbl(GFp a) {
+        return this.add(a, a);
+    }
+
+    GFp mul(GFp a, GFp b) {
+        return this.montgomeryMul(a, b.n0, b.n1, b.n2, b.n3);
+    }
+
+    GFp square(GFp a) {
+        return this.montgomeryMul(a, a.n0, a.n1, a.n2, a.n3);
+    }
+
+    GFp exp(GFp a, BigInteger power) {
+        GFp sum = new GFp().setOne();
+        GFp base = new GFp(a);
+
+        for (int i = power.bitLength() - 1; i >= 0; i--) {
+            sum.square(sum);
+            if (power.testBit(i)) {
+                sum.mul(sum, base);
+            }
+        }
+
+        return this.set(sum);
+    }
+
+    /**
+     * Inverts the element with Fermat's little theorem, the inverse of zero is zero.
+     */
+    GFp invert(GFp a) {
+        return this.exp(a, pMinus2);
+    }
+
+    /**
+     * Sets the element to a square root of a, which is a^((p+1)/4) as p = 3 mod 4. The same exponentiation tells
+     * whether a is a square so there is no need for the Legendre symbol.
+     *
+     * @return true if a is a square, otherwise the element is left unchanged.
+     */
+    boolean sqrt(GFp a) {
+        GFp root = new GFp().exp(a, pPlus1Over4);
+        if (!new GFp().square(root).equals(a)) {
+            return false;
+        }
+        this.set(root);
+        return true;
+    }
+
+    private GFp fromMontgomery(GFp a) {
+        return this.montgomeryMul(a, 1, 0, 0, 0);
+    }
+
+    /**
+     * Computes a*b/R mod p with the coarsely integrated operand scanning method, one limb of b per round.
+     */
+    private GFp montgomeryMul(GFp a, long b0, long b1, long b2, long b3) {
+        long a0 = a.n0, a1 = a.n1, a2 = a.n2, a3 = a.n3;
+        long t0 = 0, t1 = 0, t2 = 0, t3 = 0, t4 = 0;
+
+        for (int i = 0; i < 4; i++) {
+            long bi = i == 0 ? b0 : i == 1 ? b1 : i == 2 ? b2 : b3;
+            long lo, hi, s, c;
+
+            // t += a * bi
+            lo = a0 * bi;
+            hi = mulHi(a0, bi);
+            s = t0 + lo;
+            hi += addCarry(t0, lo, s);
+            t0 = s;
+            c = hi;
+
+            lo = a1 * bi;
+            hi = mulHi(a1, bi);
+            s = t1 + lo;
+            hi += addCarry(t1, lo, s);
+            lo = s + c;
+            hi += addCarry(s, c, lo);
+            t1 = lo;
+            c = hi;
+
+            lo = a2 * bi;
+            hi = mulHi(a2, bi);
+            s = t2 + lo;
+            hi += addCarry(t2, lo, s);
+            lo = s + c;
+            hi += addCarry(s, c, lo);
+            t2 = lo;
+            c = hi;
+
+            lo = a3 * bi;
+            hi = mulHi(a3, bi);
+            s = t3 + lo;
+            hi += addCarry(t3, lo, s);
+            lo = s + c;
+            hi += addCarry(s, c, lo);
+            t3 = lo;
+            c = hi;
+
+            s = t4 + c;
+            long t5 = addCarry(t4, c, s);
+            t4 = s;
+
+            // t = (t + m*p) / 2^64, where m is chosen so that the lowest limb becomes zero
+            long m = t0 * NP0;
+
+            lo = m * P0;
+            hi = mulHi(m, P0);
+            s = t0 + lo;
+            hi += addCarry(t0, lo, s);
+            c = hi;
+
+            lo = m * P1;
+            hi = mulHi(m, P1);
+            s = t1 + lo;
+            hi += addCarry(t1, lo, s);
+            lo = s + c;
+            hi += addCarry(s, c, lo);
+            t0 = lo;
+            c = hi;
+
+            lo = m * P2;
+            hi = mulHi(m, P2);
+            s = t2 + lo;
+            hi += addCarry(t2, lo, s);
+            lo = s + c;
+            hi += addCarry(s, c, lo);
+            t1 = lo;
+            c = hi;
+
+            lo = m * P3;
+            hi = mulHi(m, P3);
+            s = t3 + lo;
+            hi += addCarry(t3, lo, s);
+            lo = s + c;
+            hi += addCarry(s, c, lo);
+            t2 = lo;
+            c = hi;
+
+            s = t4 + c;
+            t3 = s;
+            t4 = t5 + addCarry(t4, c, s);
+        }
+
+        return this.reduce(t0, t1, t2, t3, t4);
+    }
+
+    /**
+     * Stores t4:t3:t2:t1:t0 minus p if it is not smaller than p, the value must be smaller than 2p.
+     */
+    private GFp reduce(long t0, long t1, long t2, long t3, long t4) {
+        long d0 = t0 - P0;
+        long br = subBorrow(t0, P0, d0);
+        long d1 = t1 - P1 - br;
+        br = subBorrow(t1, P1, d1);
+        long d2 = t2 - P2 - br;
+        br = subBorrow(t2, P2, d2);
+        long d3 = t3 - P3 - br;
+        br = subBorrow(t3, P3, d3);
+
+        // keep t only when the subtraction went below zero and there is no fifth limb
+        long keep = -(br & ~t4 & 1);
+        this.n0 = (t0 & keep) | (d0 & ~keep);
+        this.n1 = (t1 & keep) | (d1 & ~keep);
+        this.n2 = (t2 & keep) | (d2 & ~keep);
+        this.n3 = (t3 & keep) | (d3 & ~keep);
+        return this;
+    }
+
+    // the carry out of s = a + b (+ carry in)
+    private static long addCarry(long a, long b, long s) {
+        return ((a & b) | ((a | b) & ~s)) >>> 63;
+    }
+
+    // the borrow out of d = a - b (- borrow in)
+    private static long subBorrow(long a, long b, long d) {
+        return ((~a & b) | (~(a ^ b) & d)) >>> 63;
+    }
+
+    // the high 64 bits of the unsigned product, Math.multiplyHigh is not available before Java 9
+    private static long mulHi(long a, long b) {
+        long a0 = a & 0xffffffffL, a1 = a >>> 32;
+        long b0 = b & 0xffffffffL, b1 = b >>> 32;
+        long p00 = a0 * b0, p01 = a0 * b1, p10 = a1 * b0, p11 = a1 * b1;
+        long mid = (p00 >>> 32) + (p01 & 0xffffffffL) + (p10 & 0xffffffffL);
+        return p11 + (p01 >>> 32) + (p10 >>> 32) + (mid >>> 32);
+    }
+
+    private static void putLong(byte[] out, int offset, long v) {
+        for (int i = 7; i >= 0; i--) {
+            out[offset + i] = (byte) v;
+            v >>>= 8;
+        }
+    }
+
+    private static long getLong(byte[] in, int offset) {
+        long v = 0;
+        for (int i = 0; i < 8; i++) {
+            v = (v << 8) | (in[offset + i] & 0xff);
+        }
+        return v;
+    }
+}
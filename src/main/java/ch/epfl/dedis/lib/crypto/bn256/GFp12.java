@@ -50,18 +50,11 @@ class GFp12 {
         return this;
     }
 
-    void minimal() {
-        this.x.minimal();
-        this.y.minimal();
-    }
-
     boolean isZero() {
-        this.minimal();
         return this.x.isZero() && this.y.isZero();
     }
 
     boolean isOne() {
-        this.minimal();
         return this.x.isZero() && this.y.isOne();
     }
 
@@ -104,20 +97,24 @@ class GFp12 {
     }
 
     GFp12 mul(GFp12 a, GFp12 b) {
-        GFp6 tx = GFpPool.getInstance().get6();
-        tx.mul(a.x, b.y);
-        GFp6 t = GFpPool.getInstance().get6();
-        t.mul(b.x, a.y);
-        tx.add(tx, t);
+        // Karatsuba: x = (ax+ay)(bx+by) - ax*bx - ay*by
+        GFp6 v0 = GFpPool.getInstance().get6();
+        v0.mul(a.y, b.y);
+        GFp6 v1 = GFpPool.getInstance().get6();
+        v1.mul(a.x, b.x);
 
-        GFp6 ty = GFpPool.getInstance().get6();
-        ty.mul(a.y, b.y);
-        t.mul(a.x, b.x);
-        t.mulTau(t);
-        this.y.add(ty, t);
-        this.x.set(tx);
+        GFp6 t0 = GFpPool.getInstance().get6();
+        t0.add(a.x, a.y);
+        GFp6 t1 = GFpPool.getInstance().get6();
+        t1.add(b.x, b.y);
 
-        GFpPool.getInstance().put6(tx, t, ty);
+        this.x.mul(t0, t1);
+        this.x.sub(this.x, v0);
+        this.x.sub(this.x, v1);
+        v1.mulTau(v1);
+        this.y.add(v0, v1);
+
+        GFpPool.getInstance().put6(v0, v1, t0, t1);
 
         return this;
     }
@@ -149,6 +146,93 @@ class GFp12 {
         return this;
     }
 
+    /**
+     * Computes a^power for an element of the cyclotomic subgroup with {@link #cyclotomicSquare(GFp12)}.
+     */
+    GFp12 cyclotomicExp(GFp12 a, BigInteger power) {
+        GFp12 sum = GFpPool.getInstance().get12();
+        sum.setOne();
+        GFp12 t = GFpPool.getInstance().get12();
+
+        for (int i = power.bitLength() - 1; i >= 0; i--) {
+            t.cyclotomicSquare(sum);
+            if (power.testBit(i)) {
+                sum.mul(t, a);
+            } else {
+                sum.set(t);
+            }
+        }
+
+        this.set(sum);
+
+        GFpPool.getInstance().put12(sum, t);
+
+        return this;
+    }
+
+    /**
+     * Squares an element of the cyclotomic subgroup, i.e. a^(p^4-p^2+1) = 1 like the result of the easy part of the
+     * final exponentiation, with the method of Granger and Scott. The element is seen as three elements of GF(p^4)
+     * and it takes 6 multiplications in GF(p^2) instead of 12. The result is wrong for the other elements.
+     */
+    GFp12 cyclotomicSquare(GFp12 a) {
+        GFp2 t0 = GFpPool.getInstance().get2();
+        GFp2 t1 = GFpPool.getInstance().get2();
+        GFp2 t2 = GFpPool.getInstance().get2();
+        GFp2 t3 = GFpPool.getInstance().get2();
+        GFp2 t4 = GFpPool.getInstance().get2();
+        GFp2 t5 = GFpPool.getInstance().get2();
+        GFp2 t = GFpPool.getInstance().get2();
+
+        // the squares of the elements of GF(p^4) = GF(p^2)[s]/(s^2 - xi)
+        squareGFp4(t0, t1, a.y.z, a.x.y, t);
+        squareGFp4(t2, t3, a.x.z, a.y.x, t);
+        squareGFp4(t4, t5, a.y.y, a.x.x, t);
+
+        // z = 3*t - 2*z or z = 3*t + 2*z
+        t.sub(t0, a.y.z);
+        t.dbl(t);
+        this.y.z.add(t, t0);
+
+        t.add(t1, a.x.y);
+        t.dbl(t);
+        this.x.y.add(t, t1);
+
+        t5.mulXi(t5);
+        t.add(t5, a.x.z);
+        t.dbl(t);
+        this.x.z.add(t, t5);
+
+        t.sub(t4, a.y.x);
+        t.dbl(t);
+        this.y.x.add(t, t4);
+
+        t.sub(t2, a.y.y);
+        t.dbl(t);
+        this.y.y.add(t, t2);
+
+        t.add(t3, a.x.x);
+        t.dbl(t);
+        this.x.x.add(t, t3);
+
+        GFpPool.getInstance().put2(t0, t1, t2, t3, t4, t5, t);
+
+        return this;
+    }
+
+    // (c0 + c1*s) = (a0 + a1*s)^2 with s^2 = xi, t is a temporary
+    private static void squareGFp4(GFp2 c0, GFp2 c1, GFp2 a0, GFp2 a1, GFp2 t) {
+        t.mul(a0, a1);
+        c0.mulXi(a1);
+        c0.add(c0, a0);
+        c1.add(a0, a1);
+        c0.mul(c0, c1);
+        c0.sub(c0, t);
+        c1.mulXi(t);
+        c0.sub(c0, c1);
+        c1.dbl(t);
+    }
+
     GFp12 square(GFp12 a) {
         GFp6 v0 = GFpPool.getInstance().get6();
         v0.mul(a.x, a.y);
@@ -3,27 +3,26 @@ package ch.epfl.dedis.lib.crypto.bn256;
 import java.math.BigInteger;
 
 class GFp2 {
-    BigInteger x, y;
-    private static BigInteger p = Constants.p;
+    GFp x, y;
 
     GFp2() {
-        this.x = BigInteger.ZERO;
-        this.y = BigInteger.ZERO;
+        this.x = new GFp();
+        this.y = new GFp();
     }
 
     GFp2(GFp2 e) {
-        this.x = e.x;
-        this.y = e.y;
+        this.x = new GFp(e.x);
+        this.y = new GFp(e.y);
     }
 
     GFp2(BigInteger x, BigInteger y) {
-        this.x = x;
-        this.y = y;
+        this.x = new GFp(x);
+        this.y = new GFp(y);
     }
 
     @Override
     public String toString() {
-        return "(" + this.x.mod(p).toString() + "," + this.y.mod(p).toString() + ")";
+        return "(" + this.x.toString() + "," + this.y.toString() + ")";
     }
 
     @Override
@@ -35,77 +34,62 @@ class GFp2 {
             return false;
         }
         GFp2 other = (GFp2)obj;
-        this.minimal();
-        other.minimal();
         return other.x.equals(this.x) && other.y.equals(this.y);
     }
 
     GFp2 set(GFp2 a) {
-        this.x = a.x;
-        this.y = a.y;
+        this.x.set(a.x);
+        this.y.set(a.y);
         return this;
     }
 
     public GFp2 setZero() {
-        this.x = BigInteger.ZERO;
-        this.y = BigInteger.ZERO;
+        this.x.setZero();
+        this.y.setZero();
         return this;
     }
 
     GFp2 setOne() {
-        this.x = BigInteger.ZERO;
-        this.y = BigInteger.ONE;
+        this.x.setZero();
+        this.y.setOne();
         return this;
     }
 
-    void minimal() {
-        if (this.x.signum() < 0 || this.x.compareTo(p) >= 0) {
-            this.x = this.x.mod(p);
-        }
-        if (this.y.signum() < 0 || this.y.compareTo(p) >= 0) {
-            this.y = this.y.mod(p);
-        }
-    }
-
     boolean isZero() {
-        return this.x.signum() == 0 && this.y.signum() == 0;
+        return this.x.isZero() && this.y.isZero();
     }
 
     boolean isOne() {
-        if (this.x.signum() != 0) {
-            return false;
-        }
-        byte[] words = BN.bigIntegerToBytes(this.y);
-        return words.length == 1 && words[0] == 1;
+        return this.x.isZero() && this.y.isOne();
     }
 
     GFp2 conjugate(GFp2 a) {
-        this.y = a.y;
-        this.x = a.x.negate();
+        this.y.set(a.y);
+        this.x.negative(a.x);
         return this;
     }
 
     GFp2 negative(GFp2 a) {
-        this.x = a.x.negate();
-        this.y = a.y.negate();
+        this.x.negative(a.x);
+        this.y.negative(a.y);
         return this;
     }
 
     GFp2 add(GFp2 a, GFp2 b) {
-        this.x = a.x.add(b.x);
-        this.y = a.y.add(b.y);
+        this.x.add(a.x, b.x);
+        this.y.add(a.y, b.y);
         return this;
     }
 
     GFp2 sub(GFp2 a, GFp2 b) {
-        this.x = a.x.subtract(b.x);
-        this.y = a.y.subtract(b.y);
+        this.x.sub(a.x, b.x);
+        this.y.sub(a.y, b.y);
         return this;
     }
 
     GFp2 dbl(GFp2 a) {
-        this.x = a.x.shiftLeft(1);
-        this.y = a.y.shiftLeft(1);
+        this.x.dbl(a.x);
+        this.y.dbl(a.y);
         return this;
     }
 
@@ -131,66 +115,74 @@ class GFp2 {
     }
 
     GFp2 mul(GFp2 a, GFp2 b) {
-        BigInteger tx = a.x.multiply(b.y);
-        BigInteger t = b.x.multiply(a.y);
-        tx = tx.add(t).mod(p);
+        // Karatsuba: x = (ax+ay)(bx+by) - ax*bx - ay*by
+        GFpPool pool = GFpPool.getInstance();
+        GFp v0 = pool.get1().mul(a.y, b.y);
+        GFp v1 = pool.get1().mul(a.x, b.x);
+        GFp t0 = pool.get1().add(a.x, a.y);
+        GFp t1 = pool.get1().add(b.x, b.y);
 
-        BigInteger ty = a.y.multiply(b.y).mod(p);
-        t = a.x.multiply(b.x).mod(p);
-        ty = ty.subtract(t).mod(p);
-        this.y = ty;
-        this.x = tx;
+        this.x.mul(t0, t1);
+        this.x.sub(this.x, v0);
+        this.x.sub(this.x, v1);
+        this.y.sub(v0, v1);
+
+        pool.put1(v0, v1, t0, t1);
 
         return this;
     }
 
-    GFp2 mulScalar(GFp2 a, BigInteger b) {
-        this.x = a.x.multiply(b);
-        this.y = a.y.multiply(b);
+    GFp2 mulScalar(GFp2 a, GFp b) {
+        this.x.mul(a.x, b);
+        this.y.mul(a.y, b);
         return this;
     }
 
     GFp2 mulXi(GFp2 a) {
-        BigInteger tx = a.x.shiftLeft(1);
-        tx = tx.add(a.x);
-        tx = tx.add(a.y);
+        // (xi+y)(i+3) = (3x+y)i + (3y-x)
+        GFpPool pool = GFpPool.getInstance();
+        GFp tx = pool.get1().dbl(a.x);
+        tx.add(tx, a.x);
+        tx.add(tx, a.y);
+
+        GFp ty = pool.get1().dbl(a.y);
+        ty.add(ty, a.y);
+        ty.sub(ty, a.x);
 
-        BigInteger ty = a.y.shiftLeft(1);
-        ty = ty.add(a.y);
-        ty = ty.subtract(a.x);
+        this.x.set(tx);
+        this.y.set(ty);
 
-        this.x = tx;
-        this.y = ty;
+        pool.put1(tx, ty);
 
         return this;
     }
 
     GFp2 square(GFp2 a) {
-        BigInteger t1 = a.y.subtract(a.x);
-        BigInteger t2 = a.x.add(a.y);
-        BigInteger ty = t1.multiply(t2);
-        ty = ty.mod(p);
+        GFpPool pool = GFpPool.getInstance();
+        GFp t1 = pool.get1().sub(a.y, a.x);
+        GFp t2 = pool.get1().add(a.x, a.y);
+        GFp ty = pool.get1().mul(t1, t2);
 
-        t1 = a.x.multiply(a.y);
-        t1 = t1.shiftLeft(1);
+        t1.mul(a.x, a.y);
+        this.x.dbl(t1);
+        this.y.set(ty);
 
-        this.x = t1.mod(p);
-        this.y = ty;
+        pool.put1(t1, t2, ty);
 
         return this;
     }
 
     GFp2 invert(GFp2 a) {
-        BigInteger t = a.y.multiply(a.y);
-        BigInteger t2 = a.x.multiply(a.x);
-        t = t.add(t2);
+        GFp t = new GFp().square(a.y);
+        GFp t2 = new GFp().square(a.x);
+        t.add(t, t2);
 
-        BigInteger inv = t.modInverse(p);
+        GFp inv = t.invert(t);
 
-        this.x = a.x.negate();
-        this.x = this.x.multiply(inv).mod(p);
+        this.x.negative(a.x);
+        this.x.mul(this.x, inv);
 
-        this.y = a.y.multiply(inv).mod(p);
+        this.y.mul(a.y, inv);
 
         return this;
     }
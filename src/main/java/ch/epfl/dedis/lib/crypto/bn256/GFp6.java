@@ -1,7 +1,5 @@
 package ch.epfl.dedis.lib.crypto.bn256;
 
-import java.math.BigInteger;
-
 class GFp6 {
     GFp2 x, y, z;
 
@@ -55,12 +53,6 @@ class GFp6 {
         return this;
     }
 
-    void minimal() {
-        this.x.minimal();
-        this.y.minimal();
-        this.z.minimal();
-    }
-
     boolean isZero() {
         return this.x.isZero() && this.y.isZero() && this.z.isZero();
     }
@@ -167,7 +159,7 @@ class GFp6 {
         return this;
     }
 
-    GFp6 mulGFP(GFp6 a, BigInteger b) {
+    GFp6 mulGFP(GFp6 a, GFp b) {
         this.x.mulScalar(a.x, b);
         this.y.mulScalar(a.y, b);
         this.z.mulScalar(a.z, b);
@@ -1,71 +1,92 @@
 package ch.epfl.dedis.lib.crypto.bn256;
 
-import java.util.LinkedList;
+import java.util.ArrayDeque;
 
 /**
- * This singleton class keeps a pool of different GFp. Instead of creating manually new GFp objects that will then
+ * This class keeps a pool of different GFp. Instead of creating manually new GFp objects that will then
  * be eventually deleted by the GC, one can use this class which will keep no longer used objects and re-use them.
  * If the pool is empty a new object is created. Re-used object are not initialized !
+ * <p>
+ * Every thread has its own pool so that pairings can be computed concurrently without any locking. An object must
+ * be put back in the pool of the thread that took it, which is always the case as the operations are synchronous.
  */
 class GFpPool {
-    private static GFpPool ourInstance = new GFpPool();
+    // the objects beyond this number are left to the GC so that a burst doesn't keep memory forever
+    private static final int MAX_CACHED = 256;
 
+    private static final ThreadLocal<GFpPool> instances = ThreadLocal.withInitial(GFpPool::new);
+
+    /**
+     * @return the pool of the calling thread.
+     */
     public static GFpPool getInstance() {
-        return ourInstance;
+        return instances.get();
     }
 
     private GFpPool() { }
 
-    public GFp2  get2()  { return (GFp2)  get(gfp2Pool);  }
-    public GFp6  get6()  { return (GFp6)  get(gfp6Pool);  }
-    public GFp12 get12() { return (GFp12) get(gfp12Pool); }
+    public GFp   get1()  { return gfpPool.get();   }
+    public GFp2  get2()  { return gfp2Pool.get();  }
+    public GFp6  get6()  { return gfp6Pool.get();  }
+    public GFp12 get12() { return gfp12Pool.get(); }
 
-    public void put2 (GFp2... gFp2s)   { put(gfp2Pool, (Object[]) gFp2s);  }
-    public void put6 (GFp6... gFp6s)   { put(gfp6Pool, (Object[]) gFp6s);  }
-    public void put12(GFp12... gFp12s) { put(gfp12Pool, (Object[]) gFp12s); }
+    public void put1 (GFp... gFps)     { gfpPool.put(gFps);    }
+    public void put2 (GFp2... gFp2s)   { gfp2Pool.put(gFp2s);  }
+    public void put6 (GFp6... gFp6s)   { gfp6Pool.put(gFp6s);  }
+    public void put12(GFp12... gFp12s) { gfp12Pool.put(gFp12s); }
 
+    public int getC1()  { return gfpPool.count;   }
     public int getC2()  { return gfp2Pool.count;  }
     public int getC6()  { return gfp6Pool.count;  }
     public int getC12() { return gfp12Pool.count; }
 
-    private Object get(Pool pool) {
-        pool.count++;
-        if(pool.cache.isEmpty())
-            return pool.create();
+    private abstract static class Pool<E> {
+        private final ArrayDeque<E> cache = new ArrayDeque<>();
+        private int count = 0;
 
-        return pool.cache.pop();
-    }
+        abstract E create();
 
-    private void put(Pool pool, Object... gfps) {
-        for(Object gfp : gfps) {
-            pool.cache.add(gfp);
-            pool.count--;
+        E get() {
+            count++;
+            E e = cache.poll();
+            return e != null ? e : create();
         }
-    }
 
-    private abstract class Pool<E> {
-        public LinkedList<E> cache = new LinkedList<>();
-        public int count = 0;
-        public abstract Object create();
+        @SafeVarargs
+        final void put(E... gfps) {
+            for (E gfp : gfps) {
+                if (cache.size() < MAX_CACHED) {
+                    cache.push(gfp);
+                }
+                count--;
+            }
+        }
     }
 
-    private Pool gfp2Pool = new Pool<GFp2>() {
+    private final Pool<GFp> gfpPool = new Pool<GFp>() {
+        @Override
+        GFp create() {
+            return new GFp();
+        }
+    };
+
+    private final Pool<GFp2> gfp2Pool = new Pool<GFp2>() {
         @Override
-        public GFp2 create() {
+        GFp2 create() {
             return new GFp2();
         }
     };
 
-    private Pool gfp6Pool = new Pool<GFp6>() {
+    private final Pool<GFp6> gfp6Pool = new Pool<GFp6>() {
         @Override
-        public GFp6 create() {
+        GFp6 create() {
             return new GFp6();
         }
     };
 
-    private Pool gfp12Pool = new Pool<GFp12>() {
+    private final Pool<GFp12> gfp12Pool = new Pool<GFp12>() {
         @Override
-        public GFp12 create() {
+        GFp12 create() {
             return new GFp12();
         }
     };
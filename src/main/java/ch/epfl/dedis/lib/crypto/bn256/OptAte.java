@@ -1,6 +1,20 @@
 package ch.epfl.dedis.lib.crypto.bn256;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.IntFunction;
+
 class OptAte {
+    // below this number of pairs the product is computed on the calling thread as the split costs more than it saves
+    static final int DEFAULT_PARALLEL_MIN_PAIRS = 4;
+
+    private static volatile int parallelMinPairs = DEFAULT_PARALLEL_MIN_PAIRS;
+    // the threads that help the calling thread, null when everything is computed on the calling thread
+    private static volatile ForkJoinPool workers = createWorkers(Runtime.getRuntime().availableProcessors());
+
     private static class result {
         GFp2 a, b, c;
         TwistPoint rOut;
@@ -13,7 +27,9 @@ class OptAte {
         }
     }
 
-    private static result lineFunctionAdd(TwistPoint r, TwistPoint p, CurvePoint q, GFp2 r2) {
+    // The line functions don't multiply b and c by the x and y coordinates of the G1 point, so that the coefficients
+    // of a G2 point can be prepared once and used with any G1 point, see mulLine.
+    private static result lineFunctionAdd(TwistPoint r, TwistPoint p, GFp2 r2) {
         GFp2 a, b, c;
         TwistPoint rOut;
 
@@ -82,21 +98,19 @@ class OptAte {
         GFpPool.getInstance().put2(t, t2);
 
         c = new GFp2();
-        c.mulScalar(rOut.z, q.y);
-        c.add(c, c);
+        c.add(rOut.z, rOut.z);
 
         b = new GFp2();
         b.setZero();
         b.sub(b, L1);
         GFpPool.getInstance().put2(L1);
 
-        b.mulScalar(b, q.x);
         b.add(b, b);
 
         return new result(a, b, c, rOut);
     }
 
-    private static result lineFunctionDouble(TwistPoint r, CurvePoint q) {
+    private static result lineFunctionDouble(TwistPoint r) {
         GFp2 a, b, c;
         TwistPoint rOut;
 
@@ -138,7 +152,6 @@ class OptAte {
         b = new GFp2();
         b.setZero();
         b.sub(b, t);
-        b.mulScalar(b, q.x);
 
         a = new GFp2();
         a.add(r.x, E);
@@ -154,12 +167,15 @@ class OptAte {
         c = new GFp2();
         c.mul(rOut.z, r.t);
         c.add(c, c);
-        c.mulScalar(c, q.y);
 
         return new result(a, b, c, rOut);
     }
 
-    private static void mulLine(GFp12 ret, GFp2 a, GFp2 b, GFp2 c) {
+    private static void mulLine(GFp12 ret, Lines lines, int k, CurvePoint q) {
+        GFp2 a = lines.a[k];
+        GFp2 b = GFpPool.getInstance().get2().mulScalar(lines.b[k], q.x);
+        GFp2 c = GFpPool.getInstance().get2().mulScalar(lines.c[k], q.y);
+
         GFp6 a2 = GFpPool.getInstance().get6();
         a2.x.setZero();
         a2.y.set(a);
@@ -183,24 +199,44 @@ class OptAte {
         a2.mulTau(a2);
         ret.y.add(ret.y, a2);
 
-        GFpPool.getInstance().put2(t);
+        GFpPool.getInstance().put2(t, b, c);
         GFpPool.getInstance().put6(a2, t3, t2);
     }
 
     private static byte[] sixuPlus2NAF = new byte[]{0, 0, 0, 1, 0, 0, 0, 0, 0, 1, 0, 0, 1, 0, 0, 0, -1, 0, 1, 0, 1, 0, 0, 0, 0, 1, 0, 1, 0, 0, 0, -1, 0, 1, 0, 0, 0, 1, 0, -1, 0, 0, 0, -1, 0, 1, 0, 0, 0, 0, 0, 1, 0, 0, -1, 0, -1, 0, 0, 0, 0, 1, 0, 0, 0, 1};
 
-    private static GFp12 miller(TwistPoint q, CurvePoint p) {
-        GFp12 ret = new GFp12(); // return
-        ret.setOne();
+    // the number of lines of a Miller loop, one per doubling and one per addition
+    private static final int LINES;
+
+    static {
+        int n = 2;
+        for (int i = sixuPlus2NAF.length - 1; i > 0; i--) {
+            n += sixuPlus2NAF[i - 1] == 0 ? 1 : 2;
+        }
+        LINES = n;
+    }
+
+    /**
+     * The coefficients of the lines of the Miller loop of a G2 point, in the order they are used. They only depend on
+     * the G2 point and are never modified once computed.
+     */
+    static final class Lines {
+        final GFp2[] a = new GFp2[LINES];
+        final GFp2[] b = new GFp2[LINES];
+        final GFp2[] c = new GFp2[LINES];
+    }
+
+    /**
+     * Computes the lines of the Miller loop of a G2 point that is not at infinity.
+     */
+    static Lines prepare(TwistPoint q) {
+        Lines lines = new Lines();
+        int k = 0;
 
         TwistPoint aAffine = new TwistPoint(GFpPool.getInstance());
         aAffine.set(q);
         aAffine.makeAffine();
 
-        CurvePoint bAffine = new CurvePoint();
-        bAffine.set(p);
-        bAffine.makeAffine();
-
         TwistPoint minusA = new TwistPoint(GFpPool.getInstance());
         minusA.negative(aAffine);
 
@@ -211,36 +247,20 @@ class OptAte {
         r2.square(aAffine.y);
 
         for (int i = sixuPlus2NAF.length - 1; i > 0; i--) {
-            result res = lineFunctionDouble(r, bAffine);
-            GFp2 a = res.a;
-            GFp2 b = res.b;
-            GFp2 c = res.c;
-            TwistPoint newR = res.rOut;
-            if (i != sixuPlus2NAF.length - 1) {
-                ret.square(ret);
-            }
-
-            mulLine(ret, a, b, c);
-            r = newR;
+            result res = lineFunctionDouble(r);
+            k = addLine(lines, k, res);
+            r = res.rOut;
 
             if (sixuPlus2NAF[i - 1] == 1) {
-                result res1 = lineFunctionAdd(r, aAffine, bAffine, r2);
-                a = res1.a;
-                b = res1.b;
-                c = res1.c;
-                newR = res1.rOut;
+                res = lineFunctionAdd(r, aAffine, r2);
             } else if (sixuPlus2NAF[i - 1] == -1) {
-                result res2 = lineFunctionAdd(r, minusA, bAffine, r2);
-                a = res2.a;
-                b = res2.b;
-                c = res2.c;
-                newR = res2.rOut;
+                res = lineFunctionAdd(r, minusA, r2);
             } else {
                 continue;
             }
 
-            mulLine(ret, a, b, c);
-            r = newR;
+            k = addLine(lines, k, res);
+            r = res.rOut;
         }
 
         TwistPoint q1 = new TwistPoint(GFpPool.getInstance());
@@ -258,25 +278,16 @@ class OptAte {
         minusQ2.t.setOne();
 
         r2.square(q1.y);
-        result res = lineFunctionAdd(r, q1, bAffine, r2);
-        GFp2 a = res.a;
-        GFp2 b = res.b;
-        GFp2 c = res.c;
-        TwistPoint newR = res.rOut;
-        mulLine(ret, a, b, c);
-        r = newR;
+        result res = lineFunctionAdd(r, q1, r2);
+        k = addLine(lines, k, res);
+        r = res.rOut;
 
         r2.square(minusQ2.y);
-        result res2 = lineFunctionAdd(r, minusQ2, bAffine, r2);
+        res = lineFunctionAdd(r, minusQ2, r2);
+        addLine(lines, k, res);
+        r = res.rOut;
         GFpPool.getInstance().put2(r2);
 
-        a = res2.a;
-        b = res2.b;
-        c = res2.c;
-        newR = res2.rOut;
-        mulLine(ret, a, b, c);
-        r = newR;
-
         // Free at the end as GFps are passed around.
         aAffine.free(GFpPool.getInstance());
         minusA.free(GFpPool.getInstance());
@@ -284,6 +295,52 @@ class OptAte {
         q1.free(GFpPool.getInstance());
         minusQ2.free(GFpPool.getInstance());
 
+        return lines;
+    }
+
+    private static int addLine(Lines lines, int k, result res) {
+        lines.a[k] = res.a;
+        lines.b[k] = res.b;
+        lines.c[k] = res.c;
+        return k + 1;
+    }
+
+    /**
+     * Computes the product of the Miller loops of the pairs. The loops run side by side so that the accumulator is
+     * squared only once per step for all of them. None of the points may be at infinity.
+     */
+    private static GFp12 miller(Lines[] qs, CurvePoint[] ps) {
+        int n = qs.length;
+        GFp12 ret = new GFp12(); // return
+        ret.setOne();
+
+        CurvePoint[] bAffine = new CurvePoint[n];
+        for (int j = 0; j < n; j++) {
+            bAffine[j] = new CurvePoint();
+            bAffine[j].set(ps[j]);
+            bAffine[j].makeAffine();
+        }
+
+        int k = 0;
+        for (int i = sixuPlus2NAF.length - 1; i > 0; i--) {
+            if (i != sixuPlus2NAF.length - 1) {
+                ret.square(ret);
+            }
+
+            int count = sixuPlus2NAF[i - 1] == 0 ? 1 : 2;
+            for (int j = 0; j < n; j++) {
+                for (int l = 0; l < count; l++) {
+                    mulLine(ret, qs[j], k + l, bAffine[j]);
+                }
+            }
+            k += count;
+        }
+
+        for (int j = 0; j < n; j++) {
+            mulLine(ret, qs[j], k, bAffine[j]);
+            mulLine(ret, qs[j], k + 1, bAffine[j]);
+        }
+
         return ret;
     }
 
@@ -311,9 +368,10 @@ class OptAte {
         GFp12 fu = GFpPool.getInstance().get12();
         GFp12 fu2 = GFpPool.getInstance().get12();
         GFp12 fu3 = GFpPool.getInstance().get12();
-        fu.exp(t1, Constants.u);
-        fu2.exp(fu, Constants.u);
-        fu3.exp(fu2, Constants.u);
+        // t1 is now in the cyclotomic subgroup, and so are its powers and their Frobenius maps
+        fu.cyclotomicExp(t1, Constants.u);
+        fu2.cyclotomicExp(fu, Constants.u);
+        fu3.cyclotomicExp(fu2, Constants.u);
 
         GFp12 y3 = GFpPool.getInstance().get12().frobenius(fu);
         GFp12 fu2p = GFpPool.getInstance().get12().frobenius(fu2);
@@ -344,18 +402,18 @@ class OptAte {
         GFpPool.getInstance().put12(fu3p, fu3);
 
         GFp12 t0 = new GFp12();
-        t0.square(y6);
+        t0.cyclotomicSquare(y6);
         t0.mul(t0, y4);
         t0.mul(t0, y5);
         t1.mul(y3, y5);
         t1.mul(t1, t0);
         t0.mul(t0, y2);
-        t1.square(t1);
+        t1.cyclotomicSquare(t1);
         t1.mul(t1, t0);
-        t1.square(t1);
+        t1.cyclotomicSquare(t1);
         t0.mul(t1, y1);
         t1.mul(t1, y0);
-        t0.square(t0);
+        t0.cyclotomicSquare(t0);
         t0.mul(t0, t1);
 
         GFpPool.getInstance().put12(t1, y3, y2, y0, y1, y4, y5, y6);
@@ -364,13 +422,99 @@ class OptAte {
     }
 
     static GFp12 optimalAte(TwistPoint a, CurvePoint b) {
-        GFp12 e = miller(a, b);
-        GFp12 ret = finalExponentiation(e);
+        return optimalAteProduct(new TwistPoint[]{a}, new CurvePoint[]{b});
+    }
 
-        if (a.isInfinity() || b.isInfinity()) {
-            ret.setOne();
+    /**
+     * Computes the product of the pairings of a[i] and b[i] with a single final exponentiation. The pairs with a point
+     * at infinity are skipped as their pairing is one.
+     */
+    static GFp12 optimalAteProduct(TwistPoint[] a, CurvePoint[] b) {
+        List<TwistPoint> qs = new ArrayList<>(a.length);
+        List<CurvePoint> ps = new ArrayList<>(b.length);
+        for (int i = 0; i < a.length; i++) {
+            if (!a[i].isInfinity() && !b[i].isInfinity()) {
+                qs.add(a[i]);
+                ps.add(b[i]);
+            }
         }
+        // the lines are computed by the thread of the Miller loop
+        return product(i -> prepare(qs.get(i)), ps);
+    }
 
-        return ret;
+    /**
+     * Same as above with the prepared lines of the G2 points, null for a point at infinity.
+     */
+    static GFp12 optimalAteProduct(Lines[] a, CurvePoint[] b) {
+        List<Lines> qs = new ArrayList<>(a.length);
+        List<CurvePoint> ps = new ArrayList<>(b.length);
+        for (int i = 0; i < a.length; i++) {
+            if (a[i] != null && !b[i].isInfinity()) {
+                qs.add(a[i]);
+                ps.add(b[i]);
+            }
+        }
+        return product(qs::get, ps);
+    }
+
+    /**
+     * Sets the number of threads, including the calling one, that compute the Miller loops of a product of at least
+     * minPairs pairings. The pairs are split in one chunk per thread and the partial products are multiplied before
+     * the final exponentiation.
+     */
+    static synchronized void setParallelism(int parallelism, int minPairs) {
+        if (parallelism < 1 || minPairs < 2) {
+            throw new IllegalArgumentException("the parallelism must be at least 1 and the minimal number of pairs 2");
+        }
+        ForkJoinPool old = workers;
+        workers = createWorkers(parallelism);
+        parallelMinPairs = minPairs;
+        if (old != null) {
+            // the products already started still finish
+            old.shutdown();
+        }
+    }
+
+    private static ForkJoinPool createWorkers(int parallelism) {
+        return parallelism > 1 ? new ForkJoinPool(parallelism - 1) : null;
+    }
+
+    private static GFp12 product(IntFunction<Lines> lines, List<CurvePoint> ps) {
+        int n = ps.size();
+        if (n == 0) {
+            return new GFp12().setOne();
+        }
+
+        ForkJoinPool pool = workers;
+        int chunks = pool == null || n < parallelMinPairs ? 1 : Math.min(pool.getParallelism() + 1, n);
+
+        // the first chunks go to the workers and the last one is computed by this thread
+        List<ForkJoinTask<GFp12>> tasks = new ArrayList<>();
+        for (int c = 0; c < chunks - 1; c++) {
+            int from = c * n / chunks;
+            int to = (c + 1) * n / chunks;
+            try {
+                tasks.add(pool.submit(() -> miller(lines, ps, from, to)));
+            } catch (RejectedExecutionException e) {
+                // the pool has been replaced in the meantime so this thread does it
+                ForkJoinTask<GFp12> task = ForkJoinTask.adapt(() -> miller(lines, ps, from, to));
+                task.invoke();
+                tasks.add(task);
+            }
+        }
+
+        GFp12 e = miller(lines, ps, (chunks - 1) * n / chunks, n);
+        for (ForkJoinTask<GFp12> task : tasks) {
+            e.mul(e, task.join());
+        }
+        return finalExponentiation(e);
+    }
+
+    private static GFp12 miller(IntFunction<Lines> lines, List<CurvePoint> ps, int from, int to) {
+        Lines[] qs = new Lines[to - from];
+        for (int i = from; i < to; i++) {
+            qs[i - from] = lines.apply(i);
+        }
+        return miller(qs, ps.subList(from, to).toArray(new CurvePoint[0]));
     }
 }
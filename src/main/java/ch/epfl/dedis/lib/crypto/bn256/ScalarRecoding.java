@@ -0,0 +1,71 @@
+package ch.epfl.dedis.lib.crypto.bn256;
+
+import java.math.BigInteger;
+
+/**
+ * Recodings of the scalars used by the scalar multiplications of CurvePoint and TwistPoint.
+ */
+class ScalarRecoding {
+    // the window of the variable-base multiplications, the tables hold the 2^(W-2) odd multiples
+    static final int WNAF_WIDTH = 5;
+    // the window of the fixed-base multiplications, the tables hold the 2^W - 1 multiples of every window
+    static final int FIXED_WIDTH = 4;
+    static final int FIXED_WINDOWS = (Constants.order.bitLength() + FIXED_WIDTH - 1) / FIXED_WIDTH;
+
+    private ScalarRecoding() {
+    }
+
+    /**
+     * Computes the width-w non-adjacent form of a non-negative scalar: the digits are zero or odd in
+     * (-2^(w-1), 2^(w-1)), least significant first, and any w consecutive digits have at most one that is not zero.
+     */
+    static int[] wnaf(BigInteger k, int w) {
+        int len = k.bitLength();
+        int[] naf = new int[len + 1];
+        int carry = 0;
+        int bit = 0;
+
+        while (bit < len) {
+            if ((k.testBit(bit) ? 1 : 0) == carry) {
+                bit++;
+                continue;
+            }
+
+            int now = Math.min(w, len - bit);
+            int word = bits(k, bit, now) + carry;
+            carry = (word >> (w - 1)) & 1;
+            word -= carry << w;
+            naf[bit] = word;
+            bit += now;
+        }
+        naf[len] = carry;
+
+        return naf;
+    }
+
+    /**
+     * @return the i-th window of FIXED_WIDTH bits of a non-negative scalar.
+     */
+    static int window(BigInteger k, int i) {
+        return bits(k, i * FIXED_WIDTH, FIXED_WIDTH);
+    }
+
+    /**
+     * @return the width of the windows of a multi-scalar multiplication of n points so that the n additions to the
+     * buckets are balanced with the 2^(c+1) additions that sum them.
+     */
+    static int bucketWidth(int n) {
+        return Math.max(2, 31 - Integer.numberOfLeadingZeros(n) - 1);
+    }
+
+    /**
+     * @return the count bits of a non-negative scalar starting at from.
+     */
+    static int bits(BigInteger k, int from, int count) {
+        int v = 0;
+        for (int i = count - 1; i >= 0; i--) {
+            v = (v << 1) | (k.testBit(from + i) ? 1 : 0);
+        }
+        return v;
+    }
+}
@@ -76,8 +76,7 @@ class TwistPoint {
         xxx.mul(xxx, this.x);
         yy.sub(yy, xxx);
         yy.sub(yy, twistB);
-        yy.minimal();
-        boolean result = yy.x.signum() == 0 && yy.y.signum() == 0;
+        boolean result = yy.isZero();
         GFpPool.getInstance().put2(yy, xxx);
         return result;
     }
@@ -165,7 +164,7 @@ class TwistPoint {
         GFp2 B = GFpPool.getInstance().get2().square(a.y);
         GFp2 C = GFpPool.getInstance().get2().square(B);
 
-        t = GFpPool.getInstance().get2().add(a.x, B);
+        GFp2 t = GFpPool.getInstance().get2().add(a.x, B);
         GFpPool.getInstance().put2(B);
 
         GFp2 t2 = GFpPool.getInstance().get2().square(t);
@@ -177,6 +176,8 @@ class TwistPoint {
         GFpPool.getInstance().put2(A);
 
         GFp2 f = GFpPool.getInstance().get2().square(e);
+        // read before this is written as it can be a
+        GFp2 yz = GFpPool.getInstance().get2().mul(a.y, a.z);
 
         t.add(d, d);
         this.x.sub(f, t);
@@ -188,23 +189,33 @@ class TwistPoint {
         t2.mul(e, this.y);
         this.y.sub(t2, t);
 
-        t.mul(a.y, a.z);
-        this.z.add(t, t);
+        this.z.add(yz, yz);
 
-        GFpPool.getInstance().put2(C, t, t2, d, e, f);
+        GFpPool.getInstance().put2(C, t, t2, d, e, f, yz);
     }
 
+    /**
+     * Computes scalar*a with the wNAF of the scalar. A negative scalar multiplies -a.
+     */
     TwistPoint mul(TwistPoint a, BigInteger scalar) {
+        TwistPoint[] table = oddMultiples(a);
+        if (scalar.signum() < 0) {
+            for (TwistPoint t : table) {
+                t.negative(t);
+            }
+        }
+        int[] naf = ScalarRecoding.wnaf(scalar.abs(), ScalarRecoding.WNAF_WIDTH);
+
         TwistPoint sum = new TwistPoint();
         sum.setInfinity();
-        TwistPoint t = new TwistPoint();
-
-        for (int i = scalar.bitLength(); i >= 0; i--) {
-            t.dbl(sum);
-            if (scalar.testBit(i)) {
-                sum.add(t, a);
-            } else {
-                sum.set(t);
+        TwistPoint neg = new TwistPoint();
+        for (int i = naf.length - 1; i >= 0; i--) {
+            sum.dbl(sum);
+            if (naf[i] > 0) {
+                sum.add(sum, table[naf[i] >> 1]);
+            } else if (naf[i] < 0) {
+                neg.negative(table[-naf[i] >> 1]);
+                sum.add(sum, neg);
             }
         }
 
@@ -212,6 +223,120 @@ class TwistPoint {
         return this;
     }
 
+    /**
+     * Computes scalar*twistGen with a table of the multiples of the generator for every window of the scalar, so
+     * that it takes one addition per window and no doubling.
+     */
+    TwistPoint baseMul(BigInteger scalar) {
+        // the generator has a prime order so the scalar can be reduced
+        BigInteger k = scalar.mod(Constants.order);
+        TwistPoint[][] table = BaseTable.table;
+
+        TwistPoint sum = new TwistPoint();
+        sum.setInfinity();
+        for (int i = 0; i < table.length; i++) {
+            int w = ScalarRecoding.window(k, i);
+            if (w != 0) {
+                sum.add(sum, table[i][w - 1]);
+            }
+        }
+
+        this.set(sum);
+        return this;
+    }
+
+    /**
+     * Computes the sum of scalars[i]*points[i] with the bucket method of Pippenger: for every window of the scalars
+     * the points are first added to the bucket of their digit, and the buckets are then summed with their weights.
+     * As in {@link #mul(TwistPoint, BigInteger)}, the scalars are not reduced because the points are not checked to be
+     * in the subgroup of prime order, and a negative scalar multiplies the opposite point.
+     */
+    static TwistPoint multiMul(TwistPoint[] points, BigInteger[] scalars) {
+        BigInteger[] ks = new BigInteger[scalars.length];
+        TwistPoint[] ps = points.clone();
+        int bitLength = 0;
+        for (int i = 0; i < ks.length; i++) {
+            ks[i] = scalars[i].abs();
+            if (scalars[i].signum() < 0) {
+                ps[i] = new TwistPoint();
+                ps[i].negative(points[i]);
+            }
+            bitLength = Math.max(bitLength, ks[i].bitLength());
+        }
+
+        int c = ScalarRecoding.bucketWidth(points.length);
+        TwistPoint[] buckets = new TwistPoint[(1 << c) - 1];
+        for (int i = 0; i < buckets.length; i++) {
+            buckets[i] = new TwistPoint();
+        }
+
+        TwistPoint sum = new TwistPoint();
+        sum.setInfinity();
+        TwistPoint running = new TwistPoint();
+        TwistPoint window = new TwistPoint();
+        for (int w = (bitLength + c - 1) / c - 1; w >= 0; w--) {
+            for (int i = 0; i < c; i++) {
+                sum.dbl(sum);
+            }
+
+            for (TwistPoint bucket : buckets) {
+                bucket.setInfinity();
+            }
+            for (int i = 0; i < ps.length; i++) {
+                int digit = ScalarRecoding.bits(ks[i], w * c, c);
+                if (digit != 0) {
+                    buckets[digit - 1].add(buckets[digit - 1], ps[i]);
+                }
+            }
+
+            // running is the sum of the buckets from the top one, so the bucket of digit d is added d times
+            running.setInfinity();
+            window.setInfinity();
+            for (int i = buckets.length - 1; i >= 0; i--) {
+                running.add(running, buckets[i]);
+                window.add(window, running);
+            }
+            sum.add(sum, window);
+        }
+
+        return sum;
+    }
+
+    // P, 3P, 5P, ... up to the largest digit of the wNAF
+    private static TwistPoint[] oddMultiples(TwistPoint a) {
+        TwistPoint[] table = new TwistPoint[1 << (ScalarRecoding.WNAF_WIDTH - 2)];
+        TwistPoint twice = new TwistPoint();
+        twice.dbl(a);
+        table[0] = new TwistPoint(a);
+        for (int i = 1; i < table.length; i++) {
+            table[i] = new TwistPoint();
+            table[i].add(table[i - 1], twice);
+        }
+        return table;
+    }
+
+    // The table of the generator is only built when it is needed for the first time.
+    private static class BaseTable {
+        static final TwistPoint[][] table = build();
+
+        private static TwistPoint[][] build() {
+            int size = (1 << ScalarRecoding.FIXED_WIDTH) - 1;
+            TwistPoint[][] table = new TwistPoint[ScalarRecoding.FIXED_WINDOWS][size];
+            TwistPoint base = new TwistPoint(twistGen);
+            for (int i = 0; i < table.length; i++) {
+                table[i][0] = new TwistPoint(base);
+                for (int j = 1; j < size; j++) {
+                    table[i][j] = new TwistPoint();
+                    table[i][j].add(table[i][j - 1], base);
+                }
+                for (int j = 0; j < ScalarRecoding.FIXED_WIDTH; j++) {
+                    base.dbl(base);
+                }
+            }
+            return table;
+        }
+    }
+
     TwistPoint makeAffine() {
         if (this.z.isOne()) {
             return this;
@@ -240,8 +365,7 @@ class TwistPoint {
 
     void negative(TwistPoint a) {
         this.x.set(a.x);
-        this.y.setZero();
-        this.y.sub(this.y, a.y);
+        this.y.negative(a.y);
         this.z.set(a.z);
         this.t.setZero();
     }
@@ -0,0 +1,16 @@
+package ch.epfl.dedis.lib.exception;
+
+/**
+ * Thrown when a request didn't get its reply before its deadline. The conode might still process the request.
+ */
+public class CothorityTimeoutException extends CothorityCommunicationException {
+    private static final long serialVersionUID = 1L;
+
+    public CothorityTimeoutException(String message) {
+        super(message);
+    }
+
+    public CothorityTimeoutException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
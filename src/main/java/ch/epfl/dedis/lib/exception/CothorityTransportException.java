@@ -0,0 +1,29 @@
+package ch.epfl.dedis.lib.exception;
+
+/**
+ * Thrown when a request didn't get a reply because of the network: the connection couldn't be established or was
+ * lost without an error from the conode. Unlike the errors returned by a conode, it is worth trying another node,
+ * but if the request has already been sent the conode might still process it.
+ */
+public class CothorityTransportException extends CothorityCommunicationException {
+    private static final long serialVersionUID = 1L;
+
+    private final boolean sent;
+
+    public CothorityTransportException(String message, boolean sent) {
+        super(message);
+        this.sent = sent;
+    }
+
+    public CothorityTransportException(String message, boolean sent, Throwable cause) {
+        super(message, cause);
+        this.sent = sent;
+    }
+
+    /**
+     * @return true if the request has been sent before the connection was lost, false if the conode never got it.
+     */
+    public boolean wasSent() {
+        return sent;
+    }
+}
@@ -0,0 +1,116 @@
+package ch.epfl.dedis.lib.metrics;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * dedis/lib
+ * Histogram.java
+ * Purpose: A latency histogram with exponential buckets, from 1 microsecond to about a minute. Recording is lock-free;
+ * the percentiles are the upper bound of the bucket they fall in, so they are at most twice the real value.
+ */
+public class Histogram {
+    // bucket i holds the values up to 2^i microseconds, the last one everything above
+    private static final int BUCKETS = 28;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final AtomicLong sum = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * @param nanos the latency to add
+     */
+    public void record(long nanos) {
+        long micros = Math.max(0, nanos) / 1000;
+        int bucket = micros <= 1 ? 0 : 64 - Long.numberOfLeadingZeros(micros - 1);
+        counts.incrementAndGet(Math.min(bucket, BUCKETS - 1));
+        sum.addAndGet(nanos);
+        max.accumulateAndGet(nanos, Math::max);
+    }
+
+    /**
+     * @return the number of recorded values.
+     */
+    public long getCount() {
+        long n = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            n += counts.get(i);
+        }
+        return n;
+    }
+
+    /**
+     * @return the average of the recorded values, zero if there are none.
+     */
+    public Duration getMean() {
+        long n = getCount();
+        return n == 0 ? Duration.ZERO : Duration.ofNanos(sum.get() / n);
+    }
+
+    /**
+     * @return the largest recorded value.
+     */
+    public Duration getMax() {
+        return Duration.ofNanos(max.get());
+    }
+
+    /**
+     * @param q the percentile, in [0, 1]
+     * @return the upper bound of the bucket of the percentile, zero if there are no values.
+     */
+    public Duration getPercentile(double q) {
+        long[] snapshot = getBucketCounts();
+        long n = 0;
+        for (long c : snapshot) {
+            n += c;
+        }
+        if (n == 0) {
+            return Duration.ZERO;
+        }
+        long rank = Math.max(1, (long) Math.ceil(q * n));
+        for (int i = 0; i < BUCKETS - 1; i++) {
+            rank -= snapshot[i];
+            if (rank <= 0) {
+                return Duration.ofNanos(Math.min(getBucketBound(i), max.get()));
+            }
+        }
+        return getMax();
+    }
+
+    /**
+     * @return the number of values of every bucket, to export the histogram.
+     */
+    public long[] getBucketCounts() {
+        long[] c = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            c[i] = counts.get(i);
+        }
+        return c;
+    }
+
+    /**
+     * @param bucket the index of the bucket
+     * @return the largest value of the bucket in nanoseconds, Long.MAX_VALUE for the last one.
+     */
+    public static long getBucketBound(int bucket) {
+        return bucket >= BUCKETS - 1 ? Long.MAX_VALUE : (1L << bucket) * 1000;
+    }
+
+    Histogram copy() {
+        Histogram h = new Histogram();
+        for (int i = 0; i < BUCKETS; i++) {
+            h.counts.set(i, counts.get(i));
+        }
+        h.sum.set(sum.get());
+        h.max.set(max.get());
+        return h;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("count: %d, mean: %d ms, p50: %d ms, p99: %d ms, max: %d ms", getCount(),
+                getMean().toMillis(), getPercentile(0.5).toMillis(), getPercentile(0.99).toMillis(),
+                getMax().toMillis());
+    }
+}
@@ -0,0 +1,440 @@
+package ch.epfl.dedis.lib.metrics;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * dedis/lib
+ * InMemoryMetrics.java
+ * Purpose: Keeps the statistics of the communication with the conodes in memory, per API endpoint and per node.
+ * {@link #snapshot()} returns a copy that can be exported, e.g. from a monitoring endpoint.
+ */
+public class InMemoryMetrics implements RpcMetrics {
+    private final Map<Key, RequestStats> requests = new ConcurrentHashMap<>();
+    private final Map<String, RequestStats> rosterRequests = new ConcurrentHashMap<>();
+    private final Map<URI, ConnectStats> connects = new ConcurrentHashMap<>();
+    private final Map<Key, StreamStats> streams = new ConcurrentHashMap<>();
+    private final Map<String, AtomicLong> reconnects = new ConcurrentHashMap<>();
+
+    @Override
+    public Span requestStarted(URI node, String path, int bytesSent) {
+        RequestStats stats = requests.computeIfAbsent(new Key(node, path), k -> new RequestStats(node, path));
+        return stats.start(bytesSent);
+    }
+
+    @Override
+    public Span rosterRequestStarted(String path) {
+        return rosterRequests.computeIfAbsent(path, p -> new RequestStats(null, path)).start(0);
+    }
+
+    @Override
+    public void failover(String path, URI node, Throwable error) {
+        rosterRequests.computeIfAbsent(path, p -> new RequestStats(null, path)).failovers.incrementAndGet();
+    }
+
+    @Override
+    public void connected(URI endpoint, long connectNanos, Throwable error) {
+        ConnectStats stats = connects.computeIfAbsent(endpoint, ConnectStats::new);
+        stats.connects.incrementAndGet();
+        if (error != null) {
+            stats.failures.incrementAndGet();
+        }
+        stats.latency.record(connectNanos);
+    }
+
+    @Override
+    public void streamOpened(URI node, String path) {
+        stream(node, path).opened.incrementAndGet();
+    }
+
+    @Override
+    public void streamMessage(URI node, String path, int bytes) {
+        stream(node, path).message(bytes);
+    }
+
+    @Override
+    public void streamClosed(URI node, String path) {
+        stream(node, path).closed.incrementAndGet();
+    }
+
+    @Override
+    public void streamReconnected(String path) {
+        reconnects.computeIfAbsent(path, p -> new AtomicLong()).incrementAndGet();
+    }
+
+    /**
+     * @return a copy of the current statistics.
+     */
+    public Snapshot snapshot() {
+        List<RequestStats> r = new ArrayList<>();
+        requests.values().forEach(s -> r.add(s.copy()));
+        List<RequestStats> rr = new ArrayList<>();
+        rosterRequests.values().forEach(s -> rr.add(s.copy()));
+        List<ConnectStats> c = new ArrayList<>();
+        connects.values().forEach(s -> c.add(s.copy()));
+        List<StreamStats> s = new ArrayList<>();
+        streams.values().forEach(st -> s.add(st.copy()));
+        Map<String, Long> rc = new HashMap<>();
+        reconnects.forEach((path, n) -> rc.put(path, n.get()));
+        return new Snapshot(r, rr, c, s, rc);
+    }
+
+    /**
+     * Forgets all the statistics.
+     */
+    public void reset() {
+        requests.clear();
+        rosterRequests.clear();
+        connects.clear();
+        streams.clear();
+        reconnects.clear();
+    }
+
+    private StreamStats stream(URI node, String path) {
+        return streams.computeIfAbsent(new Key(node, path), k -> new StreamStats(node, path));
+    }
+
+    private static class Key {
+        final URI node;
+        final String path;
+
+        Key(URI node, String path) {
+            this.node = node;
+            this.path = path;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            Key other = (Key) o;
+            return Objects.equals(node, other.node) && path.equals(other.path);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(node, path);
+        }
+    }
+
+    /**
+     * A copy of the statistics at one point in time.
+     */
+    public static class Snapshot {
+        private final List<RequestStats> requests;
+        private final List<RequestStats> rosterRequests;
+        private final List<ConnectStats> connects;
+        private final List<StreamStats> streams;
+        private final Map<String, Long> reconnects;
+
+        Snapshot(List<RequestStats> requests, List<RequestStats> rosterRequests, List<ConnectStats> connects,
+                 List<StreamStats> streams, Map<String, Long> reconnects) {
+            this.requests = Collections.unmodifiableList(requests);
+            this.rosterRequests = Collections.unmodifiableList(rosterRequests);
+            this.connects = Collections.unmodifiableList(connects);
+            this.streams = Collections.unmodifiableList(streams);
+            this.reconnects = Collections.unmodifiableMap(reconnects);
+        }
+
+        /**
+         * @return the requests per node and endpoint.
+         */
+        public List<RequestStats> getRequests() {
+            return requests;
+        }
+
+        /**
+         * @return the requests of the rosters per endpoint, covering all the attempts. The node is null.
+         */
+        public List<RequestStats> getRosterRequests() {
+            return rosterRequests;
+        }
+
+        /**
+         * @return the connections per websocket address.
+         */
+        public List<ConnectStats> getConnects() {
+            return connects;
+        }
+
+        /**
+         * @return the streams per node and endpoint.
+         */
+        public List<StreamStats> getStreams() {
+            return streams;
+        }
+
+        /**
+         * @return the number of reconnections per streaming endpoint.
+         */
+        public Map<String, Long> getStreamReconnects() {
+            return reconnects;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder();
+            rosterRequests.forEach(s -> sb.append(s).append('\n'));
+            requests.forEach(s -> sb.append(s).append('\n'));
+            connects.forEach(s -> sb.append(s).append('\n'));
+            streams.forEach(s -> sb.append(s).append('\n'));
+            reconnects.forEach((path, n) -> sb.append(path).append(": ").append(n).append(" reconnections\n"));
+            return sb.toString();
+        }
+    }
+
+    /**
+     * The requests to one endpoint of one node, or of a roster.
+     */
+    public static class RequestStats {
+        private final URI node;
+        private final String path;
+        private final AtomicLong requests = new AtomicLong();
+        private final AtomicLong errors = new AtomicLong();
+        private final AtomicLong failovers = new AtomicLong();
+        private final AtomicLong bytesSent = new AtomicLong();
+        private final AtomicLong bytesReceived = new AtomicLong();
+        private final Histogram latency;
+
+        RequestStats(URI node, String path) {
+            this(node, path, new Histogram());
+        }
+
+        private RequestStats(URI node, String path, Histogram latency) {
+            this.node = node;
+            this.path = path;
+            this.latency = latency;
+        }
+
+        Span start(int bytes) {
+            requests.incrementAndGet();
+            bytesSent.addAndGet(bytes);
+            long start = System.nanoTime();
+            return (received, error) -> {
+                latency.record(System.nanoTime() - start);
+                bytesReceived.addAndGet(received);
+                if (error != null) {
+                    errors.incrementAndGet();
+                }
+            };
+        }
+
+        RequestStats copy() {
+            RequestStats s = new RequestStats(node, path, latency.copy());
+            s.requests.set(requests.get());
+            s.errors.set(errors.get());
+            s.failovers.set(failovers.get());
+            s.bytesSent.set(bytesSent.get());
+            s.bytesReceived.set(bytesReceived.get());
+            return s;
+        }
+
+        /**
+         * @return the address of the node, or null for the requests of a roster.
+         */
+        public URI getNode() {
+            return node;
+        }
+
+        public String getPath() {
+            return path;
+        }
+
+        public long getRequests() {
+            return requests.get();
+        }
+
+        public long getErrors() {
+            return errors.get();
+        }
+
+        /**
+         * @return how many times a request of a roster has been sent to another node, always zero for a node.
+         */
+        public long getFailovers() {
+            return failovers.get();
+        }
+
+        public long getBytesSent() {
+            return bytesSent.get();
+        }
+
+        public long getBytesReceived() {
+            return bytesReceived.get();
+        }
+
+        /**
+         * @return the latency of the finished requests.
+         */
+        public Histogram getLatency() {
+            return latency;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s %s: %d requests, %d errors, %d failovers, %d bytes sent, %d bytes received, %s",
+                    node != null ? node : "roster", path, getRequests(), getErrors(), getFailovers(), getBytesSent(),
+                    getBytesReceived(), latency);
+        }
+    }
+
+    /**
+     * The connections to one websocket address.
+     */
+    public static class ConnectStats {
+        private final URI endpoint;
+        private final AtomicLong connects = new AtomicLong();
+        private final AtomicLong failures = new AtomicLong();
+        private final Histogram latency;
+
+        ConnectStats(URI endpoint) {
+            this(endpoint, new Histogram());
+        }
+
+        private ConnectStats(URI endpoint, Histogram latency) {
+            this.endpoint = endpoint;
+            this.latency = latency;
+        }
+
+        ConnectStats copy() {
+            ConnectStats s = new ConnectStats(endpoint, latency.copy());
+            s.connects.set(connects.get());
+            s.failures.set(failures.get());
+            return s;
+        }
+
+        public URI getEndpoint() {
+            return endpoint;
+        }
+
+        public long getConnects() {
+            return connects.get();
+        }
+
+        public long getFailures() {
+            return failures.get();
+        }
+
+        /**
+         * @return the time to connect, including the websocket handshake.
+         */
+        public Histogram getLatency() {
+            return latency;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s: %d connections, %d failures, %s", endpoint, getConnects(), getFailures(),
+                    latency);
+        }
+    }
+
+    /**
+     * The streams of one endpoint of one node.
+     */
+    public static class StreamStats {
+        // the rate is computed over the last WINDOW seconds
+        private static final int WINDOW = 60;
+
+        private final URI node;
+        private final String path;
+        private final AtomicLong opened = new AtomicLong();
+        private final AtomicLong closed = new AtomicLong();
+        // guarded by this
+        private long messages;
+        private long bytes;
+        private final long[] perSecond = new long[WINDOW];
+        private long lastSecond;
+        // set in the copies only
+        private double rate;
+        private final long created = System.nanoTime();
+
+        StreamStats(URI node, String path) {
+            this.node = node;
+            this.path = path;
+        }
+
+        synchronized void message(int size) {
+            messages++;
+            bytes += size;
+            long now = TimeUnit.NANOSECONDS.toSeconds(System.nanoTime());
+            advance(now);
+            perSecond[(int) (now % WINDOW)]++;
+        }
+
+        // clears the seconds without messages since the last one
+        private void advance(long now) {
+            for (long s = Math.max(lastSecond + 1, now - WINDOW + 1); s <= now; s++) {
+                perSecond[(int) (s % WINDOW)] = 0;
+            }
+            lastSecond = Math.max(lastSecond, now);
+        }
+
+        synchronized StreamStats copy() {
+            StreamStats s = new StreamStats(node, path);
+            s.opened.set(opened.get());
+            s.closed.set(closed.get());
+            s.messages = messages;
+            s.bytes = bytes;
+            advance(TimeUnit.NANOSECONDS.toSeconds(System.nanoTime()));
+            System.arraycopy(perSecond, 0, s.perSecond, 0, WINDOW);
+            s.lastSecond = lastSecond;
+            s.rate = rate();
+            return s;
+        }
+
+        private double rate() {
+            long sum = 0;
+            for (long n : perSecond) {
+                sum += n;
+            }
+            long age = Math.max(1, TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - created));
+            return (double) sum / Math.min(WINDOW, age);
+        }
+
+        public URI getNode() {
+            return node;
+        }
+
+        public String getPath() {
+            return path;
+        }
+
+        public long getOpened() {
+            return opened.get();
+        }
+
+        public long getClosed() {
+            return closed.get();
+        }
+
+        public synchronized long getMessages() {
+            return messages;
+        }
+
+        public synchronized long getBytes() {
+            return bytes;
+        }
+
+        /**
+         * @return the average number of messages per second over the last minute, as of the snapshot.
+         */
+        public synchronized double getMessagesPerSecond() {
+            return rate;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s %s: %d opened, %d closed, %d messages, %d bytes, %.2f messages/s", node, path,
+                    getOpened(), getClosed(), getMessages(), getBytes(), getMessagesPerSecond());
+        }
+    }
+}
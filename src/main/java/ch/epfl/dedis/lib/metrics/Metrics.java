@@ -0,0 +1,89 @@
+package ch.epfl.dedis.lib.metrics;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * dedis/lib
+ * Metrics.java
+ * Purpose: Holds the {@link RpcMetrics} used by all the RPC classes. Nothing is recorded until one is installed.
+ */
+public final class Metrics {
+    private static volatile RpcMetrics current = RpcMetrics.NOOP;
+
+    private Metrics() {
+    }
+
+    /**
+     * @return the installed metrics, {@link RpcMetrics#NOOP} if there are none.
+     */
+    public static RpcMetrics get() {
+        return current;
+    }
+
+    /**
+     * Installs the metrics that are informed of all the communication with the conodes.
+     *
+     * @param metrics the metrics, or null to stop recording
+     */
+    public static void set(RpcMetrics metrics) {
+        current = metrics != null ? metrics : RpcMetrics.NOOP;
+    }
+
+    /**
+     * Combines several metrics, e.g. an {@link InMemoryMetrics} and a bridge to a tracing system.
+     *
+     * @param all the metrics to inform, in this order
+     * @return metrics that forward everything to all of them
+     */
+    public static RpcMetrics combine(RpcMetrics... all) {
+        List<RpcMetrics> list = new ArrayList<>(Arrays.asList(all));
+        return new RpcMetrics() {
+            @Override
+            public Span requestStarted(URI node, String path, int bytesSent) {
+                List<Span> spans = new ArrayList<>(list.size());
+                list.forEach(m -> spans.add(m.requestStarted(node, path, bytesSent)));
+                return (bytes, error) -> spans.forEach(s -> s.finished(bytes, error));
+            }
+
+            @Override
+            public Span rosterRequestStarted(String path) {
+                List<Span> spans = new ArrayList<>(list.size());
+                list.forEach(m -> spans.add(m.rosterRequestStarted(path)));
+                return (bytes, error) -> spans.forEach(s -> s.finished(bytes, error));
+            }
+
+            @Override
+            public void failover(String path, URI node, Throwable error) {
+                list.forEach(m -> m.failover(path, node, error));
+            }
+
+            @Override
+            public void connected(URI endpoint, long connectNanos, Throwable error) {
+                list.forEach(m -> m.connected(endpoint, connectNanos, error));
+            }
+
+            @Override
+            public void streamOpened(URI node, String path) {
+                list.forEach(m -> m.streamOpened(node, path));
+            }
+
+            @Override
+            public void streamMessage(URI node, String path, int bytes) {
+                list.forEach(m -> m.streamMessage(node, path, bytes));
+            }
+
+            @Override
+            public void streamClosed(URI node, String path) {
+                list.forEach(m -> m.streamClosed(node, path));
+            }
+
+            @Override
+            public void streamReconnected(String path) {
+                list.forEach(m -> m.streamReconnected(path));
+            }
+        };
+    }
+}
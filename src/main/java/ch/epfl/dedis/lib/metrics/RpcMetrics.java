@@ -0,0 +1,115 @@
+package ch.epfl.dedis.lib.metrics;
+
+import java.net.URI;
+
+/**
+ * dedis/lib
+ * RpcMetrics.java
+ * Purpose: The instrumentation hooks of the communication with the conodes. An implementation installed with
+ * {@link Metrics#set(RpcMetrics)} is informed of every request, connection and stream, which can be bridged to a
+ * metrics or tracing system. {@link InMemoryMetrics} keeps the statistics in memory.
+ * <p>
+ * All the methods have an empty default implementation. They are called in the network threads, so they must be
+ * fast and must not throw.
+ */
+public interface RpcMetrics {
+    /**
+     * The implementation that ignores everything.
+     */
+    RpcMetrics NOOP = new RpcMetrics() {
+    };
+
+    /**
+     * Follows one request from its start until its end, e.g. to time it or to close a tracing span.
+     */
+    interface Span {
+        Span NOOP = (bytesReceived, error) -> {
+        };
+
+        /**
+         * Called once when the request is over.
+         *
+         * @param bytesReceived the size of the reply, 0 if it failed
+         * @param error         why the request failed, or null if it succeeded
+         */
+        void finished(int bytesReceived, Throwable error);
+    }
+
+    /**
+     * A request is sent to one conode.
+     *
+     * @param node      the address of the conode
+     * @param path      the API endpoint, e.g. ByzCoin/GetProof
+     * @param bytesSent the size of the request
+     * @return the span that is finished with the reply
+     */
+    default Span requestStarted(URI node, String path, int bytesSent) {
+        return Span.NOOP;
+    }
+
+    /**
+     * A request is sent to a roster, which covers all the attempts on the nodes of the roster.
+     *
+     * @param path the API endpoint
+     * @return the span that is finished with the reply
+     */
+    default Span rosterRequestStarted(String path) {
+        return Span.NOOP;
+    }
+
+    /**
+     * A request of a roster failed on one node and is sent to another one.
+     *
+     * @param path  the API endpoint
+     * @param node  the address of the conode that failed
+     * @param error the error of the conode
+     */
+    default void failover(String path, URI node, Throwable error) {
+    }
+
+    /**
+     * A new connection has been opened, or failed to open.
+     *
+     * @param endpoint     the websocket address of the service
+     * @param connectNanos the time it took to connect or to fail
+     * @param error        why the connection couldn't be opened, or null if it has been
+     */
+    default void connected(URI endpoint, long connectNanos, Throwable error) {
+    }
+
+    /**
+     * A streaming connection is made.
+     *
+     * @param node the address of the conode
+     * @param path the API endpoint
+     */
+    default void streamOpened(URI node, String path) {
+    }
+
+    /**
+     * A message arrived on a streaming connection.
+     *
+     * @param node  the address of the conode
+     * @param path  the API endpoint
+     * @param bytes the size of the message
+     */
+    default void streamMessage(URI node, String path, int bytes) {
+    }
+
+    /**
+     * A streaming connection has been closed, by either side.
+     *
+     * @param node the address of the conode
+     * @param path the API endpoint
+     */
+    default void streamClosed(URI node, String path) {
+    }
+
+    /**
+     * A stream that dropped is being made again.
+     *
+     * @param path the API endpoint
+     */
+    default void streamReconnected(String path) {
+    }
+}
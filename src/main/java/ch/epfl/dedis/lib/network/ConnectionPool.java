@@ -0,0 +1,457 @@
+package ch.epfl.dedis.lib.network;
+
+import ch.epfl.dedis.lib.exception.CothorityCommunicationException;
+import ch.epfl.dedis.lib.exception.CothorityTimeoutException;
+import ch.epfl.dedis.lib.exception.CothorityTransportException;
+import ch.epfl.dedis.lib.metrics.Metrics;
+import org.java_websocket.framing.CloseFrame;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * dedis/lib
+ * ConnectionPool.java
+ * Purpose: Keeps the websocket connections to the conodes open, so that a request doesn't have to pay for a new TCP
+ * and websocket handshake every time.
+ * <p>
+ * The connections are pooled per endpoint, which is the websocket address of the node together with the service path.
+ * A connection carries one request at a time. A request uses an idle connection if there is one, opens a new
+ * connection as long as the endpoint has less than {@link #getMaxConnectionsPerNode()} connections, and otherwise
+ * waits in the queue of the endpoint until a connection is free. Idle connections are pinged regularly and closed
+ * after {@link #getIdleTimeout()}.
+ */
+public class ConnectionPool {
+    private static final ConnectionPool defaultPool = new ConnectionPool();
+    private static final Logger logger = LoggerFactory.getLogger(ConnectionPool.class);
+
+    // guarded by connections
+    private final Map<URI, List<PooledConnection>> connections = new HashMap<>();
+    private final Map<URI, Deque<Waiter>> waiting = new HashMap<>();
+    private final ScheduledExecutorService maintenance;
+    private ScheduledFuture<?> maintenanceTask;
+
+    private volatile int maxConnectionsPerNode = 4;
+    private volatile Duration idleTimeout = Duration.ofMinutes(1);
+    private volatile Duration healthCheckInterval = Duration.ofSeconds(15);
+    private volatile Duration defaultTimeout = Duration.ofMinutes(1);
+    private volatile Duration connectTimeout = Duration.ofSeconds(10);
+
+    /**
+     * @return the pool used by {@link ServerIdentity} and therefore by all the RPC classes.
+     */
+    public static ConnectionPool getDefault() {
+        return defaultPool;
+    }
+
+    /**
+     * Creates a new, empty pool. Most users want to configure {@link #getDefault()} instead.
+     */
+    public ConnectionPool() {
+        maintenance = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "conode-pool-maintenance");
+            t.setDaemon(true);
+            return t;
+        });
+        scheduleMaintenance();
+    }
+
+    /**
+     * Sends a message to the endpoint and waits for the reply, at most for the default timeout of the pool.
+     *
+     * @param endpoint the websocket address of the service, e.g. ws://127.0.0.1:7771/Status/Request
+     * @param msg      the request
+     * @return the reply of the conode
+     * @throws CothorityCommunicationException if the conode closed the connection with an error, a
+     *                                         {@link CothorityTransportException} if the connection failed or a
+     *                                         {@link CothorityTimeoutException} if there was no reply in time
+     */
+    public ByteBuffer send(URI endpoint, byte[] msg) throws CothorityCommunicationException {
+        return send(endpoint, msg, defaultTimeout);
+    }
+
+    /**
+     * Sends a message to the endpoint and waits for the reply.
+     *
+     * @param endpoint the websocket address of the service, e.g. ws://127.0.0.1:7771/Status/Request
+     * @param msg      the request
+     * @param timeout  how long to wait for the connection and the reply, or null to wait forever
+     * @return the reply of the conode
+     * @throws CothorityCommunicationException if the conode closed the connection with an error, a
+     *                                         {@link CothorityTransportException} if the connection failed or a
+     *                                         {@link CothorityTimeoutException} if there was no reply in time
+     */
+    public ByteBuffer send(URI endpoint, byte[] msg, Duration timeout) throws CothorityCommunicationException {
+        try {
+            return sendAsync(endpoint, msg, timeout).get();
+        } catch (InterruptedException e) {
+            throw new CothorityCommunicationException(e.toString());
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof CothorityCommunicationException) {
+                throw (CothorityCommunicationException) e.getCause();
+            }
+            throw new CothorityCommunicationException(e.getCause().toString(), e.getCause());
+        }
+    }
+
+    /**
+     * Sends a message to the endpoint without blocking and with the default timeout of the pool.
+     *
+     * @param endpoint the websocket address of the service, e.g. ws://127.0.0.1:7771/Status/Request
+     * @param msg      the request
+     * @return the future reply of the conode
+     * @see #sendAsync(URI, byte[], Duration)
+     */
+    public CompletableFuture<ByteBuffer> sendAsync(URI endpoint, byte[] msg) {
+        return sendAsync(endpoint, msg, defaultTimeout);
+    }
+
+    /**
+     * Sends a message to the endpoint without blocking. The returned future completes in the thread reading from the
+     * connection, so long-running work should be chained with one of the async methods of the future. Cancelling the
+     * future gives up the request and closes its connection, or removes it from the queue if it hasn't been sent yet.
+     * <p>
+     * If the reply is late, the connection of the request is closed, as the late reply would otherwise be taken for
+     * the reply of the next request on that connection. The other connections to the endpoint are not affected.
+     *
+     * @param endpoint the websocket address of the service, e.g. ws://127.0.0.1:7771/Status/Request
+     * @param msg      the request
+     * @param timeout  how long to wait for the connection and the reply, or null to wait forever
+     * @return the future reply of the conode, failed with a {@link CothorityCommunicationException} if the conode
+     * closed the connection with an error, a {@link CothorityTransportException} if the connection failed or a
+     * {@link CothorityTimeoutException} if there was no reply in time
+     */
+    public CompletableFuture<ByteBuffer> sendAsync(URI endpoint, byte[] msg, Duration timeout) {
+        CompletableFuture<ByteBuffer> result = new CompletableFuture<>();
+        if (timeout != null) {
+            ScheduledFuture<?> deadline = maintenance.schedule(() -> result.completeExceptionally(
+                    new CothorityTimeoutException("no reply from " + endpoint + " within " + timeout)),
+                    timeout.toNanos(), TimeUnit.NANOSECONDS);
+            result.whenComplete((r, e) -> deadline.cancel(false));
+        }
+        sendAsync(endpoint, msg, 0, result);
+        return result;
+    }
+
+    private void sendAsync(URI endpoint, byte[] msg, int attempt, CompletableFuture<ByteBuffer> result) {
+        PooledConnection conn;
+        synchronized (connections) {
+            // The requests already waiting go first.
+            conn = waiting.containsKey(endpoint) ? null : acquire(endpoint);
+            if (conn == null) {
+                waiting.computeIfAbsent(endpoint, k -> new ArrayDeque<>()).addLast(new Waiter(msg, attempt, result));
+                return;
+            }
+        }
+        send(endpoint, conn, msg, attempt, result);
+    }
+
+    /**
+     * Gives a connection that has just been released to the next request waiting for the endpoint.
+     */
+    private void dispatch(URI endpoint) {
+        PooledConnection conn;
+        Waiter next;
+        synchronized (connections) {
+            Deque<Waiter> queue = waiting.get(endpoint);
+            if (queue == null) {
+                return;
+            }
+            // The requests that timed out or have been cancelled while waiting are dropped.
+            queue.removeIf(w -> w.result.isDone());
+            conn = queue.isEmpty() ? null : acquire(endpoint);
+            if (conn == null) {
+                if (queue.isEmpty()) {
+                    waiting.remove(endpoint);
+                }
+                return;
+            }
+            next = queue.pollFirst();
+            if (queue.isEmpty()) {
+                waiting.remove(endpoint);
+            }
+        }
+        send(endpoint, conn, next.msg, next.attempt, next.result);
+    }
+
+    private void send(URI endpoint, PooledConnection conn, byte[] msg, int attempt,
+                      CompletableFuture<ByteBuffer> result) {
+        connect(endpoint, conn);
+        conn.whenOpen().thenRun(() -> {
+            if (result.isDone()) {
+                // The deadline passed while connecting.
+                conn.release();
+                dispatch(endpoint);
+                return;
+            }
+            CompletableFuture<ByteBuffer> reply = conn.request(msg);
+            if (reply == null) {
+                // A pooled connection might have been closed by the remote without us noticing yet. As nothing has
+                // been sent in that case, it is safe to try again with another connection.
+                if (attempt == 0 && conn.wasOpened()) {
+                    sendAsync(endpoint, msg, attempt + 1, result);
+                } else {
+                    result.completeExceptionally(new CothorityTransportException(conn.getError(), false));
+                }
+                dispatch(endpoint);
+                return;
+            }
+            reply.whenComplete((r, e) -> {
+                if (e == null) {
+                    result.complete(r);
+                } else {
+                    result.completeExceptionally(e instanceof CompletionException ? e.getCause() : e);
+                }
+                dispatch(endpoint);
+            });
+            result.whenComplete((r, e) -> {
+                // Only this request is given up: its connection doesn't carry any other one.
+                if (result.isCancelled()) {
+                    conn.abandon(reply, "request cancelled");
+                } else if (e instanceof CothorityTimeoutException) {
+                    conn.abandon(reply, "request timed out");
+                }
+            });
+        });
+    }
+
+    /**
+     * @return the timeout of the requests that don't have their own.
+     */
+    public Duration getDefaultTimeout() {
+        return defaultTimeout;
+    }
+
+    /**
+     * Sets the timeout of the requests that don't have their own, covering the connection, the sending of the
+     * request and the wait for the reply.
+     *
+     * @param timeout the timeout, or null to wait forever
+     */
+    public void setDefaultTimeout(Duration timeout) {
+        if (timeout != null && (timeout.isNegative() || timeout.isZero())) {
+            throw new IllegalArgumentException("the timeout must be positive");
+        }
+        defaultTimeout = timeout;
+    }
+
+    /**
+     * @return how long a new connection may take to be established.
+     */
+    public Duration getConnectTimeout() {
+        return connectTimeout;
+    }
+
+    /**
+     * Sets how long a new connection may take to be established, including the websocket handshake. This is
+     * independent of the timeout of the requests, as a connection is shared between requests.
+     *
+     * @param timeout the connect timeout, must be positive
+     */
+    public void setConnectTimeout(Duration timeout) {
+        if (timeout.isNegative() || timeout.isZero()) {
+            throw new IllegalArgumentException("the connect timeout must be positive");
+        }
+        connectTimeout = timeout;
+    }
+
+    /**
+     * @return the maximum number of connections that are opened to one endpoint.
+     */
+    public int getMaxConnectionsPerNode() {
+        return maxConnectionsPerNode;
+    }
+
+    /**
+     * Sets the maximum number of connections that are opened to one endpoint. Once this number is reached, new
+     * requests wait until a connection is free.
+     *
+     * @param max the maximum, at least 1
+     */
+    public void setMaxConnectionsPerNode(int max) {
+        if (max < 1) {
+            throw new IllegalArgumentException("need at least one connection per node");
+        }
+        maxConnectionsPerNode = max;
+    }
+
+    /**
+     * @return how long a connection without any request is kept open.
+     */
+    public Duration getIdleTimeout() {
+        return idleTimeout;
+    }
+
+    /**
+     * Sets how long a connection without any request is kept open.
+     *
+     * @param timeout the idle timeout, must be positive
+     */
+    public void setIdleTimeout(Duration timeout) {
+        if (timeout.isNegative() || timeout.isZero()) {
+            throw new IllegalArgumentException("the idle timeout must be positive");
+        }
+        idleTimeout = timeout;
+    }
+
+    /**
+     * @return the interval at which idle connections are pinged and evicted.
+     */
+    public Duration getHealthCheckInterval() {
+        return healthCheckInterval;
+    }
+
+    /**
+     * Sets the interval at which idle connections are pinged. A connection that didn't answer the ping until the next
+     * check is closed. Connections waiting for a reply are not pinged, as the conode only answers pings between two
+     * requests.
+     *
+     * @param interval the interval, must be positive
+     */
+    public void setHealthCheckInterval(Duration interval) {
+        if (interval.isNegative() || interval.isZero()) {
+            throw new IllegalArgumentException("the health check interval must be positive");
+        }
+        healthCheckInterval = interval;
+        scheduleMaintenance();
+    }
+
+    /**
+     * @return the number of connections currently held by the pool, open or being opened.
+     */
+    public int size() {
+        synchronized (connections) {
+            return connections.values().stream().mapToInt(List::size).sum();
+        }
+    }
+
+    /**
+     * Closes all the connections of the pool. Pending requests fail, but the pool can still be used afterwards.
+     */
+    public void close() {
+        List<PooledConnection> all = new ArrayList<>();
+        List<Waiter> queued = new ArrayList<>();
+        synchronized (connections) {
+            connections.values().forEach(all::addAll);
+            connections.clear();
+            waiting.values().forEach(queued::addAll);
+            waiting.clear();
+        }
+        all.forEach(PooledConnection::close);
+        queued.forEach(w -> w.result.completeExceptionally(new CothorityTransportException("the pool is closed", false)));
+    }
+
+    /**
+     * Reserves an idle connection to the endpoint, or a new one if the endpoint doesn't have too many connections
+     * yet. The new connections are only started by {@link #connect(URI, PooledConnection)}, outside of the lock.
+     *
+     * @return the reserved connection, or null if all the connections are busy.
+     */
+    private PooledConnection acquire(URI endpoint) {
+        List<PooledConnection> conns = connections.computeIfAbsent(endpoint, k -> new ArrayList<>());
+        conns.removeIf(PooledConnection::isDead);
+        for (PooledConnection c : conns) {
+            if (c.reserve()) {
+                return c;
+            }
+        }
+        if (conns.size() >= maxConnectionsPerNode) {
+            return null;
+        }
+        PooledConnection conn = new PooledConnection(endpoint, (int) connectTimeout.toMillis());
+        conn.reserve();
+        conns.add(conn);
+        return conn;
+    }
+
+    private void connect(URI endpoint, PooledConnection conn) {
+        if (conn.wasOpened() || conn.whenOpen().isDone()) {
+            return;
+        }
+        logger.debug("opening new connection to {}", endpoint);
+        long start = System.nanoTime();
+        if (!conn.open()) {
+            return;
+        }
+        conn.whenOpen().whenComplete((v, e) -> Metrics.get().connected(endpoint, System.nanoTime() - start,
+                conn.wasOpened() ? null : new CothorityCommunicationException(conn.getError())));
+        // The connect timeout of the socket doesn't cover the websocket handshake.
+        maintenance.schedule(() -> {
+            if (!conn.whenOpen().isDone()) {
+                conn.closeConnection(CloseFrame.NEVER_CONNECTED, "couldn't connect within " + connectTimeout);
+            }
+        }, connectTimeout.toNanos(), TimeUnit.NANOSECONDS);
+    }
+
+    private synchronized void scheduleMaintenance() {
+        if (maintenanceTask != null) {
+            maintenanceTask.cancel(false);
+        }
+        long interval = healthCheckInterval.toMillis();
+        maintenanceTask = maintenance.scheduleWithFixedDelay(this::maintain, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    private void maintain() {
+        List<PooledConnection> toClose = new ArrayList<>();
+        long idleNanos = idleTimeout.toNanos();
+        synchronized (connections) {
+            Iterator<List<PooledConnection>> lists = connections.values().iterator();
+            while (lists.hasNext()) {
+                List<PooledConnection> conns = lists.next();
+                Iterator<PooledConnection> it = conns.iterator();
+                while (it.hasNext()) {
+                    PooledConnection conn = it.next();
+                    if (conn.isDead()) {
+                        it.remove();
+                    } else if (!conn.isBusy() && conn.isOpen()) {
+                        if (conn.idleNanos() > idleNanos) {
+                            logger.debug("closing idle connection to {}", conn.getURI());
+                            it.remove();
+                            toClose.add(conn);
+                        } else if (!conn.checkHealth()) {
+                            logger.warn("connection to {} doesn't answer pings, closing it", conn.getURI());
+                            it.remove();
+                            toClose.add(conn);
+                        }
+                    }
+                }
+                if (conns.isEmpty()) {
+                    lists.remove();
+                }
+            }
+        }
+        toClose.forEach(PooledConnection::close);
+    }
+
+    /**
+     * A request waiting for a free connection.
+     */
+    private static class Waiter {
+        final byte[] msg;
+        final int attempt;
+        final CompletableFuture<ByteBuffer> result;
+
+        Waiter(byte[] msg, int attempt, CompletableFuture<ByteBuffer> result) {
+            this.msg = msg;
+            this.attempt = attempt;
+            this.result = result;
+        }
+    }
+}
@@ -0,0 +1,222 @@
+package ch.epfl.dedis.lib.network;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * dedis/lib
+ * HedgePolicy.java
+ * Purpose: Describes which requests of a {@link Roster} are hedged. A hedged request is sent to a second node if the
+ * first one didn't answer within a percentile of the recent latencies of the endpoint. The first answer wins and
+ * the other request is cancelled.
+ * <p>
+ * Only idempotent requests whose answer is verified by the client should be hedged, like ByzCoin/GetProof or
+ * Skipchain/GetUpdateChain.
+ */
+public class HedgePolicy {
+    public static final String BYZCOIN_GET_PROOF = "ByzCoin/GetProof";
+    public static final String SKIPCHAIN_GET_UPDATE_CHAIN = "Skipchain/GetUpdateChain";
+
+    private static final int WINDOW = 256;
+    private static final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "roster-hedge-timer");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private final Set<String> paths = ConcurrentHashMap.newKeySet();
+    private final Map<String, Endpoint> endpoints = new ConcurrentHashMap<>();
+    private volatile double percentile;
+    private volatile Duration minDelay = Duration.ofMillis(5);
+    private volatile Duration maxDelay = Duration.ofSeconds(1);
+
+    /**
+     * Creates a policy hedging the given endpoints.
+     *
+     * @param percentile the percentile of the recent latencies after which a second request is sent, e.g. 0.95
+     * @param paths      the API endpoints to hedge
+     */
+    public HedgePolicy(double percentile, String... paths) {
+        setPercentile(percentile);
+        this.paths.addAll(Arrays.asList(paths));
+    }
+
+    /**
+     * @return a policy hedging ByzCoin/GetProof and Skipchain/GetUpdateChain at the 95th percentile.
+     */
+    public static HedgePolicy forReads() {
+        return new HedgePolicy(0.95, BYZCOIN_GET_PROOF, SKIPCHAIN_GET_UPDATE_CHAIN);
+    }
+
+    /**
+     * @param path the API endpoint
+     * @return true if the requests to the endpoint are hedged.
+     */
+    public boolean isHedged(String path) {
+        return paths.contains(path);
+    }
+
+    /**
+     * Adds an endpoint to hedge. The endpoint must be idempotent.
+     *
+     * @param path the API endpoint
+     */
+    public void addEndpoint(String path) {
+        paths.add(path);
+    }
+
+    /**
+     * @param percentile the percentile of the recent latencies after which a second request is sent, in (0, 1]
+     */
+    public void setPercentile(double percentile) {
+        if (percentile <= 0 || percentile > 1) {
+            throw new IllegalArgumentException("the percentile must be in (0, 1]");
+        }
+        this.percentile = percentile;
+    }
+
+    /**
+     * Sets the bounds of the hedging delay. Until an endpoint has a latency history, the maximum is used.
+     *
+     * @param min the shortest delay, to avoid doubling the load when the latency is very low
+     * @param max the longest delay
+     */
+    public void setDelayBounds(Duration min, Duration max) {
+        if (min.isNegative() || max.compareTo(min) < 0) {
+            throw new IllegalArgumentException("invalid delay bounds");
+        }
+        minDelay = min;
+        maxDelay = max;
+    }
+
+    /**
+     * @return a snapshot of the statistics of every endpoint that has been used, keyed by the path.
+     */
+    public Map<String, HedgeStats> getStats() {
+        Map<String, HedgeStats> stats = new HashMap<>();
+        endpoints.forEach((path, e) -> stats.put(path, e.stats()));
+        return Collections.unmodifiableMap(stats);
+    }
+
+    /**
+     * @return the statistics of the endpoint, all zero if it has not been used.
+     */
+    public HedgeStats getStats(String path) {
+        return endpoint(path).stats();
+    }
+
+    ScheduledFuture<?> schedule(String path, Runnable hedge) {
+        return timer.schedule(hedge, endpoint(path).delayNanos(), TimeUnit.NANOSECONDS);
+    }
+
+    void recordHedge(String path) {
+        endpoint(path).hedged.incrementAndGet();
+    }
+
+    void recordAnswer(String path, long latencyNanos, boolean hedgeWon) {
+        endpoint(path).record(latencyNanos, hedgeWon);
+    }
+
+    private Endpoint endpoint(String path) {
+        return endpoints.computeIfAbsent(path, p -> new Endpoint());
+    }
+
+    /**
+     * The latency history and counters of one endpoint.
+     */
+    private class Endpoint {
+        private final AtomicLong requests = new AtomicLong();
+        private final AtomicLong hedged = new AtomicLong();
+        private final AtomicLong hedgeWins = new AtomicLong();
+        // guarded by this
+        private final long[] latencies = new long[WINDOW];
+        private int samples;
+
+        synchronized void record(long latencyNanos, boolean hedgeWon) {
+            requests.incrementAndGet();
+            if (hedgeWon) {
+                hedgeWins.incrementAndGet();
+            }
+            latencies[samples % WINDOW] = latencyNanos;
+            samples++;
+        }
+
+        long delayNanos() {
+            long[] sorted;
+            synchronized (this) {
+                if (samples == 0) {
+                    return maxDelay.toNanos();
+                }
+                sorted = Arrays.copyOf(latencies, Math.min(samples, WINDOW));
+            }
+            Arrays.sort(sorted);
+            long delay = sorted[(int) Math.ceil(percentile * sorted.length) - 1];
+            return Math.max(minDelay.toNanos(), Math.min(maxDelay.toNanos(), delay));
+        }
+
+        HedgeStats stats() {
+            return new HedgeStats(requests.get(), hedged.get(), hedgeWins.get(), Duration.ofNanos(delayNanos()));
+        }
+    }
+
+    /**
+     * The hedging statistics of one endpoint.
+     */
+    public static class HedgeStats {
+        private final long requests;
+        private final long hedged;
+        private final long hedgeWins;
+        private final Duration delay;
+
+        HedgeStats(long requests, long hedged, long hedgeWins, Duration delay) {
+            this.requests = requests;
+            this.hedged = hedged;
+            this.hedgeWins = hedgeWins;
+            this.delay = delay;
+        }
+
+        /**
+         * @return the number of requests that got an answer.
+         */
+        public long getRequests() {
+            return requests;
+        }
+
+        /**
+         * @return the number of requests for which a second node has been asked.
+         */
+        public long getHedged() {
+            return hedged;
+        }
+
+        /**
+         * @return the number of requests where the second node answered first.
+         */
+        public long getHedgeWins() {
+            return hedgeWins;
+        }
+
+        /**
+         * @return the current delay after which a request is hedged.
+         */
+        public Duration getDelay() {
+            return delay;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("requests: %d, hedged: %d, hedge wins: %d, delay: %s", requests, hedged, hedgeWins,
+                    delay);
+        }
+    }
+}
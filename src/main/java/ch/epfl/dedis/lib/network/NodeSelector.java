@@ -0,0 +1,39 @@
+package ch.epfl.dedis.lib.network;
+
+import java.util.List;
+
+/**
+ * dedis/lib
+ * NodeSelector.java
+ * Purpose: Decides which node of a {@link Roster} receives the next request. The roster reports the start and the
+ * outcome of every request, so that a selector can balance the load or prefer the fastest nodes. A selector can be
+ * shared between rosters and must be thread-safe. {@link NodeSelectors} holds the implementations of this library.
+ */
+public interface NodeSelector {
+    /**
+     * Chooses the node for the next request.
+     *
+     * @param candidates the nodes that may be chosen, never empty. Nodes that already failed for this request are not
+     *                   part of the candidates.
+     * @return one of the candidates
+     */
+    ServerIdentity select(List<ServerIdentity> candidates);
+
+    /**
+     * Called when a request is sent to a node.
+     *
+     * @param node the node that received the request
+     */
+    default void requestStarted(ServerIdentity node) {
+    }
+
+    /**
+     * Called when a node answered a request or the request failed.
+     *
+     * @param node         the node that received the request
+     * @param latencyNanos the time between the start of the request and its outcome
+     * @param success      false if the request failed with a communication error
+     */
+    default void requestFinished(ServerIdentity node, long latencyNanos, boolean success) {
+    }
+}
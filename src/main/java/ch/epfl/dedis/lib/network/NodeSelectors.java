@@ -0,0 +1,138 @@
+package ch.epfl.dedis.lib.network;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * dedis/lib
+ * NodeSelectors.java
+ * Purpose: The node selection strategies that can be given to {@link Roster#setNodeSelector(NodeSelector)}.
+ */
+public final class NodeSelectors {
+    private NodeSelectors() {
+    }
+
+    /**
+     * @return a selector that always chooses the first candidate, which is the behaviour of the earlier versions.
+     */
+    public static NodeSelector first() {
+        return candidates -> candidates.get(0);
+    }
+
+    /**
+     * @return a selector that chooses a candidate uniformly at random.
+     */
+    public static NodeSelector random() {
+        return candidates -> candidates.get(ThreadLocalRandom.current().nextInt(candidates.size()));
+    }
+
+    /**
+     * @return a selector that chooses the candidates one after the other.
+     */
+    public static NodeSelector roundRobin() {
+        AtomicInteger next = new AtomicInteger();
+        return candidates -> candidates.get(Math.floorMod(next.getAndIncrement(), candidates.size()));
+    }
+
+    /**
+     * @return a selector that chooses the candidate with the fewest requests waiting for a reply.
+     */
+    public static NodeSelector leastOutstanding() {
+        return new LeastOutstanding();
+    }
+
+    /**
+     * Creates a selector that prefers the nodes with the lowest exponentially weighted moving average of the latency,
+     * weighted by the number of outstanding requests. A failed request counts as a slow one, so a node that is down
+     * is avoided until the others become slower.
+     *
+     * @param alpha the weight of a new latency sample, between 0 (exclusive) and 1 (inclusive)
+     * @return the selector
+     */
+    public static NodeSelector ewmaLatency(double alpha) {
+        if (alpha <= 0 || alpha > 1) {
+            throw new IllegalArgumentException("alpha must be in (0, 1]");
+        }
+        return new EwmaLatency(alpha);
+    }
+
+    /**
+     * @return an EWMA latency selector with a smoothing factor of 0.3.
+     */
+    public static NodeSelector ewmaLatency() {
+        return ewmaLatency(0.3);
+    }
+
+    private static class LeastOutstanding implements NodeSelector {
+        private final Map<ServerIdentity, AtomicInteger> outstanding = new ConcurrentHashMap<>();
+
+        @Override
+        public ServerIdentity select(List<ServerIdentity> candidates) {
+            // Start at a random offset so that the ties are broken randomly.
+            int offset = ThreadLocalRandom.current().nextInt(candidates.size());
+            ServerIdentity best = null;
+            int bestCount = Integer.MAX_VALUE;
+            for (int i = 0; i < candidates.size(); i++) {
+                ServerIdentity node = candidates.get((offset + i) % candidates.size());
+                int count = counter(node).get();
+                if (count < bestCount) {
+                    best = node;
+                    bestCount = count;
+                }
+            }
+            return best;
+        }
+
+        @Override
+        public void requestStarted(ServerIdentity node) {
+            counter(node).incrementAndGet();
+        }
+
+        @Override
+        public void requestFinished(ServerIdentity node, long latencyNanos, boolean success) {
+            counter(node).decrementAndGet();
+        }
+
+        AtomicInteger counter(ServerIdentity node) {
+            return outstanding.computeIfAbsent(node, n -> new AtomicInteger());
+        }
+    }
+
+    private static class EwmaLatency extends LeastOutstanding {
+        private static final long FAILURE_PENALTY = TimeUnit.SECONDS.toNanos(1);
+        private final double alpha;
+        private final Map<ServerIdentity, Double> latency = new ConcurrentHashMap<>();
+
+        EwmaLatency(double alpha) {
+            this.alpha = alpha;
+        }
+
+        /**
+         * Compares two random candidates and takes the cheaper one. This keeps the load spread over the fast nodes
+         * instead of sending everything to the single fastest one.
+         */
+        @Override
+        public ServerIdentity select(List<ServerIdentity> candidates) {
+            ThreadLocalRandom rnd = ThreadLocalRandom.current();
+            ServerIdentity a = candidates.get(rnd.nextInt(candidates.size()));
+            ServerIdentity b = candidates.get(rnd.nextInt(candidates.size()));
+            return cost(a) <= cost(b) ? a : b;
+        }
+
+        @Override
+        public void requestFinished(ServerIdentity node, long latencyNanos, boolean success) {
+            super.requestFinished(node, latencyNanos, success);
+            double sample = success ? latencyNanos : Math.max(2 * latency.getOrDefault(node, 0.0), FAILURE_PENALTY);
+            latency.merge(node, sample, (old, s) -> old + alpha * (s - old));
+        }
+
+        private double cost(ServerIdentity node) {
+            // Nodes without any sample cost nothing, so they get tried early on.
+            return latency.getOrDefault(node, 0.0) * (counter(node).get() + 1);
+        }
+    }
+}
@@ -0,0 +1,279 @@
+package ch.epfl.dedis.lib.network;
+
+import ch.epfl.dedis.lib.exception.CothorityCommunicationException;
+import ch.epfl.dedis.lib.exception.CothorityTransportException;
+import org.java_websocket.WebSocket;
+import org.java_websocket.client.WebSocketClient;
+import org.java_websocket.drafts.Draft_6455;
+import org.java_websocket.exceptions.WebsocketNotConnectedException;
+import org.java_websocket.framing.CloseFrame;
+import org.java_websocket.framing.Framedata;
+import org.java_websocket.handshake.ServerHandshake;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * A websocket connection to one endpoint of a conode that is kept open by the {@link ConnectionPool}. It carries at
+ * most one request at a time: a conode closes the connection when a request fails, with the error of that request, so
+ * a request sharing the connection would get an error that is not its own.
+ */
+class PooledConnection extends WebSocketClient {
+    private final Logger logger = LoggerFactory.getLogger(PooledConnection.class);
+
+    // guarded by this
+    private CompletableFuture<ByteBuffer> pending;
+    // the future returned for the pending request, which identifies it
+    private CompletableFuture<ByteBuffer> current;
+    private boolean busy;
+    private String error;
+    // true if the error has been sent by the conode, false if it comes from the network
+    private boolean remoteError;
+
+    private final CompletableFuture<Void> opened = new CompletableFuture<>();
+    private final AtomicBoolean started = new AtomicBoolean();
+    private volatile long lastUsed = System.nanoTime();
+    private volatile boolean awaitingPong;
+    private volatile boolean connected;
+
+    PooledConnection(URI endpoint, int connectTimeoutMillis) {
+        super(endpoint, new Draft_6455(), null, connectTimeoutMillis);
+        // The pool does its own health checks: the timer of the library is not a daemon and would keep the JVM alive.
+        setConnectionLostTimeout(0);
+        setTcpNoDelay(true);
+    }
+
+    /**
+     * Starts the connection in a daemon thread so that idle connections never prevent the JVM from exiting.
+     *
+     * @return false if the connection has already been started.
+     */
+    boolean open() {
+        if (!started.compareAndSet(false, true)) {
+            return false;
+        }
+        Thread t = new Thread(this, "conode-ws-" + getURI().getHost() + ":" + getURI().getPort());
+        t.setDaemon(true);
+        t.start();
+        return true;
+    }
+
+    /**
+     * @return a future that completes once the connection is either open or has failed.
+     */
+    CompletableFuture<Void> whenOpen() {
+        return opened;
+    }
+
+    /**
+     * Reserves the connection for a request, so the pool doesn't give it to another request before this one is
+     * actually sent.
+     *
+     * @return false if the connection is already reserved or cannot be used anymore.
+     */
+    synchronized boolean reserve() {
+        if (busy || error != null || isClosing() || isClosed()) {
+            return false;
+        }
+        busy = true;
+        return true;
+    }
+
+    /**
+     * Releases the connection once its request is done, or if no request could be sent.
+     */
+    synchronized void release() {
+        busy = false;
+        current = null;
+        lastUsed = System.nanoTime();
+    }
+
+    /**
+     * @return true if the connection is reserved or waiting for a reply.
+     */
+    synchronized boolean isBusy() {
+        return busy;
+    }
+
+    /**
+     * @return the number of nanoseconds since the last request or reply on this connection.
+     */
+    long idleNanos() {
+        return System.nanoTime() - lastUsed;
+    }
+
+    /**
+     * @return true if the connection has been established at some point, even if it is closed by now.
+     */
+    boolean wasOpened() {
+        return connected;
+    }
+
+    /**
+     * @return the reason why the connection is not usable anymore.
+     */
+    synchronized String getError() {
+        return error == null ? "connection closed" : error;
+    }
+
+    /**
+     * @return true if the connection failed or has been closed and cannot be used anymore.
+     */
+    synchronized boolean isDead() {
+        return error != null || isClosing() || isClosed();
+    }
+
+    /**
+     * Sends a message on the connection. The connection must have been reserved beforehand and is released once the
+     * reply arrives or the request fails.
+     *
+     * @param msg the request
+     * @return the future reply, or null if the connection was already closed and nothing has been sent.
+     */
+    CompletableFuture<ByteBuffer> request(byte[] msg) {
+        CompletableFuture<ByteBuffer> reply = new CompletableFuture<>();
+        CompletableFuture<ByteBuffer> released = reply.whenComplete((r, e) -> release());
+        synchronized (this) {
+            if (error != null || !isOpen()) {
+                release();
+                return null;
+            }
+            pending = reply;
+            current = released;
+            lastUsed = System.nanoTime();
+            try {
+                send(msg);
+            } catch (WebsocketNotConnectedException e) {
+                pending = null;
+                release();
+                return null;
+            }
+        }
+        return released;
+    }
+
+    /**
+     * Gives up a request whose caller doesn't wait for the reply anymore. The connection is closed, as the late reply
+     * would otherwise be taken for the reply of the next request, and the request fails so that the connection is
+     * released. No other request is affected as the connection only carries this one.
+     *
+     * @param request the future returned by {@link #request(byte[])}, nothing happens if it is already done
+     * @param reason  why the request is given up
+     */
+    void abandon(CompletableFuture<ByteBuffer> request, String reason) {
+        CompletableFuture<ByteBuffer> abandoned;
+        synchronized (this) {
+            if (current != request || pending == null) {
+                return;
+            }
+            abandoned = pending;
+            pending = null;
+            if (error == null) {
+                error = reason;
+            }
+        }
+        close(CloseFrame.GOING_AWAY, reason);
+        abandoned.completeExceptionally(new CothorityTransportException(reason, true));
+    }
+
+    /**
+     * Sends a ping if the connection is idle. If the ping of the previous check is still unanswered, the connection
+     * is considered as lost.
+     *
+     * @return false if the connection didn't answer the previous ping.
+     */
+    boolean checkHealth() {
+        if (awaitingPong) {
+            return false;
+        }
+        awaitingPong = true;
+        try {
+            sendPing();
+        } catch (WebsocketNotConnectedException e) {
+            return false;
+        }
+        return true;
+    }
+
+    @Override
+    public void onOpen(ServerHandshake handshake) {
+        connected = true;
+        opened.complete(null);
+    }
+
+    @Override
+    public void onMessage(String msg) {
+        fail("This should never happen:" + msg, true);
+        close(CloseFrame.PROTOCOL_ERROR, "unexpected text message");
+    }
+
+    @Override
+    public void onMessage(ByteBuffer message) {
+        CompletableFuture<ByteBuffer> reply;
+        synchronized (this) {
+            reply = pending;
+            pending = null;
+        }
+        awaitingPong = false;
+        lastUsed = System.nanoTime();
+        if (reply == null) {
+            logger.warn("dropping unexpected message from {}", getURI());
+            return;
+        }
+        reply.complete(message);
+    }
+
+    @Override
+    public void onWebsocketPong(WebSocket conn, Framedata f) {
+        awaitingPong = false;
+    }
+
+    @Override
+    public void onClose(int code, String reason, boolean remote) {
+        if (!reason.equals("")) {
+            // A conode closes the connection with the error of the request.
+            fail(reason, remote);
+        } else if (code == CloseFrame.NEVER_CONNECTED) {
+            fail("couldn't connect", false);
+        } else {
+            fail("connection closed", false);
+        }
+        opened.complete(null);
+    }
+
+    @Override
+    public void onError(Exception ex) {
+        fail("Error: " + ex.toString(), false);
+        close(CloseFrame.PROTOCOL_ERROR, "error occurred: " + ex.getMessage());
+        opened.complete(null);
+    }
+
+    /**
+     * Fails the pending request, which is the one the error belongs to. Only the first error is kept as it is the one
+     * that closed the connection. The errors of the network fail the request with a
+     * {@link CothorityTransportException}, so that it can be sent to another node.
+     */
+    private void fail(String reason, boolean remote) {
+        CompletableFuture<ByteBuffer> failed;
+        String first;
+        boolean fromConode;
+        synchronized (this) {
+            if (error == null) {
+                error = reason;
+                remoteError = remote;
+            }
+            first = error;
+            fromConode = remoteError;
+            failed = pending;
+            pending = null;
+        }
+        if (failed != null) {
+            failed.completeExceptionally(fromConode ? new CothorityCommunicationException(first)
+                    : new CothorityTransportException(first, true));
+        }
+    }
+}
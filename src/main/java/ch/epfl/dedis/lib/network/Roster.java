@@ -4,17 +4,33 @@ import ch.epfl.dedis.lib.Hex;
 import ch.epfl.dedis.lib.UUIDType5;
 import ch.epfl.dedis.lib.crypto.Point;
 import ch.epfl.dedis.lib.exception.CothorityCommunicationException;
+import ch.epfl.dedis.lib.exception.CothorityTimeoutException;
+import ch.epfl.dedis.lib.exception.CothorityTransportException;
+import ch.epfl.dedis.lib.metrics.Metrics;
+import ch.epfl.dedis.lib.metrics.RpcMetrics;
 import ch.epfl.dedis.lib.proto.NetworkProto;
 import ch.epfl.dedis.lib.proto.OnetProto;
 import com.google.protobuf.ByteString;
 import com.moandjiezana.toml.Toml;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.net.URISyntaxException;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
+import java.util.Objects;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ScheduledFuture;
 import java.util.stream.Collectors;
 
 /**
@@ -25,8 +41,15 @@ import java.util.stream.Collectors;
  */
 
 public class Roster {
+    private static final Logger logger = LoggerFactory.getLogger(Roster.class);
+    // The requests that are never sent twice, as the first node might have processed them even if the reply is lost.
+    private static final Set<String> notIdempotent = Collections.singleton("ByzCoin/AddTxRequest");
     private List<ServerIdentity> nodes = new ArrayList<>();
     private Point aggregate;
+    private volatile NodeSelector selector = NodeSelectors.random();
+    private volatile int retryBudget = 2;
+    private volatile HedgePolicy hedgePolicy;
+    private volatile Duration timeout;
 
     public Roster(List<ServerIdentity> servers) {
         nodes.addAll(servers);
@@ -96,20 +119,237 @@ public class Roster {
     }
 
     /**
-     * Synchronously sends a message.
+     * @return the strategy choosing the node of every request.
+     */
+    public NodeSelector getNodeSelector() {
+        return selector;
+    }
+
+    /**
+     * Sets the strategy choosing the node of every request, by default a random node is chosen.
+     *
+     * @param selector the strategy, see {@link NodeSelectors}
+     */
+    public void setNodeSelector(NodeSelector selector) {
+        this.selector = Objects.requireNonNull(selector);
+    }
+
+    /**
+     * @return the number of other nodes that are tried when a request fails.
+     */
+    public int getRetryBudget() {
+        return retryBudget;
+    }
+
+    /**
+     * Sets how many other nodes are tried when a node cannot be reached or the connection is lost before the reply.
+     * The errors returned by a conode are not retried, and neither is a ByzCoin/AddTxRequest that has already been
+     * sent. Every node is tried at most once per request. The hedge of a request doesn't count against the budget,
+     * see {@link #setHedgePolicy(HedgePolicy)}.
+     *
+     * @param retries the number of retries, 0 to disable failover
+     */
+    public void setRetryBudget(int retries) {
+        if (retries < 0) {
+            throw new IllegalArgumentException("the retry budget cannot be negative");
+        }
+        retryBudget = retries;
+    }
+
+    /**
+     * @return the hedging policy, or null if no request is hedged.
+     */
+    public HedgePolicy getHedgePolicy() {
+        return hedgePolicy;
+    }
+
+    /**
+     * Enables hedging for the endpoints of the policy: if a node is slower than usual to answer, the request is also
+     * sent to another node and the first answer is used. Hedging is disabled by default.
+     * <p>
+     * The hedge is one node on top of the retry budget, so requests are hedged even if failover is disabled, and a
+     * hedged request can still fail over to as many nodes as the budget allows.
+     *
+     * @param policy the policy, or null to disable hedging
+     */
+    public void setHedgePolicy(HedgePolicy policy) {
+        hedgePolicy = policy;
+    }
+
+    /**
+     * @return the deadline of the requests sent through this roster, or null if the default timeout of the
+     * {@link ConnectionPool} applies.
+     */
+    public Duration getTimeout() {
+        return timeout;
+    }
+
+    /**
+     * Sets the deadline of the requests sent through this roster. It covers all the attempts of a request, including
+     * failover and hedging.
+     *
+     * @param timeout the deadline, or null to use the default timeout of the {@link ConnectionPool}
+     */
+    public void setTimeout(Duration timeout) {
+        if (timeout != null && (timeout.isNegative() || timeout.isZero())) {
+            throw new IllegalArgumentException("the timeout must be positive");
+        }
+        this.timeout = timeout;
+    }
+
+    /**
+     * @return the timeout of the requests that don't have their own: the one of the roster or the pool default.
+     */
+    public Duration getEffectiveTimeout() {
+        Duration t = timeout;
+        return t != null ? t : ConnectionPool.getDefault().getDefaultTimeout();
+    }
+
+    /**
+     * Synchronously sends a message. The node is chosen by the {@link NodeSelector} and the request is sent to
+     * another node if the network fails, as long as the retry budget allows it.
      *
      * @param path  The API endpoint.
      * @param proto The protobuf encoded request.
      * @return the response
-     * @throws CothorityCommunicationException if something went wrong
+     * @throws CothorityCommunicationException if something went wrong with all the nodes that have been tried
      */
     public ByteString sendMessage(String path, com.google.protobuf.GeneratedMessageV3 proto) throws CothorityCommunicationException {
-        // TODO - fetch a random node.
-        return ByteString.copyFrom(nodes.get(0).SendMessage(path, proto.toByteArray()));
+        return sendMessage(path, proto, getEffectiveTimeout());
     }
 
     /**
-     * Sends a request to initialise a streaming connection.
+     * Synchronously sends a message with its own deadline.
+     *
+     * @param path    The API endpoint.
+     * @param proto   The protobuf encoded request.
+     * @param timeout The deadline for all the attempts, or null to wait forever.
+     * @return the response
+     * @throws CothorityCommunicationException if something went wrong with all the nodes that have been tried, a
+     *                                         {@link CothorityTimeoutException} if the deadline passed
+     */
+    public ByteString sendMessage(String path, com.google.protobuf.GeneratedMessageV3 proto, Duration timeout)
+            throws CothorityCommunicationException {
+        HedgePolicy hedge = hedgePolicy;
+        if (hedge != null && hedge.isHedged(path) && isIdempotent(path)) {
+            try {
+                return sendMessageAsync(path, proto, timeout).get();
+            } catch (InterruptedException e) {
+                throw new CothorityCommunicationException(e.toString());
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof CothorityCommunicationException) {
+                    throw (CothorityCommunicationException) e.getCause();
+                }
+                throw new CothorityCommunicationException(e.getCause().toString(), e.getCause());
+            }
+        }
+
+        Call call = new Call(path, proto.toByteArray(), timeout);
+        try {
+            ByteString reply = sendMessage(call);
+            call.span.finished(reply.size(), null);
+            return reply;
+        } catch (CothorityCommunicationException e) {
+            call.span.finished(0, e);
+            throw e;
+        }
+    }
+
+    private ByteString sendMessage(Call call) throws CothorityCommunicationException {
+        for (ServerIdentity node = call.nextNode(); node != null; node = call.nextNode()) {
+            NodeSelector s = selector;
+            s.requestStarted(node);
+            long start = System.nanoTime();
+            try {
+                ByteString reply = node.sendMessageBytes(call.path, call.msg, call.remaining());
+                s.requestFinished(node, System.nanoTime() - start, true);
+                return reply;
+            } catch (CothorityTimeoutException e) {
+                s.requestFinished(node, System.nanoTime() - start, false);
+                throw e;
+            } catch (CothorityCommunicationException e) {
+                s.requestFinished(node, System.nanoTime() - start, false);
+                call.failed(e);
+            }
+        }
+        throw call.error;
+    }
+
+    /**
+     * Asynchronously sends a message, so that many requests can be in flight without blocking a thread for each.
+     * Failover and hedging happen as in {@link #sendMessage(String, com.google.protobuf.GeneratedMessageV3)}.
+     *
+     * @param path  The API endpoint.
+     * @param proto The protobuf encoded request.
+     * @return the future response, failed with a {@link CothorityCommunicationException} if something went wrong
+     */
+    public CompletableFuture<ByteString> sendMessageAsync(String path, com.google.protobuf.GeneratedMessageV3 proto) {
+        return sendMessageAsync(path, proto, getEffectiveTimeout());
+    }
+
+    /**
+     * Asynchronously sends a message with its own deadline.
+     *
+     * @param path    The API endpoint.
+     * @param proto   The protobuf encoded request.
+     * @param timeout The deadline for all the attempts, or null to wait forever.
+     * @return the future response, failed with a {@link CothorityCommunicationException} if something went wrong or
+     * a {@link CothorityTimeoutException} if the deadline passed
+     */
+    public CompletableFuture<ByteString> sendMessageAsync(String path, com.google.protobuf.GeneratedMessageV3 proto,
+                                                          Duration timeout) {
+        Call call = new Call(path, proto.toByteArray(), timeout);
+        call.result.whenComplete((reply, e) -> call.span.finished(reply != null ? reply.size() : 0, e));
+        sendMessageAsync(call);
+        return call.result;
+    }
+
+    private void sendMessageAsync(Call call) {
+        ServerIdentity node = call.nextNode();
+        if (node == null) {
+            call.result.completeExceptionally(call.error);
+            return;
+        }
+        HedgePolicy hedge = hedgePolicy;
+        if (hedge != null && hedge.isHedged(call.path) && isIdempotent(call.path)) {
+            new HedgedRequest(hedge, call).start(node);
+            return;
+        }
+        attempt(node, call).whenComplete((reply, e) -> {
+            if (e == null) {
+                call.result.complete(reply);
+                return;
+            }
+            Throwable cause = e instanceof CompletionException ? e.getCause() : e;
+            if (!(cause instanceof CothorityCommunicationException) || cause instanceof CothorityTimeoutException) {
+                call.result.completeExceptionally(cause);
+                return;
+            }
+            call.failed((CothorityCommunicationException) cause);
+            sendMessageAsync(call);
+        });
+    }
+
+    private static boolean isIdempotent(String path) {
+        return !notIdempotent.contains(path.startsWith("/") ? path.substring(1) : path);
+    }
+
+    /**
+     * Sends the message to one node and reports the outcome to the node selector. A cancelled request counts as a
+     * success, as the node has only been slower than another one.
+     */
+    private CompletableFuture<ByteString> attempt(ServerIdentity node, Call call) {
+        NodeSelector s = selector;
+        s.requestStarted(node);
+        long start = System.nanoTime();
+        CompletableFuture<ByteString> reply = node.sendMessageAsync(call.path, call.msg, call.remaining());
+        reply.whenComplete((r, e) -> s.requestFinished(node, System.nanoTime() - start,
+                e == null || e instanceof CancellationException));
+        return reply;
+    }
+
+    /**
+     * Sends a request to initialise a streaming connection. The node is chosen by the {@link NodeSelector}.
      *
      * @param path  The API endpoint, note that this endpoint must support streaming (registered using RegisterStreamingRequest in the Go side).
      * @param proto The protobuf encoded request.
@@ -118,8 +358,242 @@ public class Roster {
      * @throws CothorityCommunicationException if something went wrong
      */
     public ServerIdentity.StreamingConn makeStreamingConn(String path, com.google.protobuf.GeneratedMessageV3 proto, ServerIdentity.StreamHandler h) throws CothorityCommunicationException {
-        // TODO - fetch a random node.
-        return nodes.get(0).MakeStreamingConnection(path, proto.toByteArray(), h);
+        if (nodes.isEmpty()) {
+            throw new CothorityCommunicationException("the roster is empty");
+        }
+        return makeStreamingConn(path, proto, h, Collections.emptySet());
+    }
+
+    /**
+     * Sends a request to initialise a streaming connection to a node that is not in avoid, unless all of them are.
+     * This is used to reconnect a stream to another node than the one that failed.
+     *
+     * @param path  The API endpoint, note that this endpoint must support streaming.
+     * @param proto The protobuf encoded request.
+     * @param h     The handler for handling responses.
+     * @param avoid The nodes to avoid.
+     * @return the streaming connection.
+     * @throws CothorityCommunicationException if something went wrong
+     */
+    public ServerIdentity.StreamingConn makeStreamingConn(String path, com.google.protobuf.GeneratedMessageV3 proto, ServerIdentity.StreamHandler h, Collection<ServerIdentity> avoid) throws CothorityCommunicationException {
+        if (nodes.isEmpty()) {
+            throw new CothorityCommunicationException("the roster is empty");
+        }
+        List<ServerIdentity> candidates = new ArrayList<>(nodes);
+        candidates.removeAll(avoid);
+        if (candidates.isEmpty()) {
+            candidates = nodes;
+        }
+        return selector.select(candidates).MakeStreamingConnection(path, proto.toByteArray(), h);
+    }
+
+    /**
+     * The state of one request across its attempts: the nodes already tried, the last error and the deadline.
+     */
+    private class Call {
+        final String path;
+        final byte[] msg;
+        final CompletableFuture<ByteString> result = new CompletableFuture<>();
+        final RpcMetrics.Span span;
+        // System.nanoTime() of the deadline, or null if there is none
+        private final Long deadline;
+        // guarded by this
+        private final List<ServerIdentity> tried = new ArrayList<>();
+        // the nodes tried after an error, which are limited by the retry budget
+        private int retries;
+        private CothorityCommunicationException error = new CothorityCommunicationException("the roster is empty");
+        // set once an error must not be retried on another node
+        private boolean stopped;
+
+        Call(String path, byte[] msg, Duration timeout) {
+            this.path = path;
+            this.msg = msg;
+            this.deadline = timeout == null ? null : System.nanoTime() + timeout.toNanos();
+            this.span = Metrics.get().rosterRequestStarted(path);
+        }
+
+        /**
+         * @return the node for the next attempt, or null if the last error cannot be retried, the retry budget is
+         * exhausted, all the nodes have been tried or the deadline passed. In the last case the error is a timeout.
+         */
+        synchronized ServerIdentity nextNode() {
+            if (!tried.isEmpty() && retries >= retryBudget) {
+                return null;
+            }
+            ServerIdentity node = otherNode();
+            if (node != null && tried.size() > 1) {
+                retries++;
+            }
+            return node;
+        }
+
+        /**
+         * @return the node to hedge the request with, which doesn't use up the retry budget, or null if the last
+         * error cannot be retried, all the nodes have been tried or the deadline passed.
+         */
+        synchronized ServerIdentity hedgeNode() {
+            return otherNode();
+        }
+
+        private ServerIdentity otherNode() {
+            if (stopped || tried.size() >= nodes.size()) {
+                return null;
+            }
+            if (deadline != null && deadline - System.nanoTime() <= 0) {
+                error = new CothorityTimeoutException("no reply for " + path + " before the deadline", error);
+                return null;
+            }
+            List<ServerIdentity> candidates = new ArrayList<>(nodes);
+            candidates.removeAll(tried);
+            ServerIdentity node = selector.select(candidates);
+            tried.add(node);
+            return node;
+        }
+
+        /**
+         * @return the time left until the deadline, or null if there is none.
+         */
+        Duration remaining() {
+            if (deadline == null) {
+                return null;
+            }
+            return Duration.ofNanos(Math.max(1, deadline - System.nanoTime()));
+        }
+
+        synchronized CothorityCommunicationException failed(CothorityCommunicationException e) {
+            if (tried.size() > 1) {
+                e.addSuppressed(error);
+            }
+            error = e;
+            stopped = stopped || !canFailover(e);
+            if (!stopped && retries < retryBudget && tried.size() < nodes.size()) {
+                Metrics.get().failover(path, tried.get(tried.size() - 1).getAddress(), e);
+                logger.warn("request to {} failed, trying another node: {}", tried.get(tried.size() - 1).getAddress(),
+                        e.getMessage());
+            }
+            return e;
+        }
+
+        /**
+         * @return true if the request can be sent to another node after this error: the network failed, and either
+         * the node never got the request or it can safely be processed twice.
+         */
+        private boolean canFailover(CothorityCommunicationException e) {
+            if (!(e instanceof CothorityTransportException)) {
+                return false;
+            }
+            return !((CothorityTransportException) e).wasSent() || isIdempotent(path);
+        }
+    }
+
+    /**
+     * A request that is sent to a second node if the first one is too slow. The first answer wins and the other
+     * request is cancelled, which closes its connection. An error only counts once all the nodes asked have failed,
+     * and the request then fails over as a normal one.
+     */
+    private class HedgedRequest {
+        private final HedgePolicy policy;
+        private final Call call;
+        private final long start = System.nanoTime();
+        // guarded by this
+        private final List<CompletableFuture<ByteString>> attempts = new ArrayList<>();
+        private ScheduledFuture<?> timer;
+        private int failed;
+        private boolean abandoned;
+        private boolean decided;
+
+        HedgedRequest(HedgePolicy policy, Call call) {
+            this.policy = policy;
+            this.call = call;
+        }
+
+        void start(ServerIdentity node) {
+            launch(node);
+            synchronized (this) {
+                if (!abandoned && !call.result.isDone()) {
+                    timer = policy.schedule(call.path, this::hedge);
+                }
+            }
+        }
+
+        private void hedge() {
+            synchronized (this) {
+                if (abandoned || call.result.isDone()) {
+                    return;
+                }
+            }
+            ServerIdentity node = call.hedgeNode();
+            if (node != null) {
+                policy.recordHedge(call.path);
+                launch(node);
+            }
+        }
+
+        private void launch(ServerIdentity node) {
+            CompletableFuture<ByteString> reply = attempt(node, call);
+            int index;
+            synchronized (this) {
+                index = attempts.size();
+                attempts.add(reply);
+            }
+            reply.whenComplete((r, e) -> done(index, r, e));
+        }
+
+        private void done(int index, ByteString reply, Throwable e) {
+            if (call.result.isDone()) {
+                return;
+            }
+            Throwable cause = e instanceof CompletionException ? e.getCause() : e;
+            if (cause == null) {
+                synchronized (this) {
+                    if (decided) {
+                        return;
+                    }
+                    decided = true;
+                }
+                // The statistics are updated before the caller gets the answer.
+                policy.recordAnswer(call.path, System.nanoTime() - start, index > 0);
+                call.result.complete(reply);
+                cancelOthers();
+                return;
+            }
+            // An error only decides the request once the other attempts have failed too, as they might still answer.
+            if (cause instanceof CothorityCommunicationException) {
+                call.failed((CothorityCommunicationException) cause);
+            }
+            boolean last;
+            synchronized (this) {
+                failed++;
+                last = failed == attempts.size() && !abandoned && !decided;
+                if (last) {
+                    abandoned = true;
+                    if (timer != null) {
+                        timer.cancel(false);
+                    }
+                }
+            }
+            if (!last) {
+                return;
+            }
+            if (cause instanceof CothorityCommunicationException) {
+                // Fails over if the error allows it, or fails with the errors of the attempts.
+                sendMessageAsync(call);
+            } else {
+                call.result.completeExceptionally(cause);
+            }
+        }
+
+        private void cancelOthers() {
+            List<CompletableFuture<ByteString>> others;
+            synchronized (this) {
+                abandoned = true;
+                if (timer != null) {
+                    timer.cancel(false);
+                }
+                others = new ArrayList<>(attempts);
+            }
+            others.forEach(f -> f.cancel(false));
+        }
     }
 
     public static Roster FromToml(String groupToml) {
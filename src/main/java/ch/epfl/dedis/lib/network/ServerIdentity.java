@@ -4,10 +4,15 @@ import ch.epfl.dedis.lib.UUIDType5;
 import ch.epfl.dedis.lib.crypto.Point;
 import ch.epfl.dedis.lib.crypto.PointFactory;
 import ch.epfl.dedis.lib.exception.CothorityCommunicationException;
+import ch.epfl.dedis.lib.exception.CothorityTimeoutException;
+import ch.epfl.dedis.lib.exception.CothorityTransportException;
+import ch.epfl.dedis.lib.metrics.Metrics;
+import ch.epfl.dedis.lib.metrics.RpcMetrics;
 import ch.epfl.dedis.lib.proto.NetworkProto;
 import ch.epfl.dedis.lib.proto.StatusProto;
 import com.google.protobuf.ByteString;
 import com.google.protobuf.InvalidProtocolBufferException;
+import com.google.protobuf.UnsafeByteOperations;
 import org.java_websocket.client.WebSocketClient;
 import org.java_websocket.framing.CloseFrame;
 import org.java_websocket.handshake.ServerHandshake;
@@ -17,11 +22,14 @@ import org.slf4j.LoggerFactory;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.nio.ByteBuffer;
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.stream.Collectors;
 
 /**
@@ -113,13 +121,29 @@ public class ServerIdentity {
         StatusProto.Request request =
                 StatusProto.Request.newBuilder().build();
         try {
-            SyncSendMessage msg = new SyncSendMessage("Status/Request", request.toByteArray());
-            return StatusProto.Response.parseFrom(msg.response);
+            return StatusProto.Response.parseFrom(SendMessage("Status/Request", request.toByteArray()));
         } catch (InvalidProtocolBufferException e) {
             throw new CothorityCommunicationException(e.toString());
         }
     }
 
+    /**
+     * Asynchronously asks the conode for its status.
+     *
+     * @param timeout How long to wait for the response, or null to wait forever.
+     * @return The future status, failed with a {@link CothorityCommunicationException} if the conode didn't answer.
+     */
+    public CompletableFuture<StatusProto.Response> getStatusAsync(Duration timeout) {
+        StatusProto.Request request = StatusProto.Request.newBuilder().build();
+        return sendMessageAsync("Status/Request", request.toByteArray(), timeout).thenApply(msg -> {
+            try {
+                return StatusProto.Response.parseFrom(msg);
+            } catch (InvalidProtocolBufferException e) {
+                throw new CompletionException(new CothorityCommunicationException(e.toString()));
+            }
+        });
+    }
+
     public NetworkProto.ServerIdentity toProto() {
         NetworkProto.ServerIdentity.Builder si =
                 NetworkProto.ServerIdentity.newBuilder();
@@ -142,19 +166,134 @@ public class ServerIdentity {
     }
 
     /**
-     * Synchronously send a message.
+     * Synchronously send a message. The connection is taken from {@link ConnectionPool#getDefault()} and stays open
+     * for the next messages to the same endpoint. The default timeout of the pool applies.
      *
      * @param path The API endpoint.
      * @param data The request message.
      * @return The response.
-     * @throws CothorityCommunicationException if something went wrong
+     * @throws CothorityCommunicationException if something went wrong, a {@link CothorityTimeoutException} if
+     *                                         there was no response in time
      */
     public byte[] SendMessage(String path, byte[] data) throws CothorityCommunicationException {
-        SyncSendMessage ssm = new SyncSendMessage(path, data);
-        if (ssm.response == null) {
-            throw new CothorityCommunicationException("Error while retrieving response for " + path + " - try again. Error-string is: " + ssm.error);
+        return SendMessage(path, data, ConnectionPool.getDefault().getDefaultTimeout());
+    }
+
+    /**
+     * Synchronously send a message with a deadline covering the connection, the request and the response.
+     *
+     * @param path    The API endpoint.
+     * @param data    The request message.
+     * @param timeout How long to wait for the response, or null to wait forever.
+     * @return The response.
+     * @throws CothorityCommunicationException if something went wrong, a {@link CothorityTimeoutException} if
+     *                                         there was no response in time
+     */
+    public byte[] SendMessage(String path, byte[] data, Duration timeout) throws CothorityCommunicationException {
+        ByteBuffer response = send(path, data, timeout);
+        if (response.hasArray() && response.arrayOffset() == 0 && response.position() == 0
+                && response.remaining() == response.array().length) {
+            return response.array();
+        }
+        byte[] copy = new byte[response.remaining()];
+        response.duplicate().get(copy);
+        return copy;
+    }
+
+    /**
+     * Synchronously send a message and return the response without copying it. The returned ByteString wraps the
+     * buffer of the websocket frame, which is never reused by the connection.
+     *
+     * @param path    The API endpoint.
+     * @param data    The request message.
+     * @param timeout How long to wait for the response, or null to wait forever.
+     * @return The response.
+     * @throws CothorityCommunicationException if something went wrong
+     */
+    ByteString sendMessageBytes(String path, byte[] data, Duration timeout) throws CothorityCommunicationException {
+        return UnsafeByteOperations.unsafeWrap(send(path, data, timeout));
+    }
+
+    private ByteBuffer send(String path, byte[] data, Duration timeout) throws CothorityCommunicationException {
+        RpcMetrics.Span span = Metrics.get().requestStarted(getAddress(), path, data.length);
+        try {
+            ByteBuffer response = ConnectionPool.getDefault().send(buildWebSocketAdddress(path), data, timeout);
+            span.finished(response.remaining(), null);
+            return response;
+        } catch (URISyntaxException e) {
+            span.finished(0, e);
+            throw new CothorityCommunicationException(e.toString());
+        } catch (CothorityCommunicationException e) {
+            span.finished(0, e);
+            throw sendingFailed(path, e);
         }
-        return ssm.response.array();
+    }
+
+    /**
+     * Asynchronously send a message with the default timeout of the pool.
+     *
+     * @param path The API endpoint.
+     * @param data The request message.
+     * @return The future response, failed with a {@link CothorityCommunicationException} if something went wrong.
+     * @see #sendMessageAsync(String, byte[], Duration)
+     */
+    public CompletableFuture<ByteString> sendMessageAsync(String path, byte[] data) {
+        return sendMessageAsync(path, data, ConnectionPool.getDefault().getDefaultTimeout());
+    }
+
+    /**
+     * Asynchronously send a message. The future completes in the network thread of the connection, so the caller
+     * should use the async methods of the future for anything that takes time, like verifying signatures.
+     *
+     * @param path    The API endpoint.
+     * @param data    The request message.
+     * @param timeout How long to wait for the response, or null to wait forever.
+     * @return The future response, failed with a {@link CothorityCommunicationException} if something went wrong or
+     * a {@link CothorityTimeoutException} if there was no response in time. Cancelling it gives up the request.
+     */
+    public CompletableFuture<ByteString> sendMessageAsync(String path, byte[] data, Duration timeout) {
+        URI endpoint;
+        try {
+            endpoint = buildWebSocketAdddress(path);
+        } catch (URISyntaxException e) {
+            CompletableFuture<ByteString> failed = new CompletableFuture<>();
+            failed.completeExceptionally(new CothorityCommunicationException(e.toString()));
+            return failed;
+        }
+        RpcMetrics.Span span = Metrics.get().requestStarted(getAddress(), path, data.length);
+        CompletableFuture<ByteBuffer> sent = ConnectionPool.getDefault().sendAsync(endpoint, data, timeout);
+        CompletableFuture<ByteString> reply = sent.handle((response, e) -> {
+            if (e != null) {
+                Throwable cause = e instanceof CompletionException ? e.getCause() : e;
+                span.finished(0, cause);
+                if (cause instanceof CancellationException) {
+                    throw (CancellationException) cause;
+                }
+                throw new CompletionException(sendingFailed(path, cause));
+            }
+            span.finished(response.remaining(), null);
+            // The buffer belongs to this response only, so it can be handed to protobuf without a copy.
+            return UnsafeByteOperations.unsafeWrap(response);
+        });
+        // Cancelling the reply gives up the request, so its connection can be used by another one.
+        reply.whenComplete((r, e) -> {
+            if (reply.isCancelled()) {
+                sent.cancel(false);
+            }
+        });
+        return reply;
+    }
+
+    private CothorityCommunicationException sendingFailed(String path, Throwable e) {
+        logger.error("error sending to {}: {}", path, e.getMessage());
+        String msg = "sending of " + path + " failed with error: " + e.getMessage();
+        if (e instanceof CothorityTimeoutException) {
+            return new CothorityTimeoutException(msg, e);
+        }
+        if (e instanceof CothorityTransportException) {
+            return new CothorityTransportException(msg, ((CothorityTransportException) e).wasSent(), e);
+        }
+        return new CothorityCommunicationException(msg, e);
     }
 
     /**
@@ -223,11 +362,25 @@ public class ServerIdentity {
         void receive(ByteBuffer message);
 
         void error(String s);
+
+        /**
+         * Called once the connection is closed, whether by the client, by the server or because of a network
+         * failure. Errors are reported to {@link #error(String)} before.
+         */
+        default void closed() {
+        }
     }
 
     public class StreamingConn {
         private WebSocketClient ws;
 
+        /**
+         * @return the node this connection is made to.
+         */
+        public ServerIdentity getServerIdentity() {
+            return ServerIdentity.this;
+        }
+
         /**
          * Close the connection, note that this function is non-blocking, so calling isClosed immediately after calling
          * close might not return the desired result.
@@ -265,19 +418,23 @@ public class ServerIdentity {
 
                     @Override
                     public void onMessage(ByteBuffer message) {
+                        Metrics.get().streamMessage(getAddress(), path, message.remaining());
                         h.receive(message);
                     }
 
                     @Override
                     public void onOpen(ServerHandshake handshake) {
+                        Metrics.get().streamOpened(getAddress(), path);
                         this.send(msg);
                     }
 
                     @Override
                     public void onClose(int code, String reason, boolean remote) {
+                        Metrics.get().streamClosed(getAddress(), path);
                         if (!reason.equals("")) {
                             h.error(reason);
                         }
+                        h.closed();
                     }
 
                     @Override
@@ -293,63 +450,4 @@ public class ServerIdentity {
             }
         }
     }
-
-    public class SyncSendMessage {
-        public ByteBuffer response;
-        public String error;
-
-        // TODO we're creating a new connection for every message, it's better to re-use connections
-        private SyncSendMessage(String path, byte[] msg) throws CothorityCommunicationException {
-            final CountDownLatch statusLatch = new CountDownLatch(1);
-            try {
-                WebSocketClient ws = new WebSocketClient(buildWebSocketAdddress(path)) {
-                    @Override
-                    public void onMessage(String msg) {
-                        error = "This should never happen:" + msg;
-                        statusLatch.countDown();
-                    }
-
-                    @Override
-                    public void onMessage(ByteBuffer message) {
-                        response = message;
-                        close();
-                        statusLatch.countDown();
-                    }
-
-                    @Override
-                    public void onOpen(ServerHandshake handshake) {
-                        this.send(msg);
-                    }
-
-                    @Override
-                    public void onClose(int code, String reason, boolean remote) {
-                        if (!reason.equals("")) {
-                            error = reason;
-                        } else if (code == CloseFrame.NEVER_CONNECTED) {
-                            error = "couldn't connect";
-                        }
-                        statusLatch.countDown();
-                    }
-
-                    @Override
-                    public void onError(Exception ex) {
-                        error = "Error: " + ex.toString();
-                        close(CloseFrame.PROTOCOL_ERROR, "error occurred: "+ex.getMessage());
-                        statusLatch.countDown();
-                    }
-                };
-
-                // open websocket and send message.
-                ws.connect();
-                // wait for error or message returned.
-                statusLatch.await();
-            } catch (InterruptedException | URISyntaxException e) {
-                throw new CothorityCommunicationException(e.toString());
-            }
-            if (error != null) {
-                logger.error("error sending to {}: {}", path, error);
-                throw new CothorityCommunicationException("sending of " + path + " failed with error: " + error);
-            }
-        }
-    }
 }
@@ -9,6 +9,7 @@ import com.google.protobuf.InvalidProtocolBufferException;
 
 import java.util.Arrays;
 import java.util.List;
+import java.util.UUID;
 
 /**
  * ByzcoinSig represents a signature from the byzcoin-protocol. It holds both the message and the signature.
@@ -46,25 +47,86 @@ public class ByzcoinSig {
      * @return true if the signature is correct, false otherwise
      */
     public boolean verifyWithScheme(List<Point> publics, SignatureScheme scheme) {
+        return verifyWithScheme(publics, scheme, null);
+    }
+
+    /**
+     * Verifies the signature given a roster of potential signers
+     * and a signature scheme. The BDN coefficients of the roster are
+     * computed only once for all the signatures of the roster.
+     *
+     * @param publics   a list of signers
+     * @param scheme    the signature scheme index
+     * @param rosterID  the ID of the roster of the signers or null if unknown
+     * @return true if the signature is correct, false otherwise
+     */
+    public boolean verifyWithScheme(List<Point> publics, SignatureScheme scheme, UUID rosterID) {
+        Mask mask = getMask(publics);
+        if (mask == null) {
+            return false;
+        }
+        byte[] signature = Arrays.copyOf(this.getSignature(), BN.G1.MARSHAL_SIZE);
+
+        switch (scheme) {
+            case BLS:
+                return verifyBLS(mask, signature);
+            case BDN:
+                return verifyBDN(mask, signature, rosterID);
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Adds the signature to a batch that verifies many signatures at once. The checks
+     * that don't need a pairing are done immediately.
+     *
+     * @param batch     the batch of signatures
+     * @param publics   a list of signers
+     * @param scheme    the signature scheme index
+     * @param rosterID  the ID of the roster of the signers or null if unknown
+     * @return false if the signature is already known to be incorrect, true otherwise
+     */
+    public boolean addToBatch(BlsBatchVerifier batch, List<Point> publics, SignatureScheme scheme, UUID rosterID) {
+        Mask mask = getMask(publics);
+        if (mask == null) {
+            return false;
+        }
+        byte[] signature = Arrays.copyOf(this.getSignature(), BN.G1.MARSHAL_SIZE);
+
+        switch (scheme) {
+            case BLS:
+                batch.add(this.getMsg(), signature, (Bn256G2Point) mask.getAggregate());
+                return true;
+            case BDN:
+                batch.add(this.getMsg(), signature, (Bn256G2Point) BdnSig.aggregatePublicKeys(mask, rosterID));
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * @return the mask of the signers or null if the signature is malformed or hasn't enough signers.
+     */
+    private Mask getMask(List<Point> publics) {
         if (publics == null || publics.size() == 0) {
             // no public keys provided
-            return false;
+            return null;
         }
         if (this.getMsg() == null) {
             // no message provided
-            return false;
+            return null;
         }
         if (this.getSignature() == null || this.getSignature().length == 0) {
             // no signature provided
-            return false;
+            return null;
         }
 
         int lenCom = BN.G1.MARSHAL_SIZE;
-        byte[] signature = Arrays.copyOf(this.getSignature(), lenCom);
-
         if (lenCom >= this.getSignature().length) {
             // mask is missing
-            return false;
+            return null;
         }
 
         byte[] maskBits = Arrays.copyOfRange(this.getSignature(), lenCom, this.getSignature().length);
@@ -72,24 +134,17 @@ public class ByzcoinSig {
         try {
             mask = new Mask(publics, maskBits);
         } catch (CothorityCryptoException e) {
-            return false;
+            return null;
         }
 
         // policy default to at >= 3t+1 valid signatures, so make sure we have enough in the mask.
         int n = publics.size();
         int threshold = n - ((n - 1) / 3);
         if (mask.countEnabled() < threshold) {
-            return false;
+            return null;
         }
 
-        switch (scheme) {
-            case BLS:
-                return verifyBLS(mask, signature);
-            case BDN:
-                return verifyBDN(mask, signature);
-            default:
-                return false;
-        }
+        return mask;
     }
 
     /**
@@ -111,8 +166,11 @@ public class ByzcoinSig {
         return sig.verify(this.getMsg(), (Bn256G2Point) mask.getAggregate());
     }
 
-    private boolean verifyBDN(Mask mask, byte[] signature) {
+    private boolean verifyBDN(Mask mask, byte[] signature, UUID rosterID) {
         BdnSig sig = new BdnSig(signature);
-        return sig.verify(this.getMsg(), mask);
+        if (rosterID == null) {
+            return sig.verify(this.getMsg(), mask);
+        }
+        return sig.verify(this.getMsg(), mask, rosterID);
     }
 }
@@ -1,6 +1,7 @@
 package ch.epfl.dedis.skipchain;
 
 import ch.epfl.dedis.lib.SkipblockId;
+import ch.epfl.dedis.lib.crypto.BlsBatchVerifier;
 import ch.epfl.dedis.lib.crypto.Point;
 import ch.epfl.dedis.lib.exception.CothorityCryptoException;
 import ch.epfl.dedis.lib.network.Roster;
@@ -13,6 +14,7 @@ import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.Arrays;
 import java.util.List;
+import java.util.UUID;
 
 /**
  * A forwardlink represents a signed proof that a future block has been accepted by the set of nodes of
@@ -90,6 +92,34 @@ public class ForwardLink {
                 && this.getByzcoinSig().verifyWithScheme(publics, scheme);
     }
 
+    /**
+     * Verifies whether the signature is correctly signed by the public keys
+     * of the roster for the given signature scheme.
+     *
+     * @param publics   the list of public keys
+     * @param scheme    index of the signature scheme
+     * @param rosterID  the ID of the roster of the public keys
+     * @return true if the signature is ok.
+     */
+    public boolean verifyWithScheme(List<Point> publics, SignatureScheme scheme, UUID rosterID) {
+        return Arrays.equals(this.getByzcoinSig().getMsg(), this.hash())
+                && this.getByzcoinSig().verifyWithScheme(publics, scheme, rosterID);
+    }
+
+    /**
+     * Adds the signature to a batch that verifies many forward links at once.
+     *
+     * @param batch     the batch of signatures
+     * @param publics   the list of public keys
+     * @param scheme    index of the signature scheme
+     * @param rosterID  the ID of the roster of the public keys
+     * @return false if the forward link is already known to be incorrect, true otherwise
+     */
+    public boolean addToBatch(BlsBatchVerifier batch, List<Point> publics, SignatureScheme scheme, UUID rosterID) {
+        return Arrays.equals(this.getByzcoinSig().getMsg(), this.hash())
+                && this.getByzcoinSig().addToBatch(batch, publics, scheme, rosterID);
+    }
+
     /**
      * @return if the From or To fields are missing.
      */
@@ -3,12 +3,14 @@ package ch.epfl.dedis.skipchain;
 import ch.epfl.dedis.lib.Hex;
 import ch.epfl.dedis.lib.SkipBlock;
 import ch.epfl.dedis.lib.SkipblockId;
+import ch.epfl.dedis.lib.crypto.BlsBatchVerifier;
 import ch.epfl.dedis.lib.exception.CothorityCommunicationException;
 import ch.epfl.dedis.lib.exception.CothorityCryptoException;
 import ch.epfl.dedis.lib.network.Roster;
-import ch.epfl.dedis.lib.network.ServerIdentity;
 import ch.epfl.dedis.lib.proto.SkipchainProto;
+import ch.epfl.dedis.status.StatusRPC;
 import com.google.protobuf.ByteString;
+import com.google.protobuf.CodedInputStream;
 import com.google.protobuf.InvalidProtocolBufferException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -63,23 +65,13 @@ public class SkipchainRPC {
     }
 
     /**
-     * Contacts all nodes in the cothority and returns true only if _all_
+     * Contacts all nodes in the cothority, in parallel, and returns true only if _all_
      * nodes returned OK.
      *
      * @return true only if all nodes are OK, else false.
      */
     public boolean checkStatus() {
-        boolean ok = true;
-        for (ServerIdentity n : roster.getNodes()) {
-            logger.info("Testing node {}", n.getAddress());
-            try {
-                n.GetStatus();
-            } catch (CothorityCommunicationException e) {
-                logger.warn("Failing node {}", n.getAddress());
-                ok = false;
-            }
-        }
-        return ok;
+        return StatusRPC.probe(roster).isAllAlive();
     }
 
     /**
@@ -158,7 +150,10 @@ public class SkipchainRPC {
                                 .build();
                 ByteString msg = roster.sendMessage("Skipchain/GetUpdateChain",
                         request);
-                r2 = SkipchainProto.GetUpdateChainReply.parseFrom(msg);
+                // The blocks keep referencing the reply instead of copying their data out of it.
+                CodedInputStream input = msg.newCodedInput();
+                input.enableAliasing(true);
+                r2 = SkipchainProto.GetUpdateChainReply.parser().parseFrom(input);
             } catch (InvalidProtocolBufferException e) {
                 throw new CothorityCommunicationException(e);
             }
@@ -170,6 +165,14 @@ public class SkipchainRPC {
 
             // Step through the returned blocks one at a time, verifying
             // the forward links, and that they link correctly backwards.
+            // The signatures of the forward links are verified at once
+            // before the blocks are accepted, unless there are less than
+            // BlsBatchVerifier.MIN_BATCH of them, which are verified one
+            // by one.
+            BlsBatchVerifier batch = new BlsBatchVerifier();
+            // the block and the level of the forward link of every signature in the batch
+            List<SkipBlock> batchedBlocks = new ArrayList<>();
+            List<Integer> batchedLevels = new ArrayList<>();
             for (int j = 0; j < r2.getUpdateCount(); j++) {
                 SkipBlock b = new SkipBlock(r2.getUpdateList().get(j));
                 if (j == 0 && update.size() > 0) {
@@ -179,9 +182,17 @@ public class SkipchainRPC {
                         continue;
                     }
                 }
-                if (!b.verifyForwardSignatures()) {
+                if (!b.addForwardSignatures(batch)) {
                     throw new CothorityCryptoException("forward signature verification failed");
                 }
+                // every forward link that is not empty adds one signature
+                List<ForwardLink> links = b.getForwardLinks();
+                for (int level = 0; level < links.size(); level++) {
+                    if (!links.get(level).isEmpty()) {
+                        batchedBlocks.add(b);
+                        batchedLevels.add(level);
+                    }
+                }
                 // Cannot check back links until we've confirmed the first one
                 if (update.size() > 0) {
                     if (b.getBackLinks().size() == 0) {
@@ -202,6 +213,12 @@ public class SkipchainRPC {
                 update.add(b);
             }
 
+            int invalid = batch.findInvalid();
+            if (invalid >= 0) {
+                throw new CothorityCryptoException("forward signature verification failed for the forward link "
+                        + batchedLevels.get(invalid) + " of block " + batchedBlocks.get(invalid).getIndex());
+            }
+
             SkipBlock last = update.get(update.size()-1);
 
             // If they updated us to the end of the chain, return.
@@ -0,0 +1,66 @@
+package ch.epfl.dedis.status;
+
+import ch.epfl.dedis.lib.network.ServerIdentity;
+import ch.epfl.dedis.lib.proto.StatusProto;
+
+import java.time.Duration;
+
+/**
+ * The outcome of asking one conode for its status.
+ */
+public class NodeStatus {
+    private final ServerIdentity node;
+    private final StatusProto.Response response;
+    private final Throwable error;
+    private final Duration latency;
+
+    NodeStatus(ServerIdentity node, StatusProto.Response response, Throwable error, Duration latency) {
+        this.node = node;
+        this.response = response;
+        this.error = error;
+        this.latency = latency;
+    }
+
+    /**
+     * @return the conode.
+     */
+    public ServerIdentity getNode() {
+        return node;
+    }
+
+    /**
+     * @return true if the conode answered.
+     */
+    public boolean isAlive() {
+        return response != null;
+    }
+
+    /**
+     * @return the status of the conode, or null if it didn't answer.
+     */
+    public StatusProto.Response getResponse() {
+        return response;
+    }
+
+    /**
+     * @return why the conode didn't answer, or null if it did.
+     */
+    public Throwable getError() {
+        return error;
+    }
+
+    /**
+     * @return how long the conode took to answer or to fail.
+     */
+    public Duration getLatency() {
+        return latency;
+    }
+
+    @Override
+    public String toString() {
+        if (isAlive()) {
+            return String.format("%s: alive in %d ms", node.getAddress(), latency.toMillis());
+        }
+        return String.format("%s: failed after %d ms: %s", node.getAddress(), latency.toMillis(), error.getMessage());
+    }
+}
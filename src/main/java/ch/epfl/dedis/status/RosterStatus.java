@@ -0,0 +1,65 @@
+package ch.epfl.dedis.status;
+
+import java.time.Instant;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A snapshot of the status of every conode of a roster, as returned by {@link StatusRPC#probe}.
+ */
+public class RosterStatus {
+    private final List<NodeStatus> nodes;
+    private final Instant time;
+
+    RosterStatus(List<NodeStatus> nodes, Instant time) {
+        this.nodes = Collections.unmodifiableList(nodes);
+        this.time = time;
+    }
+
+    /**
+     * @return the status of every conode, in the order of the roster.
+     */
+    public List<NodeStatus> getNodes() {
+        return nodes;
+    }
+
+    /**
+     * @return when the probe has been started.
+     */
+    public Instant getTime() {
+        return time;
+    }
+
+    /**
+     * @return the number of conodes that answered.
+     */
+    public int getAlive() {
+        return (int) nodes.stream().filter(NodeStatus::isAlive).count();
+    }
+
+    /**
+     * @return true if all the conodes answered.
+     */
+    public boolean isAllAlive() {
+        return getAlive() == nodes.size();
+    }
+
+    /**
+     * The conodes tolerate f = (n-1)/3 faulty nodes, so the roster can make progress if n-f of them are alive.
+     *
+     * @return true if enough conodes answered for the roster to reach a consensus.
+     */
+    public boolean hasQuorum() {
+        return !nodes.isEmpty() && getAlive() >= nodes.size() - (nodes.size() - 1) / 3;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder(String.format("%d/%d alive, quorum: %b", getAlive(), nodes.size(),
+                hasQuorum()));
+        for (NodeStatus node : nodes) {
+            sb.append("\n  ").append(node);
+        }
+        return sb.toString();
+    }
+}
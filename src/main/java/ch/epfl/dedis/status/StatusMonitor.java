@@ -0,0 +1,72 @@
+package ch.epfl.dedis.status;
+
+import ch.epfl.dedis.lib.network.Roster;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Probes the conodes of a roster periodically in the background, so that reading the status of the roster costs
+ * nothing, e.g. in a health check endpoint.
+ */
+public class StatusMonitor implements AutoCloseable {
+    private static final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "status-monitor");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private final Roster roster;
+    private final Duration timeout;
+    private final ScheduledFuture<?> task;
+    private volatile RosterStatus latest;
+    // guarded by this
+    private CompletableFuture<RosterStatus> running;
+
+    /**
+     * Starts probing the roster, the first probe is sent at once.
+     *
+     * @param roster   the conodes to probe
+     * @param interval the time between the start of two probes
+     * @param timeout  how long to wait for every conode, it should be shorter than the interval
+     */
+    public StatusMonitor(Roster roster, Duration interval, Duration timeout) {
+        this.roster = roster;
+        this.timeout = timeout;
+        task = timer.scheduleAtFixedRate(this::refresh, 0, interval.toNanos(), TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * @return the last complete status of the roster, or null if the first probe hasn't finished yet.
+     */
+    public RosterStatus getLatest() {
+        return latest;
+    }
+
+    /**
+     * Probes the roster now, unless a probe is already running in which case its result is returned.
+     *
+     * @return the future status of the roster
+     */
+    public synchronized CompletableFuture<RosterStatus> refresh() {
+        if (running == null || running.isDone()) {
+            running = StatusRPC.probeAsync(roster, timeout).thenApply(status -> {
+                latest = status;
+                return status;
+            });
+        }
+        return running;
+    }
+
+    /**
+     * Stops the probes.
+     */
+    @Override
+    public void close() {
+        task.cancel(false);
+    }
+}
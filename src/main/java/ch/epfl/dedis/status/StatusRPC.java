@@ -1,18 +1,30 @@
 package ch.epfl.dedis.status;
 
 import ch.epfl.dedis.lib.exception.CothorityCommunicationException;
+import ch.epfl.dedis.lib.network.Roster;
 import ch.epfl.dedis.lib.network.ServerIdentity;
 import ch.epfl.dedis.lib.proto.OnetProto;
 import ch.epfl.dedis.lib.proto.StatusProto;
 import com.google.protobuf.ByteString;
 import com.google.protobuf.InvalidProtocolBufferException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.stream.Collectors;
 
 /**
  * The RPC to get the status of a conode.
  */
 public class StatusRPC {
+    private static final Logger logger = LoggerFactory.getLogger(StatusRPC.class);
+
     /**
      * Make an RPC to the conode identified by its server identity (sid) to get its status.
      * @param sid The server identity of the conode.
@@ -30,4 +42,42 @@ public class StatusRPC {
             throw new CothorityCommunicationException(e);
         }
     }
+
+    /**
+     * Asks all the conodes of the roster for their status, in parallel, and waits for all of them to answer or to
+     * fail. The timeout of the roster applies to every conode.
+     *
+     * @param roster the conodes to probe
+     * @return the status of the roster
+     */
+    public static RosterStatus probe(Roster roster) {
+        return probeAsync(roster, roster.getEffectiveTimeout()).join();
+    }
+
+    /**
+     * Asks all the conodes of the roster for their status, in parallel. The future never fails: the conodes that
+     * didn't answer are reported as such in the result.
+     *
+     * @param roster  the conodes to probe
+     * @param timeout how long to wait for every conode, or null to wait forever
+     * @return the future status of the roster
+     */
+    public static CompletableFuture<RosterStatus> probeAsync(Roster roster, Duration timeout) {
+        Instant time = Instant.now();
+        List<CompletableFuture<NodeStatus>> probes = new ArrayList<>();
+        for (ServerIdentity node : roster.getNodes()) {
+            long start = System.nanoTime();
+            probes.add(node.getStatusAsync(timeout).handle((resp, e) -> {
+                Duration latency = Duration.ofNanos(System.nanoTime() - start);
+                if (e != null) {
+                    Throwable cause = e instanceof CompletionException ? e.getCause() : e;
+                    logger.warn("Failing node {}: {}", node.getAddress(), cause.toString());
+                    return new NodeStatus(node, null, cause, latency);
+                }
+                return new NodeStatus(node, resp, null, latency);
+            }));
+        }
+        return CompletableFuture.allOf(probes.toArray(new CompletableFuture<?>[0])).thenApply(v ->
+                new RosterStatus(probes.stream().map(CompletableFuture::join).collect(Collectors.toList()), time));
+    }
 }
@@ -14,6 +14,7 @@ import ch.epfl.dedis.lib.exception.CothorityCommunicationException;
 import ch.epfl.dedis.lib.exception.CothorityCryptoException;
 import ch.epfl.dedis.lib.exception.CothorityException;
 import ch.epfl.dedis.lib.exception.CothorityPermissionException;
+import ch.epfl.dedis.lib.network.HedgePolicy;
 import ch.epfl.dedis.lib.network.Roster;
 import ch.epfl.dedis.lib.network.ServerIdentity;
 import ch.epfl.dedis.lib.proto.ByzCoinProto;
@@ -28,6 +29,11 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Stream;
 
 import static java.time.temporal.ChronoUnit.MILLIS;
@@ -101,6 +107,29 @@ public class ByzCoinRPCTest {
         assertEquals(1, p.toProto().getLinksList().size());
     }
 
+    @Test
+    void asyncRequests() throws Exception {
+        SignerCounters counters = bc.getSignerCountersAsync(Collections.singletonList(admin.getIdentity().toString()))
+                .get();
+        bc.getGenesisDarcInstance().evolveDarcAndWait(bc.getGenesisDarc(), admin, counters.head()+1, 10);
+
+        // Keep many requests in flight from a single thread.
+        InstanceId inst = bc.getGenesisDarcInstance().getInstance().getId();
+        List<CompletableFuture<Proof>> proofs = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            proofs.add(bc.getProofAsync(inst));
+        }
+        for (CompletableFuture<Proof> p : proofs) {
+            assertTrue(p.get().exists(inst.getId()));
+        }
+
+        StateChange sc = bc.getInstanceVersionAsync(inst, 1).get();
+        assertEquals(1, sc.getVersion());
+
+        ExecutionException e = assertThrows(ExecutionException.class, () -> bc.getInstanceVersionAsync(inst, 10).get());
+        assertTrue(e.getCause() instanceof CothorityCommunicationException);
+    }
+
     /**
      * We only give the client the roster and the genesis ID. It should be able to find the configuration, latest block
      * and the genesis darc.
@@ -189,6 +218,57 @@ public class ByzCoinRPCTest {
         stream.close();
     }
 
+    /**
+     * Subscribes to a publisher and verifies only the requested blocks are delivered.
+     */
+    @Test
+    void publishSkipBlocks() throws Exception {
+        BlockingQueue<SkipBlock> blocks = new LinkedBlockingQueue<>();
+        List<BlockPublisher.BlockSubscription> subscriptions = new ArrayList<>();
+        BlockPublisher.BlockSubscriber subscriber = new BlockPublisher.BlockSubscriber() {
+            @Override
+            public void onSubscribe(BlockPublisher.BlockSubscription subscription) {
+                subscriptions.add(subscription);
+            }
+
+            @Override
+            public void onNext(SkipBlock block) {
+                blocks.add(block);
+            }
+
+            @Override
+            public void onError(Throwable throwable) {
+                fail(throwable);
+            }
+
+            @Override
+            public void onComplete() {
+            }
+        };
+        bc.publishSkipBlocks(1, BlockPublisher.OverflowPolicy.DROP_OLDEST).subscribe(subscriber);
+        assertEquals(1, subscriptions.size());
+        BlockPublisher.BlockSubscription sub = subscriptions.get(0);
+
+        SignerCounters counters = bc.getSignerCounters(Collections.singletonList(admin.getIdentity().toString()));
+        bc.getGenesisDarcInstance().evolveDarcAndWait(bc.getGenesisDarc(), admin, counters.head() + 1, 10);
+        bc.getGenesisDarcInstance().evolveDarcAndWait(bc.getGenesisDarc(), admin, counters.head() + 2, 10);
+        Thread.sleep(bc.getConfig().getBlockInterval().toMillis());
+
+        // Nothing has been requested, so the buffer holds the last block.
+        assertTrue(blocks.isEmpty());
+        assertEquals(1, sub.getQueueDepth());
+        assertEquals(1, sub.getDropped());
+        assertFalse(sub.getLag().isZero());
+
+        sub.request(2);
+        SkipBlock block = blocks.poll(1, TimeUnit.SECONDS);
+        assertNotNull(block);
+        assertEquals(bc.getLatestBlock().getId(), block.getId());
+        assertEquals(0, sub.getQueueDepth());
+        assertEquals(1, sub.getDelivered());
+        sub.cancel();
+    }
+
     @Test
     void multipleSubscribeSkipBlocks() throws Exception {
         logger.info("Subscribing blocks");
@@ -290,6 +370,84 @@ public class ByzCoinRPCTest {
         assertEquals(2, receiver.getCtr());
     }
 
+    /**
+     * Kills the node of the subscription and verifies the blocks created meanwhile are still received.
+     */
+    @Test
+    void subscriptionReconnects() throws Exception {
+        // Stream from the last node, which is not the leader, so that it can be killed.
+        bc.getRoster().setNodeSelector(candidates -> candidates.get(candidates.size() - 1));
+        List<SkipBlock> blocks = Collections.synchronizedList(new ArrayList<>());
+        TestReceiver receiver = new TestReceiver() {
+            @Override
+            public void receive(SkipBlock block) {
+                blocks.add(block);
+            }
+        };
+        bc.getSubscription().setReconnectBackoff(Duration.ofMillis(100), Duration.ofSeconds(1));
+        bc.subscribeSkipBlock(receiver);
+
+        SignerCounters counters = bc.getSignerCounters(Collections.singletonList(admin.getIdentity().toString()));
+        bc.getGenesisDarcInstance().evolveDarcAndWait(bc.getGenesisDarc(), admin, counters.head() + 1, 10);
+        Thread.sleep(bc.getConfig().getBlockInterval().toMillis());
+        assertEquals(1, blocks.size());
+
+        testInstanceController.killConode(4);
+        try {
+            bc.getGenesisDarcInstance().evolveDarcAndWait(bc.getGenesisDarc(), admin, counters.head() + 2, 10);
+            bc.getGenesisDarcInstance().evolveDarcAndWait(bc.getGenesisDarc(), admin, counters.head() + 3, 10);
+            Thread.sleep(3 * bc.getConfig().getBlockInterval().toMillis());
+        } finally {
+            testInstanceController.startConode(4);
+        }
+
+        assertTrue(receiver.isOk());
+        assertFalse(bc.getSubscription().isClosed());
+        assertEquals(3, blocks.size());
+        for (int i = 1; i < blocks.size(); i++) {
+            assertEquals(blocks.get(i - 1).getIndex() + 1, blocks.get(i).getIndex());
+        }
+        bc.unsubscribeBlock(receiver);
+    }
+
+    /**
+     * Kills the node of the subscription before it sent any block and verifies the blocks created meanwhile are
+     * still received.
+     */
+    @Test
+    void subscriptionReconnectsBeforeFirstBlock() throws Exception {
+        bc.getRoster().setNodeSelector(candidates -> candidates.get(candidates.size() - 1));
+        List<SkipBlock> blocks = Collections.synchronizedList(new ArrayList<>());
+        TestReceiver receiver = new TestReceiver() {
+            @Override
+            public void receive(SkipBlock block) {
+                blocks.add(block);
+            }
+        };
+        bc.getSubscription().setReconnectBackoff(Duration.ofMillis(100), Duration.ofSeconds(1));
+        List<SkipBlock> chain = bc.skipchainRPC().getUpdateChain();
+        int head = chain.get(chain.size() - 1).getIndex();
+        bc.subscribeSkipBlock(receiver);
+
+        SignerCounters counters = bc.getSignerCounters(Collections.singletonList(admin.getIdentity().toString()));
+        testInstanceController.killConode(4);
+        try {
+            bc.getGenesisDarcInstance().evolveDarcAndWait(bc.getGenesisDarc(), admin, counters.head() + 1, 10);
+            bc.getGenesisDarcInstance().evolveDarcAndWait(bc.getGenesisDarc(), admin, counters.head() + 2, 10);
+            Thread.sleep(3 * bc.getConfig().getBlockInterval().toMillis());
+        } finally {
+            testInstanceController.startConode(4);
+        }
+
+        assertTrue(receiver.isOk());
+        assertFalse(bc.getSubscription().isClosed());
+        assertEquals(2, blocks.size());
+        for (int i = 0; i < blocks.size(); i++) {
+            assertEquals(head + i + 1, blocks.get(i).getIndex());
+        }
+        bc.unsubscribeBlock(receiver);
+    }
+
     @Test
     void streamClientTransaction() throws Exception {
         TestReceiver receiver = new TestReceiver();
@@ -441,6 +599,12 @@ public class ByzCoinRPCTest {
             testInstanceController.startConode(6);
             testInstanceController.startConode(7);
 
+            // the settings of the client roster are kept by the new one
+            Duration timeout = Duration.ofSeconds(20);
+            bc.getRoster().setTimeout(timeout);
+            HedgePolicy hedge = HedgePolicy.forReads();
+            bc.getRoster().setHedgePolicy(hedge);
+
             logger.info("updating to roster[0..4]");
             Roster newRoster = new Roster(testInstanceController.getIdentities().subList(0, 5));
             bc.setRoster(newRoster, admins, counters.getCounters(), 10);
@@ -477,6 +641,8 @@ public class ByzCoinRPCTest {
             }
 
             assertEquals(7, bc.getRoster().getNodes().size());
+            assertEquals(timeout, bc.getRoster().getTimeout());
+            assertSame(hedge, bc.getRoster().getHedgePolicy());
 
             // Check that we can update to the latest block using the skipchain API after roster change.
             updates = bc.getSkipchain().getUpdateChain();
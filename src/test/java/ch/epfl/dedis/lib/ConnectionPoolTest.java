@@ -0,0 +1,186 @@
+package ch.epfl.dedis.lib;
+
+import ch.epfl.dedis.lib.exception.CothorityCommunicationException;
+import ch.epfl.dedis.lib.exception.CothorityTimeoutException;
+import ch.epfl.dedis.lib.network.ConnectionPool;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ConnectionPoolTest {
+    private EchoServer server;
+    private ConnectionPool pool;
+
+    @BeforeEach
+    void startServer() throws Exception {
+        server = EchoServer.launch();
+        pool = new ConnectionPool();
+    }
+
+    @AfterEach
+    void stopServer() throws Exception {
+        pool.close();
+        server.stop();
+    }
+
+    @Test
+    void reusesConnection() throws Exception {
+        for (int i = 0; i < 10; i++) {
+            byte[] msg = new byte[]{(byte) i};
+            assertArrayEquals(msg, toArray(pool.send(endpoint("Echo/Request"), msg)));
+        }
+        assertEquals(1, server.opened.get());
+        assertEquals(1, pool.size());
+    }
+
+    @Test
+    void queuesConcurrentRequests() throws Exception {
+        pool.setMaxConnectionsPerNode(2);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<byte[]>> replies = new ArrayList<>();
+            for (int i = 0; i < 100; i++) {
+                byte[] msg = ("message " + i).getBytes();
+                replies.add(executor.submit(() -> toArray(pool.send(endpoint("Echo/Request"), msg))));
+            }
+            for (int i = 0; i < replies.size(); i++) {
+                assertArrayEquals(("message " + i).getBytes(), replies.get(i).get(10, TimeUnit.SECONDS));
+            }
+        } finally {
+            executor.shutdown();
+        }
+        assertTrue(server.opened.get() <= 2);
+    }
+
+    @Test
+    void asyncRequests() throws Exception {
+        pool.setMaxConnectionsPerNode(1);
+        List<CompletableFuture<ByteBuffer>> replies = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            replies.add(pool.sendAsync(endpoint("Echo/Request"), ("message " + i).getBytes()));
+        }
+        for (int i = 0; i < replies.size(); i++) {
+            assertArrayEquals(("message " + i).getBytes(), toArray(replies.get(i).get(10, TimeUnit.SECONDS)));
+        }
+        assertEquals(1, server.opened.get());
+
+        ExecutionException e = assertThrows(ExecutionException.class,
+                () -> pool.sendAsync(endpoint("Unknown/Request"), new byte[]{1}).get());
+        assertTrue(e.getCause() instanceof CothorityCommunicationException);
+    }
+
+    @Test
+    void evictsIdleConnections() throws Exception {
+        pool.setIdleTimeout(Duration.ofMillis(100));
+        pool.setHealthCheckInterval(Duration.ofMillis(50));
+        pool.send(endpoint("Echo/Request"), new byte[]{1});
+        assertEquals(1, pool.size());
+
+        assertTrue(server.closed.await(5, TimeUnit.SECONDS));
+        assertEquals(0, pool.size());
+
+        pool.send(endpoint("Echo/Request"), new byte[]{2});
+        assertEquals(2, server.opened.get());
+    }
+
+    @Test
+    void errorClosesConnection() throws Exception {
+        Throwable e = assertThrows(CothorityCommunicationException.class,
+                () -> pool.send(endpoint("Unknown/Request"), new byte[]{1}));
+        assertTrue(e.getMessage().contains("The requested message hasn't been registered"));
+
+        assertArrayEquals(new byte[]{3}, toArray(pool.send(endpoint("Echo/Request"), new byte[]{3})));
+    }
+
+    @Test
+    void errorOnlyFailsItsRequest() throws Exception {
+        pool.setMaxConnectionsPerNode(1);
+        server.delayMillis = 50;
+        List<CompletableFuture<ByteBuffer>> replies = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            byte[] msg = i == 2 ? EchoServer.FAIL : new byte[]{(byte) i};
+            replies.add(pool.sendAsync(endpoint("Echo/Request"), msg));
+        }
+
+        for (int i = 0; i < replies.size(); i++) {
+            if (i == 2) {
+                ExecutionException e = assertThrows(ExecutionException.class,
+                        () -> replies.get(2).get(10, TimeUnit.SECONDS));
+                assertTrue(e.getCause().getMessage().contains("the request failed"));
+            } else {
+                assertArrayEquals(new byte[]{(byte) i}, toArray(replies.get(i).get(10, TimeUnit.SECONDS)));
+            }
+        }
+        // The requests after the failed one needed a new connection.
+        assertEquals(2, server.opened.get());
+    }
+
+    @Test
+    void cancelGivesUpRequest() throws Exception {
+        pool.setMaxConnectionsPerNode(1);
+        server.delayMillis = 500;
+        CompletableFuture<ByteBuffer> cancelled = pool.sendAsync(endpoint("Echo/Request"), new byte[]{1});
+        CompletableFuture<ByteBuffer> queued = pool.sendAsync(endpoint("Echo/Request"), new byte[]{2});
+        // Waits until the first request is sent.
+        while (server.messages.get() == 0) {
+            Thread.sleep(10);
+        }
+
+        assertTrue(cancelled.cancel(false));
+        assertTrue(server.closed.await(1, TimeUnit.SECONDS));
+        assertArrayEquals(new byte[]{2}, toArray(queued.get(10, TimeUnit.SECONDS)));
+        assertEquals(2, server.opened.get());
+    }
+
+    @Test
+    void timeout() throws Exception {
+        pool.setMaxConnectionsPerNode(1);
+        // The connection is opened beforehand, so the deadline only covers the request.
+        pool.send(endpoint("Echo/Request"), new byte[]{0});
+
+        server.delayMillis = 500;
+        CompletableFuture<ByteBuffer> late = pool.sendAsync(endpoint("Echo/Request"), new byte[]{1},
+                Duration.ofMillis(100));
+        CompletableFuture<ByteBuffer> queued = pool.sendAsync(endpoint("Echo/Request"), new byte[]{2},
+                Duration.ofSeconds(5));
+        ExecutionException e = assertThrows(ExecutionException.class, () -> late.get(5, TimeUnit.SECONDS));
+        assertTrue(e.getCause() instanceof CothorityTimeoutException);
+        // The late connection is closed, so its reply is not taken for the one of the next request.
+        assertTrue(server.closed.await(5, TimeUnit.SECONDS));
+
+        // The other request is not affected by the timeout.
+        assertArrayEquals(new byte[]{2}, toArray(queued.get(10, TimeUnit.SECONDS)));
+        assertEquals(2, server.opened.get());
+    }
+
+    @Test
+    void unreachableNode() throws Exception {
+        URI nowhere = new URI("ws://127.0.0.1:" + (server.getPort() + 1) + "/Echo/Request");
+        Throwable e = assertThrows(CothorityCommunicationException.class, () -> pool.send(nowhere, new byte[]{1}));
+        assertTrue(e.getMessage().contains("ConnectException"));
+    }
+
+    private URI endpoint(String path) throws Exception {
+        return new URI("ws://127.0.0.1:" + server.getPort() + "/" + path);
+    }
+
+    private static byte[] toArray(ByteBuffer buf) {
+        byte[] out = new byte[buf.remaining()];
+        buf.get(out);
+        return out;
+    }
+}
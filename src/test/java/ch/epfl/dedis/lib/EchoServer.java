@@ -0,0 +1,127 @@
+package ch.epfl.dedis.lib;
+
+import ch.epfl.dedis.lib.crypto.Ed25519Pair;
+import ch.epfl.dedis.lib.network.ServerIdentity;
+import org.java_websocket.WebSocket;
+import org.java_websocket.handshake.ClientHandshake;
+import org.java_websocket.server.WebSocketServer;
+
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Mimics a conode for the tests that don't need a real one: the replies are sent in the order of the requests,
+ * /Echo/Request sends back the request and other paths close the connection with an error. /Status/Request is
+ * echoed too, as an empty request is also an empty status. The request {@link #FAIL} closes the connection with an
+ * error, like a conode does when a request is invalid.
+ */
+class EchoServer extends WebSocketServer {
+    static final byte[] FAIL = "fail".getBytes();
+
+    final CountDownLatch started = new CountDownLatch(1);
+    final CountDownLatch closed = new CountDownLatch(1);
+    final AtomicInteger opened = new AtomicInteger();
+    final AtomicInteger messages = new AtomicInteger();
+    // how long the echo is delayed, to simulate a slow conode
+    volatile long delayMillis;
+    // if set, the connection is closed without an error after every request and its delay, to simulate a crashing
+    // conode
+    volatile boolean drop;
+
+    private final ScheduledExecutorService writeDemands = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "echo-write-demands");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private EchoServer(InetSocketAddress address) {
+        super(address);
+    }
+
+    /**
+     * Starts a server on a random port of the loopback interface.
+     */
+    static EchoServer launch() throws InterruptedException {
+        EchoServer server = new EchoServer(new InetSocketAddress("127.0.0.1", 20000 + new Random().nextInt(20000)));
+        server.start();
+        if (!server.started.await(5, TimeUnit.SECONDS)) {
+            throw new IllegalStateException("echo server didn't start");
+        }
+        return server;
+    }
+
+    /**
+     * @return a server identity whose websocket address points to this server.
+     */
+    ServerIdentity getServerIdentity() {
+        // The websocket port of a conode is the one following its address.
+        return new ServerIdentity(URI.create("tls://127.0.0.1:" + (getPort() - 1)), new Ed25519Pair().point);
+    }
+
+    @Override
+    public void onOpen(WebSocket conn, ClientHandshake handshake) {
+        opened.incrementAndGet();
+    }
+
+    @Override
+    public void onClose(WebSocket conn, int code, String reason, boolean remote) {
+        closed.countDown();
+    }
+
+    @Override
+    public void onMessage(WebSocket conn, String message) {
+        conn.close(4000, "text messages are not supported");
+    }
+
+    @Override
+    public void onMessage(WebSocket conn, ByteBuffer message) {
+        messages.incrementAndGet();
+        String path = conn.getResourceDescriptor();
+        if (drop) {
+            writeDemands.schedule(() -> conn.close(), delayMillis, TimeUnit.MILLISECONDS);
+        } else if (message.equals(ByteBuffer.wrap(FAIL))) {
+            conn.close(4000, "the request failed");
+        } else if (path.equals("/Echo/Request") || path.equals("/Status/Request")) {
+            if (delayMillis == 0) {
+                reply(conn, message);
+                return;
+            }
+            new Thread(() -> {
+                try {
+                    Thread.sleep(delayMillis);
+                    reply(conn, message);
+                } catch (Exception ignored) {
+                }
+            }).start();
+        } else {
+            conn.close(4000, "The requested message hasn't been registered");
+        }
+    }
+
+    private void reply(WebSocket conn, ByteBuffer message) {
+        conn.send(message);
+        // The server of Java-WebSocket 1.3.9 can lose the demand to write a reply that is queued while the previous
+        // one is being written, so it is repeated in case the reply got stuck.
+        writeDemands.schedule(() -> {
+            if (conn.isOpen()) {
+                onWriteDemand(conn);
+            }
+        }, 20, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void onError(WebSocket conn, Exception ex) {
+    }
+
+    @Override
+    public void onStart() {
+        started.countDown();
+    }
+}
@@ -0,0 +1,79 @@
+package ch.epfl.dedis.lib;
+
+import ch.epfl.dedis.lib.crypto.Ed25519Pair;
+import ch.epfl.dedis.lib.metrics.Histogram;
+import ch.epfl.dedis.lib.metrics.InMemoryMetrics;
+import ch.epfl.dedis.lib.metrics.Metrics;
+import ch.epfl.dedis.lib.network.NodeSelectors;
+import ch.epfl.dedis.lib.network.Roster;
+import ch.epfl.dedis.lib.network.ServerIdentity;
+import ch.epfl.dedis.lib.proto.StatusProto;
+import com.google.protobuf.ByteString;
+import org.junit.jupiter.api.Test;
+
+import java.net.URI;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MetricsTest {
+    @Test
+    void histogram() {
+        Histogram h = new Histogram();
+        assertEquals(0, h.getPercentile(0.5).toNanos());
+        for (int i = 1; i <= 100; i++) {
+            h.record(TimeUnit.MILLISECONDS.toNanos(i));
+        }
+        assertEquals(100, h.getCount());
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(100), h.getMax().toNanos());
+        // The percentiles are the upper bounds of the buckets, at most twice the real value.
+        long p50 = h.getPercentile(0.5).toMillis();
+        assertTrue(p50 >= 50 && p50 <= 100, "p50 = " + p50);
+        assertEquals(100, h.getPercentile(1).toMillis());
+    }
+
+    @Test
+    void recordsRequests() throws Exception {
+        EchoServer server = EchoServer.launch();
+        InMemoryMetrics metrics = new InMemoryMetrics();
+        Metrics.set(metrics);
+        try {
+            ServerIdentity offline = new ServerIdentity(URI.create("tls://127.0.0.1:1"), new Ed25519Pair().point);
+            Roster roster = new Roster(Arrays.asList(offline, server.getServerIdentity()));
+            roster.setNodeSelector(NodeSelectors.first());
+            StatusProto.Request req = StatusProto.Request.newBuilder().build();
+            server.getServerIdentity().SendMessage("Echo/Request", new byte[]{1, 2, 3});
+            roster.sendMessage("Echo/Request", req);
+
+            InMemoryMetrics.Snapshot snapshot = metrics.snapshot();
+            InMemoryMetrics.RequestStats rosterStats = snapshot.getRosterRequests().get(0);
+            assertEquals("Echo/Request", rosterStats.getPath());
+            assertEquals(1, rosterStats.getRequests());
+            assertEquals(0, rosterStats.getErrors());
+            assertEquals(1, rosterStats.getFailovers());
+
+            assertEquals(2, snapshot.getRequests().size());
+            for (InMemoryMetrics.RequestStats stats : snapshot.getRequests()) {
+                if (stats.getNode().equals(offline.getAddress())) {
+                    assertEquals(1, stats.getErrors());
+                } else {
+                    assertEquals(2, stats.getRequests());
+                    assertEquals(0, stats.getErrors());
+                    assertEquals(3, stats.getBytesSent());
+                    assertEquals(3, stats.getBytesReceived());
+                    assertEquals(2, stats.getLatency().getCount());
+                }
+            }
+            assertTrue(snapshot.getConnects().stream().anyMatch(c -> c.getFailures() == 1));
+
+            // The snapshot doesn't change anymore.
+            server.getServerIdentity().sendMessageAsync("Echo/Request", ByteString.EMPTY.toByteArray()).get();
+            assertEquals(1, snapshot.getRosterRequests().get(0).getRequests());
+            assertNotEquals("", snapshot.toString());
+        } finally {
+            Metrics.set(null);
+            server.stop();
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package ch.epfl.dedis.lib;
+
+import ch.epfl.dedis.lib.crypto.Ed25519Pair;
+import ch.epfl.dedis.lib.network.NodeSelector;
+import ch.epfl.dedis.lib.network.NodeSelectors;
+import ch.epfl.dedis.lib.network.ServerIdentity;
+import org.junit.jupiter.api.Test;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class NodeSelectorsTest {
+    private final List<ServerIdentity> nodes = new ArrayList<>();
+
+    NodeSelectorsTest() {
+        for (int i = 0; i < 4; i++) {
+            nodes.add(new ServerIdentity(URI.create("tls://127.0.0.1:" + (7770 + 2 * i)), new Ed25519Pair().point));
+        }
+    }
+
+    @Test
+    void random() {
+        NodeSelector s = NodeSelectors.random();
+        Set<ServerIdentity> seen = new HashSet<>();
+        for (int i = 0; i < 1000; i++) {
+            seen.add(s.select(nodes));
+        }
+        assertEquals(nodes.size(), seen.size());
+    }
+
+    @Test
+    void roundRobin() {
+        NodeSelector s = NodeSelectors.roundRobin();
+        for (int i = 0; i < 2 * nodes.size(); i++) {
+            assertEquals(nodes.get(i % nodes.size()), s.select(nodes));
+        }
+    }
+
+    @Test
+    void leastOutstanding() {
+        NodeSelector s = NodeSelectors.leastOutstanding();
+        for (ServerIdentity node : nodes.subList(0, 3)) {
+            s.requestStarted(node);
+        }
+        assertEquals(nodes.get(3), s.select(nodes));
+
+        s.requestStarted(nodes.get(3));
+        s.requestStarted(nodes.get(3));
+        s.requestFinished(nodes.get(1), 0, true);
+        assertEquals(nodes.get(1), s.select(nodes));
+    }
+
+    @Test
+    void ewmaLatency() {
+        NodeSelector s = NodeSelectors.ewmaLatency();
+        for (int i = 0; i < nodes.size(); i++) {
+            s.requestStarted(nodes.get(i));
+            s.requestFinished(nodes.get(i), TimeUnit.MILLISECONDS.toNanos(10 * (i + 1)), true);
+        }
+        // Two random nodes are compared, so the slowest one only gets the requests where it is compared with itself.
+        int[] counts = new int[nodes.size()];
+        for (int i = 0; i < 1600; i++) {
+            counts[nodes.indexOf(s.select(nodes))]++;
+        }
+        assertTrue(counts[0] > counts[1] && counts[1] > counts[2] && counts[2] > counts[3]);
+
+        // A failing node is avoided.
+        s.requestStarted(nodes.get(0));
+        s.requestFinished(nodes.get(0), 0, false);
+        int failing = 0;
+        for (int i = 0; i < 1600; i++) {
+            if (s.select(nodes).equals(nodes.get(0))) {
+                failing++;
+            }
+        }
+        assertTrue(failing < 250);
+
+        assertThrows(IllegalArgumentException.class, () -> NodeSelectors.ewmaLatency(0));
+    }
+}
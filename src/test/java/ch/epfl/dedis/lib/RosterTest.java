@@ -1,17 +1,31 @@
 package ch.epfl.dedis.lib;
 
+import ch.epfl.dedis.lib.crypto.Ed25519Pair;
 import ch.epfl.dedis.lib.crypto.Point;
 import ch.epfl.dedis.lib.crypto.PointFactory;
+import ch.epfl.dedis.lib.exception.CothorityCommunicationException;
+import ch.epfl.dedis.lib.exception.CothorityTimeoutException;
+import ch.epfl.dedis.lib.exception.CothorityTransportException;
+import ch.epfl.dedis.lib.network.HedgePolicy;
+import ch.epfl.dedis.lib.network.NodeSelectors;
 import ch.epfl.dedis.lib.network.Roster;
 import ch.epfl.dedis.lib.network.ServerIdentity;
 import ch.epfl.dedis.lib.proto.OnetProto;
+import ch.epfl.dedis.lib.proto.StatusProto;
+import ch.epfl.dedis.status.RosterStatus;
+import ch.epfl.dedis.status.StatusMonitor;
+import ch.epfl.dedis.status.StatusRPC;
 import org.junit.jupiter.api.Test;
 
 import java.net.URI;
 import java.net.URL;
 import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.time.Duration;
+import java.time.Instant;
 import java.util.Arrays;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
 
 import static ch.epfl.dedis.integration.TestServerController.buildURI;
 import static org.junit.jupiter.api.Assertions.*;
@@ -88,4 +102,252 @@ class RosterTest {
         assertTrue(roster.getNodes().get(0).getServiceIdentities().size() > 0);
         assertEquals("http://localhost:7771", roster.getNodes().get(0).getWebsockAddress().toString());
     }
+
+    @Test
+    void testFailover() throws Exception {
+        EchoServer server = EchoServer.launch();
+        try {
+            ServerIdentity offline = new ServerIdentity(URI.create("tls://127.0.0.1:" + (server.getPort() + 1)),
+                    new Ed25519Pair().point);
+            Roster roster = new Roster(Arrays.asList(offline, server.getServerIdentity()));
+            roster.setNodeSelector(NodeSelectors.first());
+            StatusProto.Request req = StatusProto.Request.newBuilder().build();
+
+            roster.setRetryBudget(0);
+            assertThrows(CothorityCommunicationException.class, () -> roster.sendMessage("Echo/Request", req));
+            assertEquals(0, server.messages.get());
+
+            roster.setRetryBudget(1);
+            assertEquals(0, roster.sendMessage("Echo/Request", req).size());
+            assertEquals(0, roster.sendMessageAsync("Echo/Request", req).get().size());
+            assertEquals(2, server.messages.get());
+
+            // Every node is tried only once and all the errors are kept.
+            roster.setRetryBudget(5);
+            CothorityCommunicationException e = assertThrows(CothorityCommunicationException.class,
+                    () -> roster.sendMessage("Unknown/Request", req));
+            assertTrue(e.getMessage().contains("The requested message hasn't been registered"));
+            assertEquals(1, e.getSuppressed().length);
+            assertEquals(3, server.messages.get());
+        } finally {
+            server.stop();
+        }
+    }
+
+    @Test
+    void testNoFailoverOnConodeError() throws Exception {
+        EchoServer first = EchoServer.launch();
+        EchoServer second = EchoServer.launch();
+        try {
+            Roster roster = new Roster(Arrays.asList(first.getServerIdentity(), second.getServerIdentity()));
+            roster.setNodeSelector(NodeSelectors.first());
+            StatusProto.Request req = StatusProto.Request.newBuilder().build();
+
+            // The error comes from the conode, so another node would answer the same.
+            CothorityCommunicationException e = assertThrows(CothorityCommunicationException.class,
+                    () -> roster.sendMessage("Unknown/Request", req));
+            assertFalse(e instanceof CothorityTransportException);
+            assertTrue(e.getMessage().contains("The requested message hasn't been registered"));
+            ExecutionException ee = assertThrows(ExecutionException.class,
+                    () -> roster.sendMessageAsync("Unknown/Request", req).get());
+            assertTrue(ee.getCause().getMessage().contains("The requested message hasn't been registered"));
+            assertEquals(2, first.messages.get());
+            assertEquals(0, second.messages.get());
+        } finally {
+            first.stop();
+            second.stop();
+        }
+    }
+
+    @Test
+    void testNoFailoverOnceTransactionSent() throws Exception {
+        EchoServer crashing = EchoServer.launch();
+        EchoServer second = EchoServer.launch();
+        try {
+            crashing.drop = true;
+            Roster roster = new Roster(Arrays.asList(crashing.getServerIdentity(), second.getServerIdentity()));
+            roster.setNodeSelector(NodeSelectors.first());
+            StatusProto.Request req = StatusProto.Request.newBuilder().build();
+
+            assertEquals(0, roster.sendMessage("Echo/Request", req).size());
+            assertEquals(1, second.messages.get());
+
+            // The first node might have processed the transaction before the connection was lost.
+            CothorityTransportException e = assertThrows(CothorityTransportException.class,
+                    () -> roster.sendMessage("ByzCoin/AddTxRequest", req));
+            assertTrue(e.wasSent());
+            ExecutionException ee = assertThrows(ExecutionException.class,
+                    () -> roster.sendMessageAsync("ByzCoin/AddTxRequest", req).get());
+            assertTrue(ee.getCause() instanceof CothorityTransportException);
+            assertEquals(3, crashing.messages.get());
+            assertEquals(1, second.messages.get());
+        } finally {
+            crashing.stop();
+            second.stop();
+        }
+    }
+
+    @Test
+    void testHedging() throws Exception {
+        EchoServer slow = EchoServer.launch();
+        EchoServer fast = EchoServer.launch();
+        try {
+            slow.delayMillis = 2000;
+            Roster roster = new Roster(Arrays.asList(slow.getServerIdentity(), fast.getServerIdentity()));
+            roster.setNodeSelector(NodeSelectors.first());
+            HedgePolicy policy = new HedgePolicy(0.9, "Echo/Request");
+            policy.setDelayBounds(Duration.ofMillis(1), Duration.ofMillis(50));
+            roster.setHedgePolicy(policy);
+            StatusProto.Request req = StatusProto.Request.newBuilder().build();
+
+            Instant start = Instant.now();
+            assertEquals(0, roster.sendMessage("Echo/Request", req).size());
+            assertTrue(Duration.between(start, Instant.now()).compareTo(Duration.ofMillis(1500)) < 0);
+
+            HedgePolicy.HedgeStats stats = policy.getStats("Echo/Request");
+            assertEquals(1, stats.getRequests());
+            assertEquals(1, stats.getHedged());
+            assertEquals(1, stats.getHedgeWins());
+            assertEquals(1, slow.messages.get());
+            assertEquals(1, fast.messages.get());
+            // The request of the slow node is given up with its connection.
+            assertTrue(slow.closed.await(1, TimeUnit.SECONDS));
+
+            // Without a slow node, no request is hedged.
+            slow.delayMillis = 0;
+            roster.setNodeSelector(NodeSelectors.roundRobin());
+            policy.setDelayBounds(Duration.ofMillis(500), Duration.ofMillis(1000));
+            for (int i = 0; i < 4; i++) {
+                roster.sendMessageAsync("Echo/Request", req).get();
+            }
+            assertEquals(1, policy.getStats("Echo/Request").getHedged());
+        } finally {
+            slow.stop();
+            fast.stop();
+        }
+    }
+
+    @Test
+    void testHedgingWithoutRetries() throws Exception {
+        EchoServer slow = EchoServer.launch();
+        EchoServer fast = EchoServer.launch();
+        EchoServer crashing = EchoServer.launch();
+        try {
+            slow.delayMillis = 2000;
+            Roster roster = new Roster(Arrays.asList(slow.getServerIdentity(), fast.getServerIdentity()));
+            roster.setNodeSelector(NodeSelectors.first());
+            roster.setRetryBudget(0);
+            HedgePolicy policy = new HedgePolicy(0.9, "Echo/Request");
+            policy.setDelayBounds(Duration.ofMillis(1), Duration.ofMillis(50));
+            roster.setHedgePolicy(policy);
+            StatusProto.Request req = StatusProto.Request.newBuilder().build();
+
+            // The hedge doesn't use up the retry budget.
+            assertEquals(0, roster.sendMessageAsync("Echo/Request", req).get().size());
+            assertEquals(1, policy.getStats("Echo/Request").getHedgeWins());
+
+            // The first node crashes after the hedge failed, and the request still fails over once.
+            slow.delayMillis = 200;
+            slow.drop = true;
+            crashing.drop = true;
+            roster = new Roster(Arrays.asList(slow.getServerIdentity(), crashing.getServerIdentity(),
+                    fast.getServerIdentity()));
+            roster.setNodeSelector(NodeSelectors.first());
+            roster.setRetryBudget(1);
+            roster.setHedgePolicy(policy);
+            int before = fast.messages.get();
+            assertEquals(0, roster.sendMessageAsync("Echo/Request", req).get().size());
+            assertEquals(before + 1, fast.messages.get());
+        } finally {
+            slow.stop();
+            fast.stop();
+            crashing.stop();
+        }
+    }
+
+    @Test
+    void testHedgingWaitsAfterError() throws Exception {
+        EchoServer slow = EchoServer.launch();
+        EchoServer crashing = EchoServer.launch();
+        try {
+            slow.delayMillis = 300;
+            crashing.drop = true;
+            Roster roster = new Roster(Arrays.asList(slow.getServerIdentity(), crashing.getServerIdentity()));
+            roster.setNodeSelector(NodeSelectors.first());
+            HedgePolicy policy = new HedgePolicy(0.9, "Echo/Request");
+            policy.setDelayBounds(Duration.ofMillis(1), Duration.ofMillis(50));
+            roster.setHedgePolicy(policy);
+            StatusProto.Request req = StatusProto.Request.newBuilder().build();
+
+            // The hedge fails first, but the slow node still answers.
+            assertEquals(0, roster.sendMessageAsync("Echo/Request", req).get().size());
+            assertEquals(1, crashing.messages.get());
+            assertEquals(1, slow.messages.get());
+            assertEquals(0, policy.getStats("Echo/Request").getHedgeWins());
+        } finally {
+            slow.stop();
+            crashing.stop();
+        }
+    }
+
+    @Test
+    void testTimeout() throws Exception {
+        EchoServer slow = EchoServer.launch();
+        EchoServer fast = EchoServer.launch();
+        try {
+            slow.delayMillis = 2000;
+            Roster roster = new Roster(Arrays.asList(slow.getServerIdentity(), fast.getServerIdentity()));
+            roster.setNodeSelector(NodeSelectors.first());
+            roster.setTimeout(Duration.ofMillis(200));
+            StatusProto.Request req = StatusProto.Request.newBuilder().build();
+
+            // A timeout uses up the deadline, so there is no failover.
+            assertThrows(CothorityTimeoutException.class, () -> roster.sendMessage("Echo/Request", req));
+            ExecutionException e = assertThrows(ExecutionException.class,
+                    () -> roster.sendMessageAsync("Echo/Request", req).get());
+            assertTrue(e.getCause() instanceof CothorityTimeoutException);
+            assertEquals(0, fast.messages.get());
+
+            assertEquals(0, roster.sendMessage("Echo/Request", req, Duration.ofSeconds(10)).size());
+        } finally {
+            slow.stop();
+            fast.stop();
+        }
+    }
+
+    @Test
+    void testProbe() throws Exception {
+        EchoServer slow1 = EchoServer.launch();
+        EchoServer slow2 = EchoServer.launch();
+        EchoServer fast = EchoServer.launch();
+        try {
+            slow1.delayMillis = 500;
+            slow2.delayMillis = 500;
+            ServerIdentity offline = new ServerIdentity(URI.create("tls://127.0.0.1:1"), new Ed25519Pair().point);
+            Roster roster = new Roster(Arrays.asList(slow1.getServerIdentity(), slow2.getServerIdentity(),
+                    fast.getServerIdentity(), offline));
+
+            Instant start = Instant.now();
+            RosterStatus status = StatusRPC.probe(roster);
+            // The nodes are probed in parallel.
+            assertTrue(Duration.between(start, Instant.now()).toMillis() < 900);
+
+            assertEquals(3, status.getAlive());
+            assertFalse(status.isAllAlive());
+            assertTrue(status.hasQuorum());
+            assertTrue(status.getNodes().get(0).getLatency().toMillis() >= 500);
+            assertNotNull(status.getNodes().get(2).getResponse());
+            assertFalse(status.getNodes().get(3).isAlive());
+            assertNotNull(status.getNodes().get(3).getError());
+
+            try (StatusMonitor monitor = new StatusMonitor(roster, Duration.ofMinutes(1), Duration.ofSeconds(1))) {
+                RosterStatus latest = monitor.refresh().get();
+                assertSame(latest, monitor.getLatest());
+            }
+        } finally {
+            slow1.stop();
+            slow2.stop();
+            fast.stop();
+        }
+    }
 }
@@ -9,6 +9,7 @@ import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import java.util.Random;
+import java.util.UUID;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -82,4 +83,34 @@ class BdnSigTest {
 
         assertThrows(IllegalArgumentException.class, () -> BdnSig.aggregatePoints(mask, Collections.emptyList()));
     }
+
+    @Test
+    void testRosterContext() throws Exception {
+        Bn256Pair kp1 = new Bn256Pair(rnd);
+        Bn256Pair kp2 = new Bn256Pair(rnd);
+        Bn256Pair kp3 = new Bn256Pair(rnd);
+        byte[] msg = "two legs good four legs bad".getBytes();
+        List<Point> pubs = Arrays.asList(kp1.point, kp2.point, kp3.point);
+        UUID id = UUID.randomUUID();
+
+        for (byte[] msk : new byte[][]{new byte[]{0b11}, new byte[]{0b110}, new byte[]{0b111}}) {
+            Mask mask = new Mask(pubs, msk);
+            assertEquals(BdnSig.aggregatePublicKeys(mask), BdnContext.forRoster(id, pubs).aggregate(mask));
+
+            Point sig = BdnSig.aggregatePoints(mask, Arrays.asList(
+                    BdnSig.sign(msg, kp1.scalar),
+                    BdnSig.sign(msg, kp2.scalar),
+                    BdnSig.sign(msg, kp3.scalar)
+            ));
+            assertTrue(new BdnSig(sig.toBytes()).verify(msg, mask, id));
+            assertFalse(new BdnSig(sig.toBytes()).verify("abc".getBytes(), mask, id));
+        }
+        assertSame(BdnContext.forRoster(id, pubs), BdnContext.forRoster(id, pubs));
+
+        // the same ID with other keys doesn't use the context of the first roster
+        List<Point> others = Arrays.asList(kp3.point, kp2.point, kp1.point);
+        assertNotSame(BdnContext.forRoster(id, pubs), BdnContext.forRoster(id, others));
+        Mask mask = new Mask(others, new byte[]{0b111});
+        assertEquals(BdnSig.aggregatePublicKeys(mask), BdnContext.forRoster(id, others).aggregate(mask));
+    }
 }
@@ -0,0 +1,67 @@
+package ch.epfl.dedis.lib.crypto;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BlsBatchVerifierTest {
+    private Random rnd = new Random(1);
+
+    private BlsBatchVerifier makeBatch(List<Bn256Pair> pairs, int n, int invalid) {
+        BlsBatchVerifier batch = new BlsBatchVerifier(rnd);
+        for (int i = 0; i < n; i++) {
+            Bn256Pair kp = pairs.get(i % pairs.size());
+            byte[] msg = ("forward link " + i).getBytes();
+            BlsSig sig = new BlsSig(msg, kp.scalar);
+            if (i == invalid) {
+                msg = "forged".getBytes();
+            }
+            batch.add(msg, sig.getSig(), (Bn256G2Point) kp.point);
+        }
+        return batch;
+    }
+
+    @Test
+    void verify() {
+        List<Bn256Pair> pairs = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            pairs.add(new Bn256Pair(rnd));
+        }
+
+        assertTrue(new BlsBatchVerifier(rnd).verify());
+
+        // the batch below the minimal size is verified one by one
+        for (int n : new int[]{2, 10}) {
+            BlsBatchVerifier batch = makeBatch(pairs, n, -1);
+            assertEquals(n, batch.size());
+            assertTrue(batch.verify());
+            assertEquals(-1, batch.findInvalid());
+
+            for (int invalid : new int[]{0, n - 1}) {
+                batch = makeBatch(pairs, n, invalid);
+                assertFalse(batch.verify());
+                assertEquals(invalid, batch.findInvalid());
+            }
+        }
+    }
+
+    @Test
+    void malformedSignature() {
+        Bn256Pair kp = new Bn256Pair(rnd);
+        BlsBatchVerifier batch = new BlsBatchVerifier(rnd);
+        for (int i = 0; i < 6; i++) {
+            byte[] msg = ("forward link " + i).getBytes();
+            byte[] sig = new BlsSig(msg, kp.scalar).getSig();
+            if (i == 3) {
+                sig[5] ^= 1;
+            }
+            batch.add(msg, sig, (Bn256G2Point) kp.point);
+        }
+
+        assertEquals(3, batch.findInvalid());
+    }
+}
@@ -6,7 +6,9 @@ import java.security.SecureRandom;
 import java.util.Arrays;
 import java.util.Random;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 class BlsSigTest {
@@ -46,4 +48,25 @@ class BlsSigTest {
             assertFalse(goodSig.verify(badMsg, (Bn256G2Point) pair.point));
         }
     }
+
+    @Test
+    void preparedKeys() {
+        PreparedG2Cache cache = new PreparedG2Cache(2);
+        Bn256Pair pair = new Bn256Pair(rnd);
+        Bn256G2Point X = (Bn256G2Point) pair.point;
+
+        assertSame(cache.get(X), cache.get(new Bn256G2Point(X.g2)));
+        assertEquals(1, cache.size());
+
+        cache.get((Bn256G2Point) new Bn256Pair(rnd).point);
+        cache.get((Bn256G2Point) new Bn256Pair(rnd).point);
+        assertEquals(2, cache.size());
+
+        // a key is verified the same way whether it is in the cache or not
+        byte[] msg = "two legs good four legs better".getBytes();
+        BlsSig goodSig = new BlsSig(msg, pair.scalar);
+        assertTrue(goodSig.verify(msg, X));
+        assertTrue(goodSig.verify(msg, X));
+        assertFalse(goodSig.verify(msg, (Bn256G2Point) new Bn256Pair(rnd).point));
+    }
 }
@@ -10,6 +10,7 @@ import org.slf4j.LoggerFactory;
 import javax.crypto.Cipher;
 import javax.crypto.spec.GCMParameterSpec;
 import javax.crypto.spec.SecretKeySpec;
+import java.math.BigInteger;
 import java.security.SecureRandom;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -165,11 +166,82 @@ class Ed25519Test {
         assertTrue(res.equals(s1.mul(s2)));
     }
 
+    @Test
+    void scalarArithmetic() {
+        BigInteger l = new BigInteger(1, Ed25519.prime_order.getBigEndian());
+        SecureRandom random = new SecureRandom();
+
+        for (int i = 0; i < 50; i++) {
+            byte[] wide = new byte[64];
+            random.nextBytes(wide);
+            Scalar a = new Ed25519Scalar(wide);
+            byte[] wideBigEndian = new byte[64];
+            for (int j = 0; j < 64; j++) {
+                wideBigEndian[j] = wide[63 - j];
+            }
+            BigInteger aa = new BigInteger(1, wideBigEndian).mod(l);
+            assertEquals(aa, new BigInteger(1, a.getBigEndian()));
+
+            Scalar b = new Ed25519Pair().scalar;
+            BigInteger bb = new BigInteger(1, b.getBigEndian());
+
+            assertEquals(aa.add(bb).mod(l), new BigInteger(1, a.add(b).getBigEndian()));
+            assertEquals(aa.subtract(bb).mod(l), new BigInteger(1, a.sub(b).getBigEndian()));
+            assertEquals(bb.subtract(aa).mod(l), new BigInteger(1, b.sub(a).getBigEndian()));
+            assertEquals(aa.multiply(bb).mod(l), new BigInteger(1, a.mul(b).getBigEndian()));
+            assertEquals(aa.negate().mod(l), new BigInteger(1, a.negate().getBigEndian()));
+            assertEquals(aa.modInverse(l), new BigInteger(1, a.invert().getBigEndian()));
+            assertTrue(a.mul(a.invert()).equals(new Ed25519Scalar(BigInteger.ONE.toByteArray())));
+        }
+
+        // the order and the values around it
+        Scalar order = Ed25519.prime_order;
+        Scalar one = new Ed25519Scalar(BigInteger.ONE.toByteArray());
+        assertTrue(order.isZero());
+        assertArrayEquals(new byte[32], order.toBytes());
+        assertTrue(order.sub(one).add(one).isZero());
+        assertTrue(order.sub(one).equals(one.negate()));
+        assertTrue(order.negate().isZero());
+        assertTrue(order.mul(one).isZero());
+        assertEquals(l.subtract(BigInteger.ONE), new BigInteger(1, order.sub(one).mul(one).getBigEndian()));
+        assertThrows(ArithmeticException.class, () -> order.invert());
+    }
+
+    @Test
+    void preparedPoint() throws Exception {
+        Point x = new Ed25519Pair().point;
+        byte[] before = x.toBytes();
+        Point prepared = new PreparedEd25519Point(x);
+        assertEquals(x, prepared);
+
+        for (int i = 0; i < 3; i++) {
+            Scalar s = new Ed25519Pair().scalar;
+            Point expected = x.mul(s);
+            assertEquals(expected, prepared.mul(s));
+            assertEquals(expected.add(x), prepared.mul(s).add(prepared));
+            // the multiplication doesn't modify the point
+            assertArrayEquals(before, x.toBytes());
+        }
+
+        // the base point is prepared and shared, the scalar multiplication must not change it
+        Scalar s = new Ed25519Scalar("762755eb09f5a1b3927d89625a90ac93351eba404aa0d0a62315985cc94ba304").reduce();
+        Point base = new Ed25519Point(Ed25519.ed25519.getB());
+        assertEquals(base.mul(s), Ed25519Point.base().mul(s));
+        assertEquals(base, Ed25519Point.base());
+        assertThrows(IllegalArgumentException.class, () -> new PreparedEd25519Point(new Bn256G2Point(BigInteger.ONE)));
+    }
+
     @Test
     void getZero() {
         Ed25519Pair kp1 = new Ed25519Pair();
         assertFalse(kp1.point.isZero());
         assertTrue(kp1.point.getZero().isZero());
+
+        // the results of the additions are kept in another representation
+        Point sum = kp1.point.add(kp1.point);
+        assertFalse(sum.isZero());
+        assertTrue(sum.add(sum.negate()).isZero());
+        assertEquals(kp1.point.mul(new Ed25519Scalar("04")), sum.add(sum));
     }
 
     @Test
@@ -3,8 +3,16 @@ package ch.epfl.dedis.lib.crypto;
 import com.google.protobuf.ByteString;
 import org.junit.jupiter.api.Test;
 
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 
 /**
  * It tests different creation of points from different inputs and kinds of points
@@ -36,4 +44,70 @@ class PointFactoryTest {
         assertNull(PointFactory.getInstance().fromToml("", ED25519_POINT));
         assertNull(PointFactory.getInstance().fromToml(PointFactory.SUITE_ED25519, ""));
     }
+
+    @Test
+    void testMultiScalarMul() {
+        Random rnd = new Random(1);
+        List<Scalar> scalars = new ArrayList<>();
+        List<Point> g2s = new ArrayList<>();
+        List<Point> g1s = new ArrayList<>();
+        List<Point> eds = new ArrayList<>();
+        Point sum2 = null;
+        Point sum1 = null;
+        Point sumEd = null;
+        for (int i = 0; i < 10; i++) {
+            Scalar s = new Bn256Scalar(new BigInteger(128, rnd));
+            scalars.add(s);
+            g2s.add(new Bn256Pair(rnd).point);
+            g1s.add(new Bn256G1Point(BigInteger.valueOf(i + 1)));
+            eds.add(new Ed25519Pair().point);
+
+            sum2 = sum2 == null ? g2s.get(i).mul(s) : sum2.add(g2s.get(i).mul(s));
+            sum1 = sum1 == null ? g1s.get(i).mul(s) : sum1.add(g1s.get(i).mul(s));
+        }
+
+        assertEquals(sum2, PointFactory.getInstance().multiScalarMul(scalars, g2s));
+        assertEquals(sum1, PointFactory.getInstance().multiScalarMul(scalars, g1s));
+
+        // the Ed25519 points have their own multi-scalar multiplication
+        List<Scalar> edScalars = new ArrayList<>();
+        for (int i = 0; i < eds.size(); i++) {
+            Scalar s = new Ed25519Pair().scalar;
+            edScalars.add(s);
+            sumEd = sumEd == null ? eds.get(i).mul(s) : sumEd.add(eds.get(i).mul(s));
+        }
+        assertEquals(sumEd, PointFactory.getInstance().multiScalarMul(edScalars, eds));
+        Point first = eds.get(0).mul(edScalars.set(0, new Ed25519Scalar(new byte[32])));
+        assertEquals(sumEd.add(first.negate()), PointFactory.getInstance().multiScalarMul(edScalars, eds));
+
+        assertThrows(IllegalArgumentException.class,
+                () -> PointFactory.getInstance().multiScalarMul(scalars, Collections.emptyList()));
+        assertThrows(IllegalArgumentException.class,
+                () -> PointFactory.getInstance().multiScalarMul(Collections.emptyList(), Collections.emptyList()));
+    }
+
+    @Test
+    void testSum() {
+        Random rnd = new Random(1);
+        List<Point> g2s = new ArrayList<>();
+        List<Point> g1s = new ArrayList<>();
+        List<Point> eds = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            g2s.add(new Bn256Pair(rnd).point);
+            g1s.add(new Bn256G1Point(BigInteger.valueOf(i + 1)));
+            eds.add(new Ed25519Pair().point);
+        }
+        byte[] first = g2s.get(0).toBytes();
+
+        assertEquals(g2s.get(0).add(g2s.get(1)).add(g2s.get(2)).add(g2s.get(3)).add(g2s.get(4)),
+                PointFactory.getInstance().sum(g2s));
+        assertEquals(new Bn256G1Point(BigInteger.valueOf(15)), PointFactory.getInstance().sum(g1s));
+        assertEquals(eds.get(0).add(eds.get(1)).add(eds.get(2)).add(eds.get(3)).add(eds.get(4)),
+                PointFactory.getInstance().sum(eds));
+
+        // the points of the list are left untouched
+        assertArrayEquals(first, g2s.get(0).toBytes());
+        assertArrayEquals(first, PointFactory.getInstance().sum(g2s.subList(0, 1)).toBytes());
+        assertThrows(IllegalArgumentException.class, () -> PointFactory.getInstance().sum(Collections.emptyList()));
+    }
 }
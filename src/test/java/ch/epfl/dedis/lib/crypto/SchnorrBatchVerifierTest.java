@@ -0,0 +1,138 @@
+package ch.epfl.dedis.lib.crypto;
+
+import ch.epfl.dedis.lib.exception.CothorityCryptoException;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SchnorrBatchVerifierTest {
+    // a point of order 8
+    private static final String TORSION = "c7176a703d4dd84fba3c0b760d10670f2a2053fa2c39ccc64ec7fd7792ac037a";
+    // the batch sizes that are verified one by one, in a single multiplication and in chunks
+    private static final int[] SIZES = {1, SchnorrBatchVerifier.MIN_BATCH - 1, SchnorrBatchVerifier.MIN_BATCH,
+            2 * SchnorrBatchVerifier.MIN_CHUNK + 3};
+
+    private Random rnd = new Random(1);
+
+    // signs the message with the commitment of the nonce shifted by the given point
+    private static SchnorrSig sign(byte[] msg, Scalar priv, Point pub, Point shift) {
+        Ed25519Pair nonce = new Ed25519Pair();
+        SchnorrSig sig = new SchnorrSig(msg, priv);
+        sig.challenge = nonce.point.add(shift);
+        sig.response = nonce.scalar.add(priv.mul(sig.toHash(sig.challenge, pub, msg)));
+        return sig;
+    }
+
+    private static byte[] message(int i) {
+        return ("instruction " + i).getBytes();
+    }
+
+    @Test
+    void verify() {
+        List<Ed25519Pair> pairs = Arrays.asList(new Ed25519Pair(), new Ed25519Pair(), new Ed25519Pair());
+
+        assertTrue(new SchnorrBatchVerifier(rnd).verifyAll());
+        assertEquals(Collections.emptyList(), new SchnorrBatchVerifier(rnd).findInvalid());
+
+        // the signatures of a key share its multiplication, and a wrong response must not cancel with another one
+        for (int keys : new int[]{1, pairs.size()}) {
+            for (int n : SIZES) {
+                List<SchnorrSig> sigs = new ArrayList<>();
+                for (int i = 0; i < n; i++) {
+                    sigs.add(new SchnorrSig(message(i), pairs.get(i % keys).scalar));
+                }
+
+                for (List<Integer> invalid : Arrays.asList(
+                        Collections.<Integer>emptyList(),
+                        Collections.singletonList(n - 1),
+                        Arrays.asList(0, n / 2, n - 1))) {
+                    if (invalid.size() > n) {
+                        continue;
+                    }
+                    SchnorrBatchVerifier batch = new SchnorrBatchVerifier(rnd);
+                    for (int i = 0; i < n; i++) {
+                        SchnorrSig sig = sigs.get(i);
+                        byte[] raw = sig.toBytes();
+                        if (invalid.contains(i)) {
+                            System.arraycopy(sig.response.addOne().toBytes(), 0, raw, 32, 32);
+                        }
+                        batch.add(message(i), raw, pairs.get(i % keys).point);
+                    }
+                    assertEquals(n, batch.size());
+                    assertEquals(invalid.isEmpty(), batch.verifyAll());
+                    assertEquals(invalid, batch.findInvalid());
+                }
+            }
+        }
+    }
+
+    @Test
+    void smallOrderCommitment() throws CothorityCryptoException {
+        Point torsion = new Ed25519Point(TORSION);
+        assertFalse(torsion.isZero());
+        assertTrue(torsion.mul(Ed25519.cofactor).isZero());
+
+        Ed25519Pair kp = new Ed25519Pair();
+        for (int n : SIZES) {
+            SchnorrBatchVerifier batch = new SchnorrBatchVerifier(rnd);
+            SchnorrBatchVerifier forged = new SchnorrBatchVerifier(rnd);
+            for (int i = 0; i < n; i++) {
+                SchnorrSig sig = i == n / 2 ? sign(message(i), kp.scalar, kp.point, torsion)
+                        : new SchnorrSig(message(i), kp.scalar);
+                if (i == n / 2) {
+                    assertFalse(sig.verify(message(i), kp.point));
+                }
+                batch.add(message(i), sig.toBytes(), kp.point);
+                forged.add(i == n / 2 ? "forged".getBytes() : message(i), sig.toBytes(), kp.point);
+            }
+
+            // the same verdict whatever the size of the batch
+            assertTrue(batch.verifyAll());
+            assertEquals(Collections.emptyList(), batch.findInvalid());
+            assertFalse(forged.verifyAll());
+            assertEquals(Collections.singletonList(n / 2), forged.findInvalid());
+        }
+    }
+
+    @Test
+    void smallOrderKey() throws CothorityCryptoException {
+        Ed25519Pair kp = new Ed25519Pair();
+        Point pub = kp.point.add(new Ed25519Point(TORSION));
+        for (int n : SIZES) {
+            SchnorrBatchVerifier batch = new SchnorrBatchVerifier(rnd);
+            for (int i = 0; i < n; i++) {
+                SchnorrSig sig = sign(message(i), kp.scalar, pub, pub.getZero());
+                batch.add(message(i), sig.toBytes(), pub);
+            }
+            assertTrue(batch.verifyAll());
+            assertEquals(Collections.emptyList(), batch.findInvalid());
+        }
+    }
+
+    @Test
+    void malformedSignature() {
+        Ed25519Pair kp = new Ed25519Pair();
+        Ed25519Pair other = new Ed25519Pair();
+        SchnorrBatchVerifier batch = new SchnorrBatchVerifier(rnd);
+        for (int i = 0; i < 8; i++) {
+            byte[] sig = new SchnorrSig(message(i), kp.scalar).toBytes();
+            if (i == 3) {
+                // not the encoding of a point
+                Arrays.fill(sig, 0, 32, (byte) 0xff);
+                sig[0] = 0x02;
+            }
+            batch.add(message(i), sig, i == 6 ? other.point : kp.point);
+        }
+
+        assertFalse(batch.verifyAll());
+        assertEquals(Arrays.asList(3, 6), batch.findInvalid());
+        assertThrows(IllegalArgumentException.class,
+                () -> batch.add("msg".getBytes(), new byte[64], new Bn256Pair(rnd).point));
+    }
+}
@@ -1,23 +1,53 @@
 package ch.epfl.dedis.lib.crypto.bn256;
 
 import ch.epfl.dedis.lib.Hex;
+import ch.epfl.dedis.lib.crypto.TonelliShanks;
 import org.junit.jupiter.api.Test;
 
 import java.math.BigInteger;
 import java.security.SecureRandom;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
 import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import static org.junit.jupiter.api.Assertions.*;
 
 class BNTest {
 
-    static boolean isZero(BigInteger a) {
-        return a.mod(Constants.p).equals(BigInteger.ZERO);
+    static boolean isZero(GFp a) {
+        return a.toBigInteger().equals(BigInteger.ZERO);
     }
 
-    static boolean isOne(BigInteger a) {
-        return a.mod(Constants.p).equals(BigInteger.ONE);
+    static boolean isOne(GFp a) {
+        return a.toBigInteger().equals(BigInteger.ONE);
+    }
+
+    @Test
+    void gfpArithmetic() {
+        Random rnd = new Random(1);
+        BigInteger p = Constants.p;
+        for (int i = 0; i < 1000; i++) {
+            BigInteger a = i == 0 ? p.subtract(BigInteger.ONE) : new BigInteger(256, rnd).mod(p);
+            BigInteger b = new BigInteger(256, rnd).mod(p);
+            GFp ga = new GFp(a);
+            GFp gb = new GFp(b);
+
+            assertEquals(a, ga.toBigInteger());
+            assertEquals(a.add(b).mod(p), new GFp().add(ga, gb).toBigInteger());
+            assertEquals(a.subtract(b).mod(p), new GFp().sub(ga, gb).toBigInteger());
+            assertEquals(a.negate().mod(p), new GFp().negative(ga).toBigInteger());
+            assertEquals(a.multiply(b).mod(p), new GFp().mul(ga, gb).toBigInteger());
+            assertEquals(a.multiply(a).mod(p), new GFp().square(ga).toBigInteger());
+        }
+        assertEquals(new BigInteger("12345").modInverse(p), new GFp(12345).invert(new GFp(12345)).toBigInteger());
+
+        byte[] max = new byte[32];
+        Arrays.fill(max, (byte) 0xff);
+        assertEquals(new BigInteger(1, max).mod(p), new GFp().unmarshal(max, 0).toBigInteger());
     }
 
     @Test
@@ -35,12 +65,12 @@ class BNTest {
     @Test
     void gfp6Invert() {
         GFp6 a = new GFp6();
-        a.x.x = new BigInteger("239487238491");
-        a.x.y = new BigInteger("2356249827341");
-        a.y.x = new BigInteger("082659782");
-        a.y.y = new BigInteger("182703523765");
-        a.z.x = new BigInteger("978236549263");
-        a.z.y = new BigInteger("64893242");
+        a.x.x = new GFp(new BigInteger("239487238491"));
+        a.x.y = new GFp(new BigInteger("2356249827341"));
+        a.y.x = new GFp(new BigInteger("082659782"));
+        a.y.y = new GFp(new BigInteger("182703523765"));
+        a.z.x = new GFp(new BigInteger("978236549263"));
+        a.z.y = new GFp(new BigInteger("64893242"));
 
         GFp6 inv = new GFp6();
         inv.invert(a);
@@ -58,18 +88,18 @@ class BNTest {
     @Test
     void gf12Invert() {
         GFp12 a = new GFp12();
-        a.x.x.x = new BigInteger("239846234862342323958623");
-        a.x.x.y = new BigInteger("2359862352529835623");
-        a.x.y.x = new BigInteger("928836523");
-        a.x.y.y = new BigInteger("9856234");
-        a.x.z.x = new BigInteger("235635286");
-        a.x.z.y = new BigInteger("5628392833");
-        a.y.x.x = new BigInteger("252936598265329856238956532167968");
-        a.y.x.y = new BigInteger("23596239865236954178968");
-        a.y.y.x = new BigInteger("95421692834");
-        a.y.y.y = new BigInteger("236548");
-        a.y.z.x = new BigInteger("924523");
-        a.y.z.y = new BigInteger("12954623");
+        a.x.x.x = new GFp(new BigInteger("239846234862342323958623"));
+        a.x.x.y = new GFp(new BigInteger("2359862352529835623"));
+        a.x.y.x = new GFp(new BigInteger("928836523"));
+        a.x.y.y = new GFp(new BigInteger("9856234"));
+        a.x.z.x = new GFp(new BigInteger("235635286"));
+        a.x.z.y = new GFp(new BigInteger("5628392833"));
+        a.y.x.x = new GFp(new BigInteger("252936598265329856238956532167968"));
+        a.y.x.y = new GFp(new BigInteger("23596239865236954178968"));
+        a.y.y.x = new GFp(new BigInteger("95421692834"));
+        a.y.y.y = new GFp(new BigInteger("236548"));
+        a.y.z.x = new GFp(new BigInteger("924523"));
+        a.y.z.y = new GFp(new BigInteger("12954623"));
 
         GFp12 inv = new GFp12();
         inv.invert(a);
@@ -89,10 +119,10 @@ class BNTest {
     @Test
     void curveImpl() {
         CurvePoint g = new CurvePoint();
-        g.x = BigInteger.ONE;
-        g.y = new BigInteger("-2");
-        g.z = BigInteger.ONE;
-        g.t = BigInteger.ZERO;
+        g.x = new GFp(1);
+        g.y = new GFp(-2);
+        g.z = new GFp(1);
+        g.t = new GFp(0);
 
         BigInteger x = new BigInteger("32498273234");
         CurvePoint X = new CurvePoint().mul(g, x);
@@ -103,7 +133,7 @@ class BNTest {
         CurvePoint s1 = new CurvePoint().mul(X, y).makeAffine();
         CurvePoint s2 = new CurvePoint().mul(Y, x).makeAffine();
 
-        assertFalse(s1.x.compareTo(s2.x) != 0 || s2.x.compareTo(s1.x) != 0, "DH points don't match");
+        assertFalse(!s1.x.equals(s2.x) || !s2.x.equals(s1.x), "DH points don't match");
     }
 
     @Test
@@ -114,7 +144,7 @@ class BNTest {
         BN.G1 one = new BN.G1().scalarBaseMul(BigInteger.ONE);
         g.add(g, one);
         g.p.makeAffine();
-        assertFalse(g.p.x.compareTo(one.p.x) != 0 || g.p.y.compareTo(one.p.y) != 0, "1+0 != 1 in G!");
+        assertFalse(!g.p.x.equals(one.p.x) || !g.p.y.equals(one.p.y), "1+0 != 1 in G!");
     }
 
     @Test
@@ -125,8 +155,8 @@ class BNTest {
         BN.G2 one = new BN.G2().scalarBaseMul(BigInteger.ONE);
         g.add(g, one);
         g.p.makeAffine();
-        assertFalse(g.p.x.x.compareTo(one.p.x.x) != 0 || g.p.x.y.compareTo(one.p.x.y) != 0 ||
-                g.p.y.x.compareTo(one.p.y.x) != 0 || g.p.y.y.compareTo(one.p.y.y) != 0,
+        assertFalse(!g.p.x.x.equals(one.p.x.x) || !g.p.x.y.equals(one.p.x.y) ||
+                !g.p.y.x.equals(one.p.y.x) || !g.p.y.y.equals(one.p.y.y),
                 "1+0 != 1 in G2");
     }
 
@@ -272,6 +302,279 @@ class BNTest {
         }
     }
 
+    @Test
+    void pairingProduct() {
+        Random rnd = new SecureRandom();
+        BN.PairG1 p1 = BN.G1.rand(rnd);
+        BN.PairG2 p2 = BN.G2.rand(rnd);
+        BN.G1 g1 = p1.getPoint();
+        BN.G2 g2 = p2.getPoint();
+        BN.G1 h1 = BN.G1.hashToPoint("abc".getBytes());
+
+        BN.GT expected = new BN.GT().add(BN.pair(g1, g2), BN.pair(h1, g2));
+        BN.GT product = BN.pairingProduct(Arrays.asList(g1, h1), Arrays.asList(g2, g2));
+        assertArrayEquals(expected.marshal(), product.marshal());
+
+        // e(a*B1, b*B2) * e(-a*b*B1, B2) == 1
+        BigInteger ab = p1.getScalar().multiply(p2.getScalar());
+        BN.G1 minusAB = new BN.G1().neg(new BN.G1().scalarBaseMul(ab));
+        BN.G2 base = new BN.G2().scalarBaseMul(BigInteger.ONE);
+        assertTrue(BN.pairingCheck(Arrays.asList(g1, minusAB), Arrays.asList(g2, base)));
+        assertFalse(BN.pairingCheck(Arrays.asList(g1, h1), Arrays.asList(g2, base)));
+
+        // the pairs with a point at infinity don't count
+        BN.G1 inf = new BN.G1().scalarBaseMul(BigInteger.ZERO);
+        assertTrue(BN.pairingCheck(Arrays.asList(g1, minusAB, inf), Arrays.asList(g2, base, g2)));
+        assertTrue(BN.pairingCheck(Arrays.asList(), Arrays.asList()));
+
+        assertThrows(IllegalArgumentException.class, () -> BN.pairingCheck(Arrays.asList(g1), Arrays.asList()));
+    }
+
+    @Test
+    void parallelPairingProduct() {
+        Random rnd = new Random(4);
+        List<BN.G1> g1s = new ArrayList<>();
+        List<BN.G2> g2s = new ArrayList<>();
+        List<BN.PreparedG2> prepared = new ArrayList<>();
+        for (int i = 0; i < 7; i++) {
+            g1s.add(i == 3 ? new BN.G1().setInfinity() : BN.G1.rand(rnd).getPoint());
+            g2s.add(BN.G2.rand(rnd).getPoint());
+            prepared.add(new BN.PreparedG2(g2s.get(i)));
+        }
+
+        try {
+            BN.setPairingParallelism(1, 2);
+            byte[] expected = BN.pairingProduct(g1s, g2s).marshal();
+            assertArrayEquals(expected, BN.preparedPairingProduct(g1s, prepared).marshal());
+
+            // more threads than pairs, fewer, and a product below the threshold
+            for (int threads : new int[]{3, 8}) {
+                BN.setPairingParallelism(threads, 2);
+                assertArrayEquals(expected, BN.pairingProduct(g1s, g2s).marshal());
+                assertArrayEquals(expected, BN.preparedPairingProduct(g1s, prepared).marshal());
+            }
+            BN.setPairingParallelism(3, 8);
+            assertArrayEquals(expected, BN.preparedPairingProduct(g1s, prepared).marshal());
+        } finally {
+            BN.setPairingParallelism(Runtime.getRuntime().availableProcessors(), OptAte.DEFAULT_PARALLEL_MIN_PAIRS);
+        }
+
+        assertThrows(IllegalArgumentException.class, () -> BN.setPairingParallelism(0, 2));
+        assertThrows(IllegalArgumentException.class, () -> BN.setPairingParallelism(2, 1));
+    }
+
+    @Test
+    void preparedG2() {
+        Random rnd = new SecureRandom();
+        BN.G1 g1 = BN.G1.rand(rnd).getPoint();
+        BN.G2 g2 = BN.G2.rand(rnd).getPoint();
+        BN.PreparedG2 prepared = new BN.PreparedG2(g2);
+
+        assertArrayEquals(BN.pair(g1, g2).marshal(), BN.pair(g1, prepared).marshal());
+        // the prepared point doesn't depend on the G2 object anymore
+        g2.setInfinity();
+        assertArrayEquals(BN.pair(g1, prepared).marshal(), BN.pair(new BN.G1(g1), prepared).marshal());
+        assertFalse(BN.pair(g1, prepared).p.isOne());
+
+        BN.PreparedG2 inf = new BN.PreparedG2(new BN.G2().scalarBaseMul(BigInteger.ZERO));
+        assertTrue(BN.pair(g1, inf).p.isOne());
+        BN.G1 minusG1 = new BN.G1().neg(g1);
+        assertTrue(BN.preparedPairingCheck(Arrays.asList(g1, minusG1, g1), Arrays.asList(prepared, prepared, inf)));
+    }
+
+    @Test
+    void concurrentPairings() throws Exception {
+        Random rnd = new Random(1);
+        int n = 8;
+        BN.G1[] g1s = new BN.G1[n];
+        BN.G2[] g2s = new BN.G2[n];
+        byte[][] expected = new byte[n][];
+        for (int i = 0; i < n; i++) {
+            g1s[i] = BN.G1.rand(rnd).getPoint();
+            g2s[i] = BN.G2.rand(rnd).getPoint();
+            expected[i] = BN.pair(g1s[i], g2s[i]).marshal();
+        }
+
+        int threads = Math.max(2, Runtime.getRuntime().availableProcessors());
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<?>> results = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                int offset = t;
+                results.add(executor.submit(() -> {
+                    for (int i = 0; i < 2 * n; i++) {
+                        int k = (offset + i) % n;
+                        // every thread works on its own copies, only the pools would be shared
+                        BN.G1 g1 = new BN.G1(g1s[k]);
+                        BN.G2 g2 = new BN.G2().unmarshal(g2s[k].marshal());
+                        assertArrayEquals(expected[k], BN.pair(g1, g2).marshal());
+                    }
+                }));
+            }
+            for (Future<?> f : results) {
+                f.get();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    // the textbook double-and-add that the windowed multiplications replace
+    private static CurvePoint doubleAndAdd(CurvePoint a, BigInteger k) {
+        CurvePoint sum = new CurvePoint();
+        sum.setInfinity();
+        CurvePoint t = new CurvePoint();
+        for (int i = k.bitLength(); i >= 0; i--) {
+            t.dbl(sum);
+            if (k.testBit(i)) {
+                sum.add(t, a);
+            } else {
+                sum.set(t);
+            }
+        }
+        return sum;
+    }
+
+    private static TwistPoint doubleAndAdd(TwistPoint a, BigInteger k) {
+        TwistPoint sum = new TwistPoint();
+        sum.setInfinity();
+        TwistPoint t = new TwistPoint();
+        for (int i = k.bitLength(); i >= 0; i--) {
+            t.dbl(sum);
+            if (k.testBit(i)) {
+                sum.add(t, a);
+            } else {
+                sum.set(t);
+            }
+        }
+        return sum;
+    }
+
+    @Test
+    void scalarMul() {
+        Random rnd = new Random(1);
+        BigInteger n = Constants.order;
+        List<BigInteger> scalars = new ArrayList<>(Arrays.asList(BigInteger.ZERO, BigInteger.ONE,
+                BigInteger.valueOf(2), BigInteger.valueOf(31), n.subtract(BigInteger.ONE), n, n.add(BigInteger.ONE),
+                BigInteger.ONE.shiftLeft(256).subtract(BigInteger.ONE)));
+        for (int i = 0; i < 20; i++) {
+            scalars.add(new BigInteger(256, rnd));
+            scalars.add(new BigInteger(128 + i, rnd));
+        }
+
+        CurvePoint g1 = new BN.G1(new BigInteger("123456789")).p;
+        TwistPoint g2 = new BN.G2(new BigInteger("123456789")).p;
+        for (BigInteger k : scalars) {
+            assertArrayEquals(new BN.G1(doubleAndAdd(g1, k)).marshal(), new BN.G1(new CurvePoint().mul(g1, k)).marshal());
+            assertArrayEquals(new BN.G1(doubleAndAdd(CurvePoint.curveGen, k)).marshal(), new BN.G1().scalarBaseMul(k).marshal());
+            assertArrayEquals(new BN.G2(doubleAndAdd(g2, k)).marshal(), new BN.G2(new TwistPoint().mul(g2, k)).marshal());
+            assertArrayEquals(new BN.G2(doubleAndAdd(TwistPoint.twistGen, k)).marshal(), new BN.G2().scalarBaseMul(k).marshal());
+        }
+
+        // in place, and with a negative scalar
+        byte[] expected1 = new BN.G1().neg(new BN.G1().scalarMul(new BN.G1(g1), BigInteger.valueOf(5))).marshal();
+        BN.G1 p1 = new BN.G1(g1);
+        p1.scalarMul(p1, BigInteger.valueOf(-5));
+        assertArrayEquals(expected1, p1.marshal());
+        byte[] expected2 = new BN.G2().neg(new BN.G2().scalarMul(new BN.G2(g2), BigInteger.valueOf(5))).marshal();
+        BN.G2 p2 = new BN.G2(g2);
+        p2.scalarMul(p2, BigInteger.valueOf(-5));
+        assertArrayEquals(expected2, p2.marshal());
+    }
+
+    @Test
+    void multiScalarMul() {
+        Random rnd = new Random(2);
+        for (int n : new int[]{1, 2, 5, 40}) {
+            List<BigInteger> scalars = new ArrayList<>();
+            List<BN.G1> g1s = new ArrayList<>();
+            List<BN.G2> g2s = new ArrayList<>();
+            BN.G1 sum1 = new BN.G1(BigInteger.ZERO);
+            BN.G2 sum2 = new BN.G2(BigInteger.ZERO);
+            for (int i = 0; i < n; i++) {
+                BigInteger k = i == 1 ? BigInteger.ZERO : i == 2 ? Constants.order.subtract(BigInteger.ONE) : new BigInteger(129, rnd);
+                scalars.add(k);
+                g1s.add(BN.G1.rand(rnd).getPoint());
+                g2s.add(BN.G2.rand(rnd).getPoint());
+                sum1.add(sum1, new BN.G1().scalarMul(g1s.get(i), k));
+                sum2.add(sum2, new BN.G2().scalarMul(g2s.get(i), k));
+            }
+
+            assertArrayEquals(sum1.marshal(), BN.G1.multiScalarMul(scalars, g1s).marshal());
+            assertArrayEquals(sum2.marshal(), BN.G2.multiScalarMul(scalars, g2s).marshal());
+        }
+
+        // G2 scalars are used as they are, like in scalarMul
+        List<BigInteger> scalars = Arrays.asList(Constants.order.add(BigInteger.valueOf(3)), BigInteger.valueOf(-7));
+        List<BN.G2> g2s = Arrays.asList(BN.G2.rand(rnd).getPoint(), BN.G2.rand(rnd).getPoint());
+        BN.G2 sum = new BN.G2().scalarMul(g2s.get(0), scalars.get(0));
+        sum.add(sum, new BN.G2().scalarMul(g2s.get(1), scalars.get(1)));
+        assertArrayEquals(sum.marshal(), BN.G2.multiScalarMul(scalars, g2s).marshal());
+
+        assertTrue(BN.G1.multiScalarMul(new ArrayList<>(), new ArrayList<>()).isInfinity());
+        assertTrue(BN.G2.multiScalarMul(new ArrayList<>(), new ArrayList<>()).isInfinity());
+        assertThrows(IllegalArgumentException.class,
+                () -> BN.G2.multiScalarMul(Arrays.asList(BigInteger.ONE), new ArrayList<>()));
+    }
+
+    @Test
+    void inPlace() {
+        Random rnd = new Random(3);
+        BigInteger k = new BigInteger(200, rnd);
+
+        BN.G1 a1 = BN.G1.rand(rnd).getPoint();
+        BN.G1 b1 = BN.G1.rand(rnd).getPoint();
+        byte[] sum1 = new BN.G1().add(a1, b1).marshal();
+        byte[] dbl1 = new BN.G1().add(a1, a1).marshal();
+        byte[] mul1 = new BN.G1().scalarMul(a1, k).marshal();
+        byte[] neg1 = new BN.G1().neg(a1).marshal();
+        BN.G1 r1 = new BN.G1().set(a1);
+        assertArrayEquals(a1.marshal(), r1.marshal());
+        assertArrayEquals(sum1, r1.add(r1, b1).marshal());
+        assertArrayEquals(dbl1, r1.set(a1).add(r1, r1).marshal());
+        assertArrayEquals(mul1, r1.set(a1).scalarMul(r1, k).marshal());
+        assertArrayEquals(neg1, r1.set(a1).neg(r1).marshal());
+
+        BN.G2 a2 = BN.G2.rand(rnd).getPoint();
+        BN.G2 b2 = BN.G2.rand(rnd).getPoint();
+        byte[] sum2 = new BN.G2().add(a2, b2).marshal();
+        byte[] dbl2 = new BN.G2().add(a2, a2).marshal();
+        byte[] mul2 = new BN.G2().scalarMul(a2, k).marshal();
+        byte[] neg2 = new BN.G2().neg(a2).marshal();
+        BN.G2 r2 = new BN.G2().set(a2);
+        assertArrayEquals(a2.marshal(), r2.marshal());
+        assertArrayEquals(sum2, r2.add(r2, b2).marshal());
+        assertArrayEquals(dbl2, r2.set(a2).add(r2, r2).marshal());
+        assertArrayEquals(mul2, r2.set(a2).scalarMul(r2, k).marshal());
+        assertArrayEquals(neg2, r2.set(a2).neg(r2).marshal());
+
+        // a product of pairings accumulated in the same element
+        BN.GT prod = new BN.GT().setOne();
+        prod.add(prod, BN.pair(a1, a2));
+        prod.add(prod, BN.pair(b1, a2));
+        assertEquals(BN.pair(new BN.G1().add(a1, b1), a2), prod);
+        assertEquals(prod, new BN.GT().set(prod));
+        assertTrue(prod.add(prod, new BN.GT().neg(prod)).isOne());
+    }
+
+    @Test
+    void cyclotomicSquare() {
+        Random rnd = new Random(1);
+        BN.GT e = BN.pair(BN.G1.rand(rnd).getPoint(), BN.G2.rand(rnd).getPoint());
+
+        GFp12 expected = new GFp12().square(e.p);
+        assertEquals(expected, new GFp12().cyclotomicSquare(e.p));
+        GFp12 a = new GFp12(e.p);
+        assertEquals(expected, a.cyclotomicSquare(a));
+
+        BigInteger k = new BigInteger(64, rnd);
+        assertEquals(new GFp12().exp(e.p, k), new GFp12().cyclotomicExp(e.p, k));
+
+        assertFalse(e.isOne());
+        assertTrue(new BN.GT().scalarMul(e, Constants.order).isOne());
+        assertEquals(e.hashCode(), new BN.GT(new GFp12(e.p)).hashCode());
+    }
+
     @Test
     void equalsGT() {
         Random rnd = new SecureRandom();
@@ -311,5 +614,41 @@ class BNTest {
 
         BN.G1 p2 = BN.G1.hashToPoint(Hex.parseHexBinary("e0a05cbb37fd6c159732a8c57b981773f7480695328b674d8a9cc083377f1811"));
         assertArrayEquals(Hex.parseHexBinary("1444853e16a3f959e9ff1da9c226958f9ee4067f82451bcf88ecc5980cf2c4d50095605d82d456fbb24b21f283842746935e0c42c7f7a8f579894d9bccede5ae"), p2.marshal());
+
+        // the cached point can't be modified through the returned one
+        BN.G1 p3 = BN.G1.hashToPoint("abc".getBytes());
+        p3.add(p3, p3);
+        assertArrayEquals(p.marshal(), BN.G1.hashToPoint("abc".getBytes()).marshal());
+    }
+
+    @Test
+    void hashToPointWithoutCache() {
+        byte[] expected = BN.G1.hashToPoint("abc".getBytes()).marshal();
+        try {
+            BN.G1.setHashCacheSize(0);
+            assertEquals(0, BN.G1.getHashCacheSize());
+            assertArrayEquals(expected, BN.G1.hashToPoint("abc".getBytes()).marshal());
+            assertArrayEquals(expected, BN.G1.hashToPoint("abc".getBytes()).marshal());
+        } finally {
+            BN.G1.setHashCacheSize(BN.G1.HASH_CACHE_SIZE);
+        }
+        assertThrows(IllegalArgumentException.class, () -> BN.G1.setHashCacheSize(-1));
+    }
+
+    @Test
+    void gfpSqrt() {
+        Random rnd = new Random(1);
+        for (int i = 0; i < 100; i++) {
+            BigInteger a = new BigInteger(256, rnd).mod(Constants.p);
+            BigInteger expected = TonelliShanks.modSqrt(a, Constants.p);
+
+            GFp root = new GFp(7);
+            assertEquals(expected != null, root.sqrt(new GFp(a)));
+            assertEquals(expected == null ? BigInteger.valueOf(7) : expected, root.toBigInteger());
+        }
+
+        GFp a = new GFp(4);
+        assertTrue(a.sqrt(a));
+        assertEquals(new GFp(4), new GFp().square(a));
     }
 }